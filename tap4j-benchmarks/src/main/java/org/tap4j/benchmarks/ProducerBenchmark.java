@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tap4j.model.TestSet;
+import org.tap4j.parser.Tap13Parser;
+import org.tap4j.producer.TapProducer;
+import org.tap4j.representer.DumperOptions;
+import org.tap4j.representer.Tap13Representer;
+
+/**
+ * Benchmarks for {@link TapProducer}, alone and in a parse and produce round
+ * trip.
+ *
+ * @since 4.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g" })
+public class ProducerBenchmark {
+
+    /**
+     * Corpus shape.
+     */
+    @Param({"FLAT", "YAML", "NESTED", "LARGE" })
+    private TapCorpus corpus;
+
+    /**
+     * TAP file with the corpus.
+     */
+    private File tapFile;
+
+    /**
+     * Parsed corpus.
+     */
+    private TestSet testSet;
+
+    /**
+     * File where the TAP stream is produced.
+     */
+    private File output;
+
+    /**
+     * Creates and parses the corpus.
+     *
+     * @throws IOException if the temporary files cannot be created
+     */
+    @Setup
+    public void setUp() throws IOException {
+        tapFile = corpus.asFile();
+        testSet = new Tap13Parser("UTF-8", true).parseFile(tapFile);
+        output = File.createTempFile("tap4j-output", ".tap");
+    }
+
+    /**
+     * Deletes the output file.
+     */
+    @TearDown
+    public void tearDown() {
+        if (!output.delete()) {
+            output.deleteOnExit();
+        }
+    }
+
+    /**
+     * @return the producer
+     */
+    private TapProducer newProducer() {
+        DumperOptions options = new DumperOptions();
+        options.setPrintDiagnostics(true);
+        options.setCharset("UTF-8");
+        return new TapProducer(new Tap13Representer(options));
+    }
+
+    /**
+     * @return the output file
+     */
+    @Benchmark
+    public File dump() {
+        newProducer().dump(testSet, output);
+        return output;
+    }
+
+    /**
+     * @return the output file
+     */
+    @Benchmark
+    public File roundTrip() {
+        TestSet parsed = new Tap13Parser("UTF-8", true).parseFile(tapFile);
+        newProducer().dump(parsed, output);
+        return output;
+    }
+
+}
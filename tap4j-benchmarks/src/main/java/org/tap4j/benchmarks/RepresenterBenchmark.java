@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tap4j.model.TestSet;
+import org.tap4j.parser.Tap13Parser;
+import org.tap4j.representer.DumperOptions;
+import org.tap4j.representer.Tap13Representer;
+import org.tap4j.representer.TapJunitRepresenter;
+
+/**
+ * Benchmarks for {@link Tap13Representer} and {@link TapJunitRepresenter}.
+ *
+ * @since 4.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g" })
+public class RepresenterBenchmark {
+
+    /**
+     * Corpus shape.
+     */
+    @Param({"FLAT", "YAML", "NESTED", "LARGE" })
+    private TapCorpus corpus;
+
+    /**
+     * Parsed corpus.
+     */
+    private TestSet testSet;
+
+    /**
+     * Parses the corpus.
+     */
+    @Setup
+    public void setUp() {
+        testSet = new Tap13Parser("UTF-8", true).parseTapStream(corpus.asString());
+    }
+
+    /**
+     * @return TAP stream
+     */
+    @Benchmark
+    public String tap13() {
+        DumperOptions options = new DumperOptions();
+        options.setPrintDiagnostics(true);
+        return new Tap13Representer(options).representData(testSet);
+    }
+
+    /**
+     * @return JUnit XML
+     */
+    @Benchmark
+    public String junit() {
+        return new TapJunitRepresenter("benchmark").representData(testSet);
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * TAP streams used as benchmark input. Each shape stresses a different part
+ * of the parser: plain lines, YAMLish diagnostics, subtests and sheer size.
+ *
+ * @since 4.2
+ */
+public enum TapCorpus {
+
+    /**
+     * Plain test results, with a few directives and comments.
+     */
+    FLAT(10000, 0),
+    /**
+     * Every test result followed by a YAMLish diagnostic block.
+     */
+    YAML(10000, 0),
+    /**
+     * Test results with three levels of subtests.
+     */
+    NESTED(1000, 3),
+    /**
+     * About one million flat TAP lines.
+     */
+    LARGE(1000000, 0);
+
+    /**
+     * Number of subtests of each test result.
+     */
+    private static final int SUBTESTS = 3;
+
+    /**
+     * Indentation of each subtest level.
+     */
+    private static final String INDENT = "    ";
+
+    /**
+     * Number of top level test results.
+     */
+    private final int tests;
+
+    /**
+     * Depth of the subtests.
+     */
+    private final int depth;
+
+    /**
+     * @param tests number of top level test results
+     * @param depth depth of the subtests
+     */
+    TapCorpus(int tests, int depth) {
+        this.tests = tests;
+        this.depth = depth;
+    }
+
+    /**
+     * @return the TAP stream as a String
+     */
+    public String asString() {
+        StringWriter writer = new StringWriter();
+        try {
+            write(writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes the TAP stream into a temporary file, deleted on exit.
+     *
+     * @return the TAP file
+     * @throws IOException if the file cannot be written
+     */
+    public File asFile() throws IOException {
+        File file = File.createTempFile("tap4j-" + name().toLowerCase(), ".tap");
+        file.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            write(writer);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Writes the TAP stream.
+     *
+     * @param writer writer
+     * @throws IOException if the stream cannot be written
+     */
+    public void write(Writer writer) throws IOException {
+        writer.write("TAP version 13\n");
+        if (this == LARGE) {
+            // header and plan count as lines too
+            writeTestSet(writer, "", tests - 2, 0);
+        } else {
+            writeTestSet(writer, "", tests, depth);
+        }
+    }
+
+    /**
+     * Writes a plan and its test results, recursing into subtests.
+     *
+     * @param writer writer
+     * @param indent indentation of the test set
+     * @param count number of test results
+     * @param level remaining levels of subtests
+     * @throws IOException if the stream cannot be written
+     */
+    private void writeTestSet(Writer writer, String indent, int count,
+            int level) throws IOException {
+        writer.write(indent + "1.." + count + "\n");
+        for (int i = 1; i <= count; i++) {
+            writer.write(indent);
+            boolean failed = i % 10 == 0;
+            writer.write(failed ? "not ok " : "ok ");
+            writer.write(Integer.toString(i));
+            writer.write(" - org.tap4j.SomeTest#test" + i);
+            if (i % 25 == 0) {
+                writer.write(" # SKIP not on this platform");
+            } else if (i % 30 == 0) {
+                writer.write(" # TODO not implemented yet");
+            }
+            writer.write('\n');
+            if (i % 50 == 0) {
+                writer.write(indent + "# checkpoint " + i + "\n");
+            }
+            if (this == YAML) {
+                writeDiagnostic(writer, indent + "  ", i, failed);
+            }
+            if (level > 0) {
+                writeTestSet(writer, indent + INDENT, SUBTESTS, level - 1);
+            }
+        }
+    }
+
+    /**
+     * Writes a YAMLish block like the ones created by the tap4j JUnit and
+     * TestNG listeners.
+     *
+     * @param writer writer
+     * @param indent indentation of the block
+     * @param number test number
+     * @param failed whether the test failed
+     * @throws IOException if the stream cannot be written
+     */
+    private void writeDiagnostic(Writer writer, String indent, int number,
+            boolean failed) throws IOException {
+        writer.write(indent + "---\n");
+        writer.write(indent + "message: 'Test " + number + "'\n");
+        writer.write(indent + "severity: " + (failed ? "High" : "None") + "\n");
+        writer.write(indent + "source: org.tap4j.SomeTest\n");
+        writer.write(indent + "datetime: '20140823T093012'\n");
+        writer.write(indent + "file: SomeTest.java\n");
+        writer.write(indent + "line: " + (number % 500) + "\n");
+        writer.write(indent + "name: test" + number + "\n");
+        if (failed) {
+            writer.write(indent + "error: java.lang.AssertionError\n");
+            writer.write(indent + "backtrace: |\n");
+            writer.write(indent + "  java.lang.AssertionError: expected:<1> but was:<2>\n");
+            writer.write(indent + "    at org.junit.Assert.fail(Assert.java:88)\n");
+            writer.write(indent + "    at org.tap4j.SomeTest.test" + number + "(SomeTest.java:42)\n");
+        }
+        writer.write(indent + "...\n");
+    }
+
+}
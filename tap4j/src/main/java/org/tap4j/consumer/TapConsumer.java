@@ -24,9 +24,13 @@
 package org.tap4j.consumer;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.util.concurrent.ExecutorService;
 
 import org.tap4j.model.TestSet;
 import org.tap4j.parser.Parser;
+import org.tap4j.parser.TapEventHandler;
+import org.tap4j.parser.TapFollower;
 
 /**
  * TAP Consumer is the responsible for generating the TAP Stream.
@@ -53,6 +57,60 @@ public interface TapConsumer {
      */
     TestSet load(String tapStream);
 
+    /**
+     * Parses the TAP files of a directory, with <code>.tap</code> extension,
+     * in parallel on as many threads as processors.
+     *
+     * @param directory directory
+     * @return the test sets, the files that could not be parsed and a
+     *         summary
+     * @throws TapConsumerException if the directory cannot be listed
+     * @since 4.2
+     */
+    TapLoadResult loadAll(File directory);
+
+    /**
+     * Parses the files of a directory accepted by a filter, in parallel on
+     * as many threads as processors. Sub directories are not read.
+     *
+     * @param directory directory
+     * @param filter file filter
+     * @return the test sets, the files that could not be parsed and a
+     *         summary
+     * @throws TapConsumerException if the directory cannot be listed
+     * @since 4.2
+     */
+    TapLoadResult loadAll(File directory, FileFilter filter);
+
+    /**
+     * Parses the files of a directory accepted by a filter, in parallel on
+     * an executor. Sub directories are not read. The executor is not shut
+     * down.
+     *
+     * @param directory directory
+     * @param filter file filter
+     * @param executor executor running the parsers
+     * @return the test sets, the files that could not be parsed and a
+     *         summary
+     * @throws TapConsumerException if the directory cannot be listed, or if
+     *         interrupted
+     * @since 4.2
+     */
+    TapLoadResult loadAll(File directory, FileFilter filter,
+            ExecutorService executor);
+
+    /**
+     * Follows a TAP file while it is written. The new TAP elements are passed
+     * to the handler each time the follower is polled.
+     *
+     * @param file TAP file, which may not exist yet
+     * @param handler handler of the TAP elements
+     * @return the follower
+     * @throws TapConsumerException if the parser cannot follow files
+     * @since 4.2
+     */
+    TapFollower follow(File file, TapEventHandler handler);
+
     /**
      * Returns the TestSet resulted from parsing a TAP File or TAP Stream.
      *
@@ -24,11 +24,22 @@
 package org.tap4j.consumer;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.tap4j.model.TestSet;
 import org.tap4j.parser.Parser;
 import org.tap4j.parser.ParserException;
 import org.tap4j.parser.Tap13Parser;
+import org.tap4j.parser.TapEventHandler;
+import org.tap4j.parser.TapFollower;
 
 /**
  * Implementation of a TAP Consumer. It can use different TAP parsers. The
@@ -39,15 +50,24 @@ import org.tap4j.parser.Tap13Parser;
  */
 public class TapConsumerImpl implements TapConsumer {
 
+    /**
+     * Filter accepting the files with <code>.tap</code> extension.
+     */
+    private static final FileFilter TAP_FILES = new FileFilter() {
+        public boolean accept(File file) {
+            return file.isFile() && file.getName().endsWith(".tap");
+        }
+    };
+
     /**
      * TAP parser.
      */
     private final Parser parser;
 
     /**
-     * TAP Test Set.
+     * TAP Test Set, the last one loaded.
      */
-    private TestSet testSet;
+    private volatile TestSet testSet;
 
     /**
      * Default constructor.
@@ -90,7 +110,8 @@ public class TapConsumerImpl implements TapConsumer {
      */
     public TestSet load(String tapStream) {
         try {
-            this.testSet = this.parser.parseTapStream(tapStream);
+            this.testSet = this.parser.parseTapStream(
+                    (CharSequence) tapStream);
         } catch (ParserException e) {
             throw new TapConsumerException("Failed to parse TAP Stream "
                                             + tapStream + ": " + e.getMessage(), e);
@@ -98,6 +119,99 @@ public class TapConsumerImpl implements TapConsumer {
         return this.testSet;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public TapLoadResult loadAll(File directory) {
+        return this.loadAll(directory, TAP_FILES);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public TapLoadResult loadAll(File directory, FileFilter filter) {
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime
+                .getRuntime().availableProcessors());
+        try {
+            return this.loadAll(directory, filter, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>A {@link Tap13Parser} parses the files concurrently. Other parsers,
+     * including subclasses of {@link Tap13Parser} that may keep state of
+     * their own, parse one file at a time.</p>
+     */
+    public TapLoadResult loadAll(File directory, FileFilter filter,
+            ExecutorService executor) {
+        final File[] files = directory.listFiles(filter);
+        if (files == null) {
+            throw new TapConsumerException("Failed to list directory "
+                    + directory);
+        }
+        Arrays.sort(files);
+        final boolean concurrent = parser.getClass() == Tap13Parser.class;
+        final List<Future<TestSet>> futures = new ArrayList<Future<TestSet>>(
+                files.length);
+        for (final File file : files) {
+            futures.add(executor.submit(new Callable<TestSet>() {
+                public TestSet call() {
+                    if (concurrent) {
+                        return parser.parseFile(file);
+                    }
+                    synchronized (parser) {
+                        return parser.parseFile(file);
+                    }
+                }
+            }));
+        }
+        final TapLoadResult result = new TapLoadResult();
+        try {
+            for (int i = 0; i < files.length; i++) {
+                try {
+                    result.addTestSet(files[i], futures.get(i).get());
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof ParserException)) {
+                        throw new TapConsumerException("Failed to parse file "
+                                + files[i] + ": " + e.getCause(), e.getCause());
+                    }
+                    result.addError(files[i], new TapConsumerException(
+                            "Failed to parse file " + files[i] + ": "
+                                    + e.getCause().getMessage(), e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TapConsumerException("Interrupted while parsing files of "
+                    + directory, e);
+        } finally {
+            for (Future<TestSet> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public TapFollower follow(File file, TapEventHandler handler) {
+        if (!(parser instanceof Tap13Parser)) {
+            throw new TapConsumerException("Parser cannot follow TAP files: "
+                    + parser.getClass().getName());
+        }
+        try {
+            return new TapFollower(file, (Tap13Parser) parser, handler);
+        } catch (ParserException e) {
+            throw new TapConsumerException("Failed to follow file " + file
+                    + ": " + e.getMessage(), e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.consumer;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.tap4j.model.TapSummary;
+import org.tap4j.model.TestSet;
+
+/**
+ * Result of loading several TAP files: the test set of each file parsed, the
+ * error of each file that could not be parsed, and the summary of all the
+ * test sets.
+ *
+ * @since 4.2
+ */
+public class TapLoadResult {
+
+    /**
+     * Test set of each file, by file.
+     */
+    private final Map<File, TestSet> testSets = new TreeMap<File, TestSet>();
+
+    /**
+     * Error of each file that could not be parsed, by file.
+     */
+    private final Map<File, TapConsumerException> errors = new TreeMap<File, TapConsumerException>();
+
+    /**
+     * Summary of the test sets.
+     */
+    private final TapSummary summary = new TapSummary();
+
+    /**
+     * Default constructor.
+     */
+    public TapLoadResult() {
+        super();
+    }
+
+    /**
+     * Adds the test set of a file.
+     *
+     * @param file TAP file
+     * @param testSet test set
+     */
+    public void addTestSet(File file, TestSet testSet) {
+        testSets.put(file, testSet);
+        summary.add(testSet);
+    }
+
+    /**
+     * Adds the error of a file that could not be parsed.
+     *
+     * @param file TAP file
+     * @param error error
+     */
+    public void addError(File file, TapConsumerException error) {
+        errors.put(file, error);
+    }
+
+    /**
+     * @return the test set of each file parsed, sorted by file
+     */
+    public Map<File, TestSet> getTestSets() {
+        return Collections.unmodifiableMap(testSets);
+    }
+
+    /**
+     * @return the error of each file that could not be parsed, sorted by file
+     */
+    public Map<File, TapConsumerException> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @return the summary of the test sets
+     */
+    public TapSummary getSummary() {
+        return summary;
+    }
+
+}
@@ -23,12 +23,18 @@
  */
 package org.tap4j.model;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * TAP Element that supports diagnostic information. The diagnostics is a map
  * containing the YAMLish extra information of a test.
+ * <p>
+ * The diagnostic of a parsed element can be read by several threads at the
+ * same time; changing it from several threads must be synchronized by the
+ * caller.
  *
  * @since 1.0
  */
@@ -39,18 +45,58 @@ public abstract class AbstractTapElementDiagnostic implements TapElement {
      */
     private static final long serialVersionUID = 8568950679698773071L;
 
+    /**
+     * Shared empty diagnostic, replaced by a new map when the diagnostic is
+     * first read, as most elements have none.
+     */
+    private static final Map<String, Object> NO_DIAGNOSTIC = Collections
+            .emptyMap();
+
+    /**
+     * Replaces {@link #NO_DIAGNOSTIC} once, when threads read the diagnostic
+     * at the same time.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AbstractTapElementDiagnostic, Map>
+            DIAGNOSTIC = AtomicReferenceFieldUpdater.newUpdater(
+                    AbstractTapElementDiagnostic.class, Map.class,
+                    "diagnostic");
+
     /**
      * Iterable object returned by snakeyaml.
      */
-    private Map<String, Object> diagnostic = new LinkedHashMap<String, Object>();
+    private volatile Map<String, Object> diagnostic = NO_DIAGNOSTIC;
 
     /**
      * {@inheritDoc}
      */
     public Map<String, Object> getDiagnostic() {
+        final Map<String, Object> current = this.diagnostic;
+        if (current != NO_DIAGNOSTIC) {
+            return current;
+        }
+        DIAGNOSTIC.compareAndSet(this, NO_DIAGNOSTIC,
+                new LinkedHashMap<String, Object>());
         return this.diagnostic;
     }
 
+    /**
+     * @return <code>true</code> if the element has diagnostic information,
+     *         without allocating an empty diagnostic for it.
+     * @since 4.2
+     */
+    public boolean hasDiagnostic() {
+        return this.diagnostic != null && !this.diagnostic.isEmpty();
+    }
+
+    /**
+     * @return <code>true</code> if a diagnostic was set or read, without
+     *         loading a lazy diagnostic.
+     */
+    boolean isDiagnosticSet() {
+        return this.diagnostic != NO_DIAGNOSTIC && this.diagnostic != null;
+    }
+
     /**
      * {@inheritDoc}
      */
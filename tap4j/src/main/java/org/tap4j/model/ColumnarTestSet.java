@@ -0,0 +1,755 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Test Set storing its Test Results in columns, by default parallel primitive
+ * arrays: the test numbers, status and directive codes, and the offsets of
+ * the descriptions and reasons in a shared character pool. The Test Results returned by
+ * {@link #getTestResults()}, {@link #getTapLines()} and
+ * {@link #getTestResult(Integer)} are flyweights, created on demand from the
+ * arrays. Counts by status or directive and scans for failures run over the
+ * arrays, without creating Test Results, and Test Results are found by number
+ * through an index of their positions.
+ * <p>
+ * The last Test Result added is kept as is until the next one is added, so
+ * that the diagnostic, comments and subtest parsed after it are attached to
+ * it. Test Results with a diagnostic, comments or a subtest are then kept as
+ * is, while the others are only kept in the arrays. Changing a Test Result
+ * once the next one was added has no effect, and the lists of the test set
+ * do not support removals.
+ *
+ * @since 4.2
+ */
+public class ColumnarTestSet extends TestSet {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = -7129541163706125364L;
+
+    /**
+     * Factory of columnar test sets.
+     */
+    private static final TestSetFactory FACTORY = new TestSetFactory() {
+        public TestSet newTestSet() {
+            return new ColumnarTestSet();
+        }
+    };
+
+    /**
+     * Status values, by code.
+     */
+    private static final StatusValues[] STATUSES = StatusValues.values();
+
+    /**
+     * Directive values, by code.
+     */
+    private static final DirectiveValues[] DIRECTIVES = DirectiveValues
+            .values();
+
+    /**
+     * Code of a missing status or directive.
+     */
+    private static final byte NONE = -1;
+
+    /**
+     * Columns of the Test Results.
+     */
+    private final ResultColumns columns;
+
+    /**
+     * Test Results kept as is, by index, or <code>null</code>.
+     */
+    private Map<Integer, TestResult> extras = null;
+
+    /**
+     * Index plus one of the first Test Result of each number, for numbers up
+     * to a few times the number of Test Results.
+     */
+    private int[] byNumber = new int[16];
+
+    /**
+     * Index of the first Test Result of each greater number, or
+     * <code>null</code>.
+     */
+    private Map<Integer, Integer> bySparseNumber = null;
+
+    /**
+     * Last Test Result added, kept until the next one is added.
+     */
+    private TestResult last = null;
+
+    /**
+     * Number of TAP Lines.
+     */
+    private int lineCount = 0;
+
+    /**
+     * TAP Lines: the index of a Test Result, or <code>-1 - i</code> for the
+     * other line <code>i</code>.
+     */
+    private int[] lines = new int[16];
+
+    /**
+     * TAP Lines other than Test Results.
+     */
+    private final ArrayList<TapResult> others = new ArrayList<TapResult>();
+
+    /**
+     * Default constructor.
+     */
+    public ColumnarTestSet() {
+        this(new ArrayColumns());
+    }
+
+    /**
+     * Constructor with the storage of the Test Results.
+     *
+     * @param columns columns of the Test Results, empty
+     */
+    ColumnarTestSet(ResultColumns columns) {
+        this(columns, new TapLineList(), new TestResultList());
+    }
+
+    /**
+     * Constructor with the views of the columns.
+     *
+     * @param columns columns of the Test Results
+     * @param tapLines view of the TAP Lines
+     * @param testResults view of the Test Results
+     */
+    private ColumnarTestSet(ResultColumns columns, TapLineList tapLines,
+            TestResultList testResults) {
+        super(tapLines, testResults, new ArrayList<BailOut>(),
+                new ArrayList<Comment>());
+        this.columns = columns;
+        tapLines.owner = this;
+        testResults.owner = this;
+    }
+
+    /**
+     * @return a factory of columnar test sets, to be given to a parser
+     */
+    public static TestSetFactory factory() {
+        return FACTORY;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addTestResult(TestResult testResult) {
+        if (!testResult.hasTestNumber()
+                || testResult.getTestNumberValue() <= 0) {
+            testResult.setTestNumber(columns.size() + 1);
+        }
+        addLine(append(testResult));
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TestResult getTestResult(Integer testNumber) {
+        if (testNumber == null) {
+            return null;
+        }
+        final int index = lookup(testNumber);
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * @param number test number
+     * @return index of the first Test Result of the number, or -1
+     */
+    private int lookup(int number) {
+        if (number >= 0 && number < byNumber.length) {
+            return byNumber[number] - 1;
+        }
+        if (bySparseNumber != null) {
+            final Integer index = bySparseNumber.get(number);
+            if (index != null) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Indexes the first Test Result of a number.
+     *
+     * @param number test number
+     * @param index index of the Test Result
+     */
+    private void index(int number, int index) {
+        if (number >= 0 && number < byNumber.length) {
+            byNumber[number] = index + 1;
+            return;
+        }
+        if (number >= 0 && number <= 4 * columns.size() + 16) {
+            // dense numbers: grow the array, moving the sparse ones into it
+            byNumber = Arrays.copyOf(byNumber, Math.max(number + 1,
+                    byNumber.length * 2));
+            if (bySparseNumber != null) {
+                final Map<Integer, Integer> sparse = bySparseNumber;
+                bySparseNumber = null;
+                for (Map.Entry<Integer, Integer> entry : sparse.entrySet()) {
+                    index(entry.getKey(), entry.getValue());
+                }
+            }
+            byNumber[number] = index + 1;
+            return;
+        }
+        if (bySparseNumber == null) {
+            bySparseNumber = new HashMap<Integer, Integer>();
+        }
+        bySparseNumber.put(number, index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasBailOut() {
+        for (TapResult other : others) {
+            if (other instanceof BailOut) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean containsOk() {
+        return indexOf(StatusValues.OK, 0) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean containsNotOk() {
+        return indexOf(StatusValues.NOT_OK, 0) >= 0;
+    }
+
+    /**
+     * @param status status
+     * @return Number of Test Results with the status.
+     */
+    public int getNumberOfTestResults(StatusValues status) {
+        final byte code = code(status);
+        final int size = columns.size();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (columns.status(i) == code) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param directive directive, or <code>null</code> for none
+     * @return Number of Test Results with the directive.
+     */
+    public int getNumberOfTestResults(DirectiveValues directive) {
+        final byte code = code(directive);
+        final int size = columns.size();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (columns.directive(i) == code) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the next Test Result with a status, for instance to scan for
+     * failures.
+     *
+     * @param status status
+     * @param fromIndex index to start from
+     * @return the index of the next Test Result with the status, or -1
+     */
+    public int indexOf(StatusValues status, int fromIndex) {
+        final byte code = code(status);
+        final int size = columns.size();
+        for (int i = Math.max(fromIndex, 0); i < size; i++) {
+            if (columns.status(i) == code) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index index of the Test Result
+     * @return Test Number, or <code>null</code>.
+     */
+    public Integer getTestNumber(int index) {
+        checkIndex(index);
+        final int number = columns.number(index);
+        return number == TestResult.NO_TEST_NUMBER ? null : Integer
+                .valueOf(number);
+    }
+
+    /**
+     * @param index index of the Test Result
+     * @return Status of the test.
+     */
+    public StatusValues getStatus(int index) {
+        checkIndex(index);
+        final byte status = columns.status(index);
+        return status == NONE ? null : STATUSES[status];
+    }
+
+    /**
+     * @param index index of the Test Result
+     * @return Directive value, or <code>null</code>.
+     */
+    public DirectiveValues getDirectiveValue(int index) {
+        checkIndex(index);
+        final byte directive = columns.directive(index);
+        return directive == NONE ? null : DIRECTIVES[directive];
+    }
+
+    /**
+     * @param index index of the Test Result
+     * @return Test description.
+     */
+    public String getDescription(int index) {
+        checkIndex(index);
+        return columns.description(index);
+    }
+
+    /**
+     * @return the Test Results kept as is, rather than only in the columns
+     */
+    Collection<TestResult> getKeptTestResults() {
+        final List<TestResult> kept = new ArrayList<TestResult>();
+        if (extras != null) {
+            kept.addAll(extras.values());
+        }
+        if (last != null) {
+            kept.add(last);
+        }
+        return kept;
+    }
+
+    /**
+     * Stores a Test Result in the columns.
+     *
+     * @param testResult Test Result
+     * @return index of the Test Result
+     */
+    private int append(TestResult testResult) {
+        settle();
+        final Directive directive = testResult.getDirective();
+        if (directive == null) {
+            columns.add(testResult.getTestNumberValue(),
+                    code(testResult.getStatus()), NONE,
+                    testResult.getDescription(), null);
+        } else {
+            columns.add(testResult.getTestNumberValue(),
+                    code(testResult.getStatus()),
+                    code(directive.getDirectiveValue()),
+                    testResult.getDescription(), directive.getReason());
+        }
+        last = testResult;
+        final int index = columns.size() - 1;
+        if (testResult.hasTestNumber()
+                && lookup(testResult.getTestNumberValue()) < 0) {
+            index(testResult.getTestNumberValue(), index);
+        }
+        return index;
+    }
+
+    /**
+     * Keeps the last Test Result added as is if it has a diagnostic,
+     * comments or a subtest, and else drops it.
+     */
+    private void settle() {
+        if (last == null) {
+            return;
+        }
+        if (last.isDiagnosticSet() || last.hasComments()
+                || last.getSubtest() != null) {
+            if (extras == null) {
+                extras = new HashMap<Integer, TestResult>();
+            }
+            extras.put(columns.size() - 1, last);
+        }
+        last = null;
+    }
+
+    /**
+     * Adds a TAP Line.
+     *
+     * @param line index of a Test Result, or <code>-1 - i</code> for the
+     *        other line <code>i</code>
+     */
+    private void addLine(int line) {
+        if (lineCount == lines.length) {
+            lines = Arrays.copyOf(lines, lineCount * 2);
+        }
+        lines[lineCount++] = line;
+    }
+
+    /**
+     * @param index index of a Test Result
+     * @return the Test Result kept as is, or a flyweight
+     */
+    private TestResult get(int index) {
+        checkIndex(index);
+        if (last != null && index == columns.size() - 1) {
+            return last;
+        }
+        if (extras != null) {
+            final TestResult extra = extras.get(index);
+            if (extra != null) {
+                return extra;
+            }
+        }
+        final TestResult testResult = TestResult.withTestNumberValue(
+                getStatus(index), columns.number(index));
+        testResult.setDescription(columns.description(index));
+        final byte directive = columns.directive(index);
+        if (directive != NONE) {
+            testResult.setDirective(new Directive(DIRECTIVES[directive],
+                    columns.reason(index)));
+        }
+        return testResult;
+    }
+
+    /**
+     * @param index index of a Test Result
+     * @throws IndexOutOfBoundsException if there is no Test Result at the
+     *         index
+     */
+    void checkIndex(int index) {
+        if (index < 0 || index >= columns.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                    + columns.size());
+        }
+    }
+
+    /**
+     * @param status status, or <code>null</code>
+     * @return status code
+     */
+    private static byte code(StatusValues status) {
+        return status == null ? NONE : (byte) status.ordinal();
+    }
+
+    /**
+     * @param directive directive, or <code>null</code>
+     * @return directive code
+     */
+    private static byte code(DirectiveValues directive) {
+        return directive == null ? NONE : (byte) directive.ordinal();
+    }
+
+    /**
+     * Columns stored in arrays, with the descriptions and reasons in a
+     * shared character pool.
+     */
+    private static final class ArrayColumns extends ResultColumns {
+
+        /**
+         * Serial Version UID.
+         */
+        private static final long serialVersionUID = -1961207410376484527L;
+
+        /**
+         * Number of Test Results.
+         */
+        private int size = 0;
+
+        /**
+         * Test numbers.
+         */
+        private int[] numbers = new int[16];
+
+        /**
+         * Status codes.
+         */
+        private byte[] statuses = new byte[16];
+
+        /**
+         * Directive codes.
+         */
+        private byte[] directives = new byte[16];
+
+        /**
+         * Offsets of the descriptions in the pool, or -1 for
+         * <code>null</code>.
+         */
+        private int[] descriptions = new int[16];
+
+        /**
+         * Lengths of the descriptions.
+         */
+        private int[] descriptionLengths = new int[16];
+
+        /**
+         * Offsets of the reasons in the pool, or -1 for <code>null</code>.
+         */
+        private int[] reasons = new int[16];
+
+        /**
+         * Lengths of the reasons.
+         */
+        private int[] reasonLengths = new int[16];
+
+        /**
+         * Characters of the descriptions and reasons.
+         */
+        private final StringBuilder pool = new StringBuilder();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        int size() {
+            return size;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        void add(int number, byte status, byte directive, String description,
+                String reason) {
+            if (size == numbers.length) {
+                final int capacity = size * 2;
+                numbers = Arrays.copyOf(numbers, capacity);
+                statuses = Arrays.copyOf(statuses, capacity);
+                directives = Arrays.copyOf(directives, capacity);
+                descriptions = Arrays.copyOf(descriptions, capacity);
+                descriptionLengths = Arrays.copyOf(descriptionLengths,
+                        capacity);
+                reasons = Arrays.copyOf(reasons, capacity);
+                reasonLengths = Arrays.copyOf(reasonLengths, capacity);
+            }
+            numbers[size] = number;
+            statuses[size] = status;
+            directives[size] = directive;
+            descriptions[size] = store(description);
+            descriptionLengths[size] = description == null ? 0 : description
+                    .length();
+            reasons[size] = store(reason);
+            reasonLengths[size] = reason == null ? 0 : reason.length();
+            size++;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        int number(int index) {
+            return numbers[index];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        byte status(int index) {
+            return statuses[index];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        byte directive(int index) {
+            return directives[index];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        String description(int index) {
+            return string(descriptions[index], descriptionLengths[index]);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        String reason(int index) {
+            return string(reasons[index], reasonLengths[index]);
+        }
+
+        /**
+         * @param text text, or <code>null</code>
+         * @return offset of the text in the pool, or -1
+         */
+        private int store(String text) {
+            if (text == null) {
+                return -1;
+            }
+            final int offset = pool.length();
+            pool.append(text);
+            return offset;
+        }
+
+        /**
+         * @param offset offset of the text in the pool, or -1
+         * @param length length of the text
+         * @return the text, or <code>null</code>
+         */
+        private String string(int offset, int length) {
+            return offset < 0 ? null : pool.substring(offset, offset + length);
+        }
+
+    }
+
+    /**
+     * View of the Test Results.
+     */
+    private static final class TestResultList extends AbstractList<TestResult>
+            implements RandomAccess, Serializable {
+
+        /**
+         * Serial Version UID.
+         */
+        private static final long serialVersionUID = -3373213981883553236L;
+
+        /**
+         * Test set of the Test Results.
+         */
+        private ColumnarTestSet owner;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public TestResult get(int index) {
+            return owner.get(index);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return owner.columns.size();
+        }
+
+        /**
+         * Appends a Test Result, without adding it to the TAP Lines.
+         *
+         * @param index must be the size of the list
+         * @param testResult Test Result
+         */
+        @Override
+        public void add(int index, TestResult testResult) {
+            if (index != owner.columns.size()) {
+                throw new UnsupportedOperationException(
+                        "Test Results can only be appended");
+            }
+            owner.append(testResult);
+            modCount++;
+        }
+
+    }
+
+    /**
+     * View of the TAP Lines.
+     */
+    private static final class TapLineList extends AbstractList<TapResult>
+            implements RandomAccess, Serializable {
+
+        /**
+         * Serial Version UID.
+         */
+        private static final long serialVersionUID = 1840364453358813017L;
+
+        /**
+         * Test set of the TAP Lines.
+         */
+        private ColumnarTestSet owner;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public TapResult get(int index) {
+            if (index < 0 || index >= owner.lineCount) {
+                throw new IndexOutOfBoundsException("Index: " + index
+                        + ", Size: " + owner.lineCount);
+            }
+            final int line = owner.lines[index];
+            return line >= 0 ? owner.get(line) : owner.others.get(-1 - line);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return owner.lineCount;
+        }
+
+        /**
+         * Appends a TAP Line, kept as is.
+         *
+         * @param index must be the size of the list
+         * @param tapLine TAP Line
+         */
+        @Override
+        public void add(int index, TapResult tapLine) {
+            if (index != owner.lineCount) {
+                throw new UnsupportedOperationException(
+                        "TAP Lines can only be appended");
+            }
+            owner.others.add(tapLine);
+            owner.addLine(-owner.others.size());
+            modCount++;
+        }
+
+    }
+
+}
@@ -0,0 +1,477 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Test Set backed by array lists, with an index from test number to Test
+ * Result and counters of the Test Results by status and directive, kept up to
+ * date as elements are added to or removed from its lists.
+ * {@link #getTestResult(Integer)}, {@link #hasBailOut()},
+ * {@link #containsOk()} and {@link #containsNotOk()} run in constant time.
+ * <p>
+ * The index and counters are updated when a Test Result is added or
+ * removed, so its number, status and directive must not be changed while it
+ * belongs to the test set, unless {@link #reindex()} is called afterwards.
+ *
+ * @since 4.2
+ */
+public class IndexedTestSet extends TestSet {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = -4046219802574633164L;
+
+    /**
+     * Factory of indexed test sets.
+     */
+    private static final TestSetFactory FACTORY = new TestSetFactory() {
+        public TestSet newTestSet() {
+            return new IndexedTestSet();
+        }
+    };
+
+    /**
+     * Test Results by number, for numbers up to a few times the number of
+     * Test Results.
+     */
+    private transient TestResult[] byNumber;
+
+    /**
+     * Test Results with greater numbers, or <code>null</code>.
+     */
+    private transient Map<Integer, TestResult> bySparseNumber;
+
+    /**
+     * Counters of Test Results by status and directive.
+     */
+    private transient int ok, notOk, skip, todo;
+
+    /**
+     * Number of Bail Outs in the TAP Lines.
+     */
+    private transient int bailOutLines;
+
+    /**
+     * Number of Test Results not indexed, as another one has their number.
+     */
+    private transient int duplicateNumbers;
+
+    /**
+     * Default constructor.
+     */
+    public IndexedTestSet() {
+        this(new TrackedList<TapResult>(false),
+                new TrackedList<TestResult>(true), new ArrayList<BailOut>(),
+                new ArrayList<Comment>());
+    }
+
+    /**
+     * Constructor with the tracked lists.
+     *
+     * @param tapLines List of TAP Lines
+     * @param testResults List of Test Results
+     * @param bailOuts List of Bail Outs
+     * @param comments List of Comments
+     */
+    private IndexedTestSet(TrackedList<TapResult> tapLines,
+            TrackedList<TestResult> testResults, List<BailOut> bailOuts,
+            List<Comment> comments) {
+        super(tapLines, testResults, bailOuts, comments);
+        tapLines.owner = this;
+        testResults.owner = this;
+        this.byNumber = new TestResult[16];
+    }
+
+    /**
+     * @return a factory of indexed test sets, to be given to a parser
+     */
+    public static TestSetFactory factory() {
+        return FACTORY;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TestResult getTestResult(Integer testNumber) {
+        if (testNumber == null) {
+            return null;
+        }
+        return lookup(testNumber);
+    }
+
+    /**
+     * @param number test number
+     * @return the first Test Result with the number, or <code>null</code>
+     */
+    private TestResult lookup(int number) {
+        if (number >= 0 && number < byNumber.length) {
+            return byNumber[number];
+        }
+        return bySparseNumber == null ? null : bySparseNumber.get(number);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasBailOut() {
+        return bailOutLines > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean containsOk() {
+        return ok > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean containsNotOk() {
+        return notOk > 0;
+    }
+
+    /**
+     * @return Number of Test Results with the OK status.
+     */
+    public int getNumberOfOk() {
+        return ok;
+    }
+
+    /**
+     * @return Number of Test Results with the NOT OK status.
+     */
+    public int getNumberOfNotOk() {
+        return notOk;
+    }
+
+    /**
+     * @return Number of Test Results with a SKIP directive.
+     */
+    public int getNumberOfSkip() {
+        return skip;
+    }
+
+    /**
+     * @return Number of Test Results with a TODO directive.
+     */
+    public int getNumberOfTodo() {
+        return todo;
+    }
+
+    /**
+     * Rebuilds the index and the counters, after Test Results of the test set
+     * were changed.
+     */
+    public void reindex() {
+        byNumber = new TestResult[16];
+        bySparseNumber = null;
+        ok = 0;
+        notOk = 0;
+        skip = 0;
+        todo = 0;
+        bailOutLines = 0;
+        duplicateNumbers = 0;
+        for (TestResult testResult : getTestResults()) {
+            added(testResult, true);
+        }
+        for (TapResult tapLine : getTapLines()) {
+            added(tapLine, false);
+        }
+    }
+
+    /**
+     * Indexes and counts an added element.
+     *
+     * @param element element added to one of the tracked lists
+     * @param testResults whether the element was added to the Test Results,
+     *        or else to the TAP Lines
+     */
+    private void added(Object element, boolean testResults) {
+        if (!testResults) {
+            if (element instanceof BailOut) {
+                bailOutLines++;
+            }
+        } else if (element != null) {
+            final TestResult testResult = (TestResult) element;
+            count(testResult, 1);
+            if (testResult.hasTestNumber()) {
+                final int number = testResult.getTestNumberValue();
+                if (lookup(number) == null) {
+                    index(number, testResult);
+                } else {
+                    duplicateNumbers++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Unindexes and uncounts a removed element.
+     *
+     * @param element element removed from one of the tracked lists
+     * @param testResults whether the element was removed from the Test
+     *        Results, or else from the TAP Lines
+     */
+    private void removed(Object element, boolean testResults) {
+        if (!testResults) {
+            if (element instanceof BailOut) {
+                bailOutLines--;
+            }
+        } else if (element != null) {
+            final TestResult testResult = (TestResult) element;
+            count(testResult, -1);
+            if (!testResult.hasTestNumber()) {
+                return;
+            }
+            final int number = testResult.getTestNumberValue();
+            if (lookup(number) != testResult) {
+                duplicateNumbers--;
+                return;
+            }
+            TestResult next = null;
+            if (duplicateNumbers > 0) {
+                for (TestResult other : getTestResults()) {
+                    if (other != testResult
+                            && other.hasTestNumber()
+                            && other.getTestNumberValue() == number) {
+                        next = other;
+                        duplicateNumbers--;
+                        break;
+                    }
+                }
+            }
+            index(number, next);
+        }
+    }
+
+    /**
+     * Updates the counters of a Test Result.
+     *
+     * @param testResult Test Result
+     * @param delta 1 when added, -1 when removed
+     */
+    private void count(TestResult testResult, int delta) {
+        if (testResult.getStatus() == StatusValues.OK) {
+            ok += delta;
+        } else if (testResult.getStatus() == StatusValues.NOT_OK) {
+            notOk += delta;
+        }
+        final Directive directive = testResult.getDirective();
+        if (directive != null) {
+            if (directive.getDirectiveValue() == DirectiveValues.SKIP) {
+                skip += delta;
+            } else if (directive.getDirectiveValue() == DirectiveValues.TODO) {
+                todo += delta;
+            }
+        }
+    }
+
+    /**
+     * Sets the Test Result of a number.
+     *
+     * @param number test number
+     * @param testResult Test Result, or <code>null</code>
+     */
+    private void index(int number, TestResult testResult) {
+        if (number >= 0 && number < byNumber.length) {
+            byNumber[number] = testResult;
+            return;
+        }
+        if (number >= 0 && number <= 4 * getNumberOfTestResults() + 16) {
+            // dense numbers: grow the array, moving the sparse ones into it
+            byNumber = Arrays.copyOf(byNumber, Math.max(number + 1,
+                    byNumber.length * 2));
+            if (bySparseNumber != null) {
+                final Map<Integer, TestResult> sparse = bySparseNumber;
+                bySparseNumber = null;
+                for (Map.Entry<Integer, TestResult> entry : sparse
+                        .entrySet()) {
+                    index(entry.getKey(), entry.getValue());
+                }
+            }
+            byNumber[number] = testResult;
+            return;
+        }
+        if (bySparseNumber == null) {
+            bySparseNumber = new HashMap<Integer, TestResult>();
+        }
+        if (testResult == null) {
+            bySparseNumber.remove(number);
+        } else {
+            bySparseNumber.put(number, testResult);
+        }
+    }
+
+    /**
+     * Rebuilds the index and the counters after deserialization.
+     *
+     * @param in object input stream
+     * @throws IOException if the test set cannot be read
+     * @throws ClassNotFoundException if a class of the test set is missing
+     */
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        reindex();
+    }
+
+    /**
+     * Array list telling the test set of its changes.
+     *
+     * @param <E> type of the elements
+     */
+    private static final class TrackedList<E> extends AbstractList<E>
+            implements RandomAccess, Serializable {
+
+        /**
+         * Serial Version UID.
+         */
+        private static final long serialVersionUID = 5093519290465133302L;
+
+        /**
+         * Elements.
+         */
+        private final ArrayList<E> elements = new ArrayList<E>();
+
+        /**
+         * Whether the list holds the Test Results, or else the TAP Lines.
+         */
+        private final boolean testResults;
+
+        /**
+         * Test set indexing the elements.
+         */
+        private IndexedTestSet owner;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param testResults whether the list holds the Test Results, or else
+         *        the TAP Lines
+         */
+        TrackedList(boolean testResults) {
+            super();
+            this.testResults = testResults;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public E get(int index) {
+            return elements.get(index);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public E set(int index, E element) {
+            final E previous = elements.set(index, element);
+            owner.removed(previous, testResults);
+            owner.added(element, testResults);
+            return previous;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void add(int index, E element) {
+            elements.add(index, element);
+            modCount++;
+            owner.added(element, testResults);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public E remove(int index) {
+            final E previous = elements.remove(index);
+            modCount++;
+            owner.removed(previous, testResults);
+            return previous;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean remove(Object element) {
+            // by identity first, as test results do not override equals
+            for (int i = 0; i < elements.size(); i++) {
+                if (elements.get(i) == element) {
+                    remove(i);
+                    return true;
+                }
+            }
+            return super.remove(element);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            final List<E> range = elements.subList(fromIndex, toIndex);
+            final List<E> removed = new ArrayList<E>(range);
+            range.clear();
+            modCount++;
+            for (E element : removed) {
+                owner.removed(element, testResults);
+            }
+        }
+
+    }
+
+}
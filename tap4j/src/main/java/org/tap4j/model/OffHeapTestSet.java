@@ -0,0 +1,460 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Columnar Test Set storing its Test Results outside of the heap, in direct
+ * byte buffers, so that very large test sets neither fill the heap nor slow
+ * down the garbage collector. The Test Results kept as is, with a diagnostic,
+ * comments or a subtest, and the other TAP Lines stay in the heap.
+ * <p>
+ * {@link #close()} releases the memory right away, along with the memory of
+ * the off-heap subtests, instead of waiting for the buffers to be garbage
+ * collected. The test set must not be used, by any thread, once closed.
+ *
+ * @since 4.2
+ */
+public class OffHeapTestSet extends ColumnarTestSet implements Closeable {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = 4409640575914123287L;
+
+    /**
+     * Factory of off-heap test sets.
+     */
+    private static final TestSetFactory FACTORY = new TestSetFactory() {
+        public TestSet newTestSet() {
+            return new OffHeapTestSet();
+        }
+    };
+
+    /**
+     * Columns of the Test Results.
+     */
+    private final BufferColumns buffers;
+
+    /**
+     * Default constructor.
+     */
+    public OffHeapTestSet() {
+        this(new BufferColumns());
+    }
+
+    /**
+     * Constructor with the columns.
+     *
+     * @param buffers columns of the Test Results
+     */
+    private OffHeapTestSet(BufferColumns buffers) {
+        super(buffers);
+        this.buffers = buffers;
+    }
+
+    /**
+     * @return a factory of off-heap test sets, to be given to a parser
+     */
+    public static TestSetFactory factory() {
+        return FACTORY;
+    }
+
+    /**
+     * @return <code>true</code> once the test set is closed
+     */
+    public boolean isClosed() {
+        return buffers.records == null;
+    }
+
+    /**
+     * Releases the memory of the test set and of its off-heap subtests.
+     */
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+        if (getPlan() != null && getPlan().getSubtest() instanceof OffHeapTestSet) {
+            ((OffHeapTestSet) getPlan().getSubtest()).close();
+        }
+        for (TestResult testResult : getKeptTestResults()) {
+            if (testResult.getSubtest() instanceof OffHeapTestSet) {
+                ((OffHeapTestSet) testResult.getSubtest()).close();
+            }
+        }
+        buffers.close();
+    }
+
+    /**
+     * Columns stored in direct byte buffers: one record of fixed length per
+     * Test Result, and a pool of UTF-8 bytes for the descriptions and
+     * reasons.
+     */
+    private static final class BufferColumns extends ResultColumns {
+
+        /**
+         * Serial Version UID.
+         */
+        private static final long serialVersionUID = -5337614590066823452L;
+
+        /**
+         * Length of a record: the test number, the status and directive
+         * codes, two bytes of padding, and the offsets and lengths of the
+         * description and reason.
+         */
+        private static final int RECORD = 24;
+
+        /**
+         * Releases direct buffers, or <code>null</code> if unsupported.
+         */
+        private static final Releaser RELEASER = Releaser.create();
+
+        /**
+         * Number of Test Results.
+         */
+        private transient int size;
+
+        /**
+         * Records, or <code>null</code> once closed.
+         */
+        private transient ByteBuffer records;
+
+        /**
+         * Bytes of the descriptions and reasons.
+         */
+        private transient ByteBuffer pool;
+
+        /**
+         * Constructor.
+         */
+        BufferColumns() {
+            super();
+            init();
+        }
+
+        /**
+         * Allocates the buffers.
+         */
+        private void init() {
+            this.size = 0;
+            this.records = ByteBuffer.allocateDirect(RECORD * 256);
+            this.pool = ByteBuffer.allocateDirect(4096);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        int size() {
+            checkOpen();
+            return size;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        void add(int number, byte status, byte directive, String description,
+                String reason) {
+            checkOpen();
+            if (records.remaining() < RECORD) {
+                records = grow(records, RECORD);
+            }
+            records.putInt(number);
+            records.put(status);
+            records.put(directive);
+            records.putShort((short) 0);
+            store(description);
+            store(reason);
+            size++;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        int number(int index) {
+            checkOpen();
+            return records.getInt(index * RECORD);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        byte status(int index) {
+            checkOpen();
+            return records.get(index * RECORD + 4);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        byte directive(int index) {
+            checkOpen();
+            return records.get(index * RECORD + 5);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        String description(int index) {
+            checkOpen();
+            return string(index * RECORD + 8);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        String reason(int index) {
+            checkOpen();
+            return string(index * RECORD + 16);
+        }
+
+        /**
+         * Releases the buffers.
+         */
+        void close() {
+            final ByteBuffer closedRecords = records;
+            final ByteBuffer closedPool = pool;
+            records = null;
+            pool = null;
+            if (RELEASER != null) {
+                RELEASER.release(closedRecords);
+                RELEASER.release(closedPool);
+            }
+        }
+
+        /**
+         * @throws IllegalStateException if the test set is closed
+         */
+        private void checkOpen() {
+            if (records == null) {
+                throw new IllegalStateException("Test set closed");
+            }
+        }
+
+        /**
+         * Stores a text in the pool, and its offset and length in the current
+         * record.
+         *
+         * @param text text, or <code>null</code>
+         */
+        private void store(String text) {
+            if (text == null) {
+                records.putInt(-1);
+                records.putInt(0);
+                return;
+            }
+            final byte[] bytes = utf8(text);
+            if (pool.remaining() < bytes.length) {
+                pool = grow(pool, bytes.length);
+            }
+            records.putInt(pool.position());
+            records.putInt(bytes.length);
+            pool.put(bytes);
+        }
+
+        /**
+         * @param field position of the offset and length of the text
+         * @return the text, or <code>null</code>
+         */
+        private String string(int field) {
+            final int offset = records.getInt(field);
+            if (offset < 0) {
+                return null;
+            }
+            final byte[] bytes = new byte[records.getInt(field + 4)];
+            final ByteBuffer text = pool.duplicate();
+            text.position(offset);
+            text.get(bytes);
+            try {
+                return new String(bytes, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @param text text
+         * @return the UTF-8 bytes of the text
+         */
+        private static byte[] utf8(String text) {
+            try {
+                return text.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Moves the content of a buffer to a larger one, releasing it.
+         *
+         * @param buffer buffer, written up to its position
+         * @param needed number of bytes needed after the position
+         * @return the larger buffer, positioned after the content
+         */
+        private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+            final long capacity = Math.max(2L * buffer.capacity(),
+                    (long) buffer.position() + needed);
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException(
+                        "Off-heap test set larger than 2 GB");
+            }
+            final ByteBuffer larger = ByteBuffer.allocateDirect((int) capacity);
+            buffer.flip();
+            larger.put(buffer);
+            if (RELEASER != null) {
+                RELEASER.release(buffer);
+            }
+            return larger;
+        }
+
+        /**
+         * Writes the columns.
+         *
+         * @param out object output stream
+         * @throws IOException if the columns cannot be written
+         */
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            checkOpen();
+            out.defaultWriteObject();
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(number(i));
+                out.writeByte(status(i));
+                out.writeByte(directive(i));
+                out.writeObject(description(i));
+                out.writeObject(reason(i));
+            }
+        }
+
+        /**
+         * Reads the columns into new buffers.
+         *
+         * @param in object input stream
+         * @throws IOException if the columns cannot be read
+         * @throws ClassNotFoundException never
+         */
+        private void readObject(ObjectInputStream in) throws IOException,
+                ClassNotFoundException {
+            in.defaultReadObject();
+            init();
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                add(in.readInt(), in.readByte(), in.readByte(),
+                        (String) in.readObject(), (String) in.readObject());
+            }
+        }
+
+    }
+
+    /**
+     * Releases the memory of direct buffers without waiting for them to be
+     * garbage collected, with the cleaner of the JDK.
+     */
+    private static final class Releaser {
+
+        /**
+         * Instance of sun.misc.Unsafe, on Java 9 and later.
+         */
+        private final Object unsafe;
+
+        /**
+         * Method releasing a buffer: Unsafe.invokeCleaner on Java 9 and later,
+         * or DirectBuffer.cleaner on Java 8.
+         */
+        private final Method method;
+
+        /**
+         * Constructor with parameters.
+         *
+         * @param unsafe instance of sun.misc.Unsafe, or <code>null</code>
+         * @param method method releasing a buffer
+         */
+        private Releaser(Object unsafe, Method method) {
+            this.unsafe = unsafe;
+            this.method = method;
+        }
+
+        /**
+         * @return a releaser, or <code>null</code> if the JDK does not allow
+         *         it, in which case the buffers are left to the garbage
+         *         collector
+         */
+        static Releaser create() {
+            try {
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                try {
+                    final Method invokeCleaner = unsafeClass.getMethod(
+                            "invokeCleaner", ByteBuffer.class);
+                    final Field theUnsafe = unsafeClass
+                            .getDeclaredField("theUnsafe");
+                    theUnsafe.setAccessible(true);
+                    return new Releaser(theUnsafe.get(null), invokeCleaner);
+                } catch (NoSuchMethodException e) {
+                    final Method cleaner = ByteBuffer.allocateDirect(1)
+                            .getClass().getMethod("cleaner");
+                    cleaner.setAccessible(true);
+                    return new Releaser(null, cleaner);
+                }
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        /**
+         * Releases a direct buffer.
+         *
+         * @param buffer direct buffer
+         */
+        void release(ByteBuffer buffer) {
+            try {
+                if (unsafe != null) {
+                    method.invoke(unsafe, buffer);
+                } else {
+                    final Object cleaner = method.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                }
+            } catch (Exception e) {
+                // left to the garbage collector
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import java.io.Serializable;
+
+/**
+ * Storage of the Test Results of a {@link ColumnarTestSet}, one column per
+ * attribute. Statuses and directives are stored as the ordinal of their
+ * value, or <code>-1</code> for <code>null</code>.
+ *
+ * @since 4.2
+ */
+abstract class ResultColumns implements Serializable {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = 3190374586210442716L;
+
+    /**
+     * @return number of Test Results
+     */
+    abstract int size();
+
+    /**
+     * Appends a Test Result.
+     *
+     * @param number test number, or {@link TestResult#NO_TEST_NUMBER}
+     * @param status status code
+     * @param directive directive code
+     * @param description description, or <code>null</code>
+     * @param reason reason of the directive, or <code>null</code>
+     */
+    abstract void add(int number, byte status, byte directive,
+            String description, String reason);
+
+    /**
+     * @param index index of a Test Result
+     * @return test number, or {@link TestResult#NO_TEST_NUMBER}
+     */
+    abstract int number(int index);
+
+    /**
+     * @param index index of a Test Result
+     * @return status code
+     */
+    abstract byte status(int index);
+
+    /**
+     * @param index index of a Test Result
+     * @return directive code
+     */
+    abstract byte directive(int index);
+
+    /**
+     * @param index index of a Test Result
+     * @return description, or <code>null</code>
+     */
+    abstract String description(int index);
+
+    /**
+     * @param index index of a Test Result
+     * @return reason of the directive, or <code>null</code>
+     */
+    abstract String reason(int index);
+
+}
@@ -0,0 +1,265 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import java.io.Serializable;
+
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Totals of one or more TAP Streams: the tests planned, the test results by
+ * status and directive, and the Bail Outs. Only the top level test results
+ * are counted, not the subtests.
+ *
+ * @since 4.2
+ */
+public class TapSummary implements Serializable {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = -5337380426386651014L;
+
+    /**
+     * Number of TAP Streams.
+     */
+    private int numberOfTestSets = 0;
+
+    /**
+     * Number of tests planned.
+     */
+    private int planned = 0;
+
+    /**
+     * Number of test results ok.
+     */
+    private int ok = 0;
+
+    /**
+     * Number of test results not ok.
+     */
+    private int notOk = 0;
+
+    /**
+     * Number of test results with a SKIP directive.
+     */
+    private int skip = 0;
+
+    /**
+     * Number of test results with a TODO directive.
+     */
+    private int todo = 0;
+
+    /**
+     * Number of Bail Outs.
+     */
+    private int bailOuts = 0;
+
+    /**
+     * Number of TAP Streams whose plan is missing or does not match the test
+     * results.
+     */
+    private int planMismatches = 0;
+
+    /**
+     * Default constructor.
+     */
+    public TapSummary() {
+        super();
+    }
+
+    /**
+     * Adds the totals of a test set.
+     *
+     * @param testSet test set
+     */
+    public void add(TestSet testSet) {
+        for (TestResult testResult : testSet.getTestResults()) {
+            final Directive directive = testResult.getDirective();
+            addTestResult(testResult.getStatus(), directive == null ? null
+                    : directive.getDirectiveValue());
+        }
+        for (int i = 0; i < testSet.getNumberOfBailOuts(); i++) {
+            addBailOut();
+        }
+        final Plan plan = testSet.getPlan();
+        addTestSet(plan == null ? -1 : Math.max(0, plan.getLastTestNumber()
+                - plan.getInitialTestNumber() + 1),
+                testSet.getNumberOfTestResults());
+    }
+
+    /**
+     * Counts a Test Result, for summaries built while parsing.
+     *
+     * @param status status of the Test Result
+     * @param directive directive of the Test Result, or <code>null</code>
+     */
+    public void addTestResult(StatusValues status, DirectiveValues directive) {
+        if (status == StatusValues.OK) {
+            ok++;
+        } else if (status == StatusValues.NOT_OK) {
+            notOk++;
+        }
+        if (directive == DirectiveValues.SKIP) {
+            skip++;
+        } else if (directive == DirectiveValues.TODO) {
+            todo++;
+        }
+    }
+
+    /**
+     * Counts a Bail Out!, for summaries built while parsing.
+     */
+    public void addBailOut() {
+        bailOuts++;
+    }
+
+    /**
+     * Counts a test set, once its Test Results were counted.
+     *
+     * @param plannedTests number of tests of the plan, or <code>-1</code>
+     *        without plan
+     * @param testResults number of Test Results of the test set
+     */
+    public void addTestSet(int plannedTests, int testResults) {
+        numberOfTestSets++;
+        if (plannedTests >= 0) {
+            planned += plannedTests;
+        }
+        if (plannedTests != testResults) {
+            planMismatches++;
+        }
+    }
+
+    /**
+     * Adds the totals of another summary.
+     *
+     * @param summary summary
+     */
+    public void add(TapSummary summary) {
+        numberOfTestSets += summary.numberOfTestSets;
+        planned += summary.planned;
+        ok += summary.ok;
+        notOk += summary.notOk;
+        skip += summary.skip;
+        todo += summary.todo;
+        bailOuts += summary.bailOuts;
+        planMismatches += summary.planMismatches;
+    }
+
+    /**
+     * @return number of TAP Streams
+     */
+    public int getNumberOfTestSets() {
+        return numberOfTestSets;
+    }
+
+    /**
+     * @return number of tests planned
+     */
+    public int getPlanned() {
+        return planned;
+    }
+
+    /**
+     * @return number of test results
+     */
+    public int getNumberOfTestResults() {
+        return ok + notOk;
+    }
+
+    /**
+     * @return number of test results ok
+     */
+    public int getOk() {
+        return ok;
+    }
+
+    /**
+     * @return number of test results not ok
+     */
+    public int getNotOk() {
+        return notOk;
+    }
+
+    /**
+     * @return number of test results with a SKIP directive
+     */
+    public int getSkip() {
+        return skip;
+    }
+
+    /**
+     * @return number of test results with a TODO directive
+     */
+    public int getTodo() {
+        return todo;
+    }
+
+    /**
+     * @return number of Bail Outs
+     */
+    public int getBailOuts() {
+        return bailOuts;
+    }
+
+    /**
+     * @return number of TAP Streams whose plan is missing or does not match
+     *         the test results
+     */
+    public int getPlanMismatches() {
+        return planMismatches;
+    }
+
+    /**
+     * @return <code>true</code> if the plan of every TAP Stream matches its
+     *         test results
+     */
+    public boolean isPlanMatched() {
+        return planMismatches == 0;
+    }
+
+    /**
+     * @return <code>true</code> if there is any test result ok
+     */
+    public boolean containsOk() {
+        return ok > 0;
+    }
+
+    /**
+     * @return <code>true</code> if there is any test result not ok
+     */
+    public boolean containsNotOk() {
+        return notOk > 0;
+    }
+
+    /**
+     * @return <code>true</code> if there is any Bail Out
+     */
+    public boolean hasBailOut() {
+        return bailOuts > 0;
+    }
+
+}
@@ -23,13 +23,23 @@
  */
 package org.tap4j.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.tap4j.util.StatusValues;
 
 /**
  * A simple test result. Valid values are <em>OK</em> and <em>NOT OK</em>.
+ * <p>
+ * The comments and diagnostic of a parsed Test Result can be read by several
+ * threads at the same time; changing them from several threads must be
+ * synchronized by the caller.
  *
  * @since 1.0
  */
@@ -40,15 +50,53 @@ public class TestResult extends TapResult {
      */
     private static final long serialVersionUID = -2735372334488828166L;
 
+    /**
+     * Serialized fields, as when the test number was an <code>Integer</code>.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("status", StatusValues.class),
+            new ObjectStreamField("testNumber", Integer.class),
+            new ObjectStreamField("description", String.class),
+            new ObjectStreamField("directive", Directive.class),
+            new ObjectStreamField("subtest", TestSet.class),
+            new ObjectStreamField("comments", List.class) };
+
+    /**
+     * Test number kept by the columns of a {@link ColumnarTestSet} for a
+     * <code>null</code> test number. Test sets only keep positive numbers, see
+     * {@link TestSet#addTestResult(TestResult)}.
+     */
+    static final int NO_TEST_NUMBER = Integer.MIN_VALUE;
+
+    /**
+     * Shared empty list of comments, replaced by a new list when comments are
+     * first added or read.
+     */
+    private static final List<Comment> NO_COMMENTS = Collections.emptyList();
+
+    /**
+     * Replaces {@link #NO_COMMENTS} once, when threads read the comments at
+     * the same time.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TestResult, List>
+            COMMENTS = AtomicReferenceFieldUpdater.newUpdater(
+                    TestResult.class, List.class, "comments");
+
     /**
      * Test Status (OK, NOT OK).
      */
     private StatusValues status;
 
     /**
-     * Test Number.
+     * Test Number, if {@link #numbered}.
+     */
+    private int testNumber;
+
+    /**
+     * Whether the test has a number.
      */
-    private Integer testNumber;
+    private boolean numbered;
 
     /**
      * Description of the test.
@@ -68,7 +116,7 @@ public class TestResult extends TapResult {
     /**
      * Comment.
      */
-    private List<Comment> comments;
+    private volatile List<Comment> comments;
 
     /**
      * Default constructor.
@@ -77,8 +125,9 @@ public class TestResult extends TapResult {
         super();
         this.status = StatusValues.NOT_OK;
         this.testNumber = -1;
+        this.numbered = true;
         this.subtest = null;
-        this.comments = new LinkedList<Comment>();
+        this.comments = NO_COMMENTS;
     }
 
     /**
@@ -88,10 +137,40 @@ public class TestResult extends TapResult {
      * @param testNumber Number of the test.
      */
     public TestResult(StatusValues testStatus, Integer testNumber) {
+        super();
+        this.status = testStatus;
+        this.comments = NO_COMMENTS;
+        this.setTestNumber(testNumber);
+    }
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param testStatus Status of the test.
+     * @param testNumber Number of the test.
+     * @since 4.2
+     */
+    public TestResult(StatusValues testStatus, int testNumber) {
         super();
         this.status = testStatus;
         this.testNumber = testNumber;
-        this.comments = new LinkedList<Comment>();
+        this.numbered = true;
+        this.comments = NO_COMMENTS;
+    }
+
+    /**
+     * Creates a Test Result from a test number kept unboxed.
+     *
+     * @param testStatus Status of the test.
+     * @param testNumber Number of the test, or {@link #NO_TEST_NUMBER}.
+     * @return the Test Result
+     */
+    static TestResult withTestNumberValue(StatusValues testStatus,
+            int testNumber) {
+        if (testNumber == NO_TEST_NUMBER) {
+            return new TestResult(testStatus, null);
+        }
+        return new TestResult(testStatus, testNumber);
     }
 
     /**
@@ -112,14 +191,29 @@ public class TestResult extends TapResult {
      * @return Test Number.
      */
     public Integer getTestNumber() {
-        return this.testNumber;
+        return this.numbered ? Integer.valueOf(this.testNumber) : null;
     }
 
     /**
      * @param testNumber Test Number.
      */
     public void setTestNumber(Integer testNumber) {
-        this.testNumber = testNumber;
+        this.numbered = testNumber != null;
+        this.testNumber = this.numbered ? testNumber.intValue() : 0;
+    }
+
+    /**
+     * @return <code>true</code> if the test has a number
+     */
+    boolean hasTestNumber() {
+        return this.numbered;
+    }
+
+    /**
+     * @return Test Number, without boxing it, if {@link #hasTestNumber()}
+     */
+    int getTestNumberValue() {
+        return this.testNumber;
     }
 
     /**
@@ -168,9 +262,22 @@ public class TestResult extends TapResult {
      * @return The comments for this Test Result.
      */
     public List<Comment> getComments() {
+        final List<Comment> current = this.comments;
+        if (current != NO_COMMENTS) {
+            return current;
+        }
+        COMMENTS.compareAndSet(this, NO_COMMENTS, new LinkedList<Comment>());
         return this.comments;
     }
 
+    /**
+     * @return <code>true</code> if this Test Result has comments.
+     * @since 4.2
+     */
+    public boolean hasComments() {
+        return this.comments != null && !this.comments.isEmpty();
+    }
+
     /**
      * @param comments list of comments for this Test Result.
      */
@@ -184,7 +291,43 @@ public class TestResult extends TapResult {
      * @param comment comment for this Test Result.
      */
     public void addComment(Comment comment) {
-        this.comments.add(comment);
+        this.getComments().add(comment);
+    }
+
+    /**
+     * Writes the Test Result, with an <code>Integer</code> test number.
+     *
+     * @param out object output stream
+     * @throws IOException if the Test Result cannot be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        final ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("status", status);
+        fields.put("testNumber", getTestNumber());
+        fields.put("description", description);
+        fields.put("directive", directive);
+        fields.put("subtest", subtest);
+        fields.put("comments", comments);
+        out.writeFields();
+    }
+
+    /**
+     * Reads the Test Result, with an <code>Integer</code> test number.
+     *
+     * @param in object input stream
+     * @throws IOException if the Test Result cannot be read
+     * @throws ClassNotFoundException if a class of the Test Result is missing
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        final ObjectInputStream.GetField fields = in.readFields();
+        status = (StatusValues) fields.get("status", null);
+        setTestNumber((Integer) fields.get("testNumber", null));
+        description = (String) fields.get("description", null);
+        directive = (Directive) fields.get("directive", null);
+        subtest = (TestSet) fields.get("subtest", null);
+        comments = (List<Comment>) fields.get("comments", null);
     }
 
 }
@@ -84,6 +84,25 @@ public class TestSet implements Serializable {
         super();
     }
 
+    /**
+     * Constructor for test sets with their own storage. The lists must be
+     * empty.
+     *
+     * @param tapLines List of TAP Lines
+     * @param testResults List of Test Results
+     * @param bailOuts List of Bail Outs
+     * @param comments List of Comments
+     * @since 4.2
+     */
+    protected TestSet(List<TapResult> tapLines, List<TestResult> testResults,
+            List<BailOut> bailOuts, List<Comment> comments) {
+        super();
+        this.tapLines = tapLines;
+        this.testResults = testResults;
+        this.bailOuts = bailOuts;
+        this.comments = comments;
+    }
+
     /**
      * @return TAP Header.
      */
@@ -167,8 +186,8 @@ public class TestSet implements Serializable {
      * @return Whether could add to TestResult list or not.
      */
     public boolean addTestResult(TestResult testResult) {
-        if (testResult.getTestNumber() == null
-                || testResult.getTestNumber() <= 0) {
+        if (!testResult.hasTestNumber()
+                || testResult.getTestNumberValue() <= 0) {
             testResult.setTestNumber(this.testResults.size() + 1);
         }
         this.testResults.add(testResult);
@@ -356,8 +375,13 @@ public class TestSet implements Serializable {
      */
     public TestResult getTestResult(Integer testNumber) {
         TestResult foundTestResult = null;
+        if (testNumber == null) {
+            return null;
+        }
+        final int number = testNumber;
         for (TestResult testResult : this.testResults) {
-            if (testResult.getTestNumber().equals(testNumber)) {
+            if (testResult.hasTestNumber()
+                    && testResult.getTestNumberValue() == number) {
                 foundTestResult = testResult;
                 break;
             }
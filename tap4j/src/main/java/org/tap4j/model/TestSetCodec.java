@@ -0,0 +1,1047 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Compact binary format of Test Sets, to store parsed TAP Streams and load
+ * them back without parsing any text.
+ * <p>
+ * An encoded Test Set starts with the magic bytes <code>TAPB</code> and the
+ * format version, followed by the lengths of the string table and of the
+ * body, then the string table and the body. Every text is written once in
+ * the string table and referenced by its index, so repeated descriptions and
+ * diagnostic keys cost a few bytes. Numbers, counts and lengths are varints,
+ * and each diagnostic is prefixed with its length. The TAP Lines are written
+ * in order, with their diagnostic, comments and subtests, and added back to
+ * new Test Sets.
+ * <p>
+ * Diagnostic keys and values can be strings, booleans, numbers, dates, lists
+ * and maps, as loaded from YAML. Other values cannot be encoded, and no class
+ * is instantiated when decoding.
+ * <p>
+ * Instances are immutable and thread-safe.
+ *
+ * @since 4.2
+ */
+public class TestSetCodec {
+
+    /**
+     * Magic bytes.
+     */
+    private static final byte[] MAGIC = {'T', 'A', 'P', 'B' };
+
+    /**
+     * Version of the format written.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Tags of the TAP Lines.
+     */
+    private static final int TEST_RESULT = 1, BAIL_OUT = 2, COMMENT = 3,
+            TEXT = 4;
+
+    /**
+     * Tags of the diagnostic values.
+     */
+    private static final int NULL = 0, STRING = 1, TRUE = 2, FALSE = 3,
+            INT = 4, LONG = 5, DOUBLE = 6, LIST = 7, MAP = 8, BIG_INTEGER = 9,
+            DATE = 10;
+
+    /**
+     * Flags of the Test Results, after the two bits of the status and the two
+     * bits of the directive.
+     */
+    private static final int DIRECTIVE = 16, COMMENTS = 32, SUBTEST = 64,
+            NO_NUMBER = 128;
+
+    /**
+     * Statuses, coded by their position plus one, 0 being <code>null</code>.
+     */
+    private static final StatusValues[] STATUSES = StatusValues.values();
+
+    /**
+     * Directive values, coded by their position plus one, 0 being
+     * <code>null</code>.
+     */
+    private static final DirectiveValues[] DIRECTIVES = DirectiveValues
+            .values();
+
+    /**
+     * Factory of the Test Sets read, or <code>null</code> for {@link TestSet}.
+     */
+    private final TestSetFactory testSetFactory;
+
+    /**
+     * Default constructor, reading {@link TestSet}s.
+     */
+    public TestSetCodec() {
+        this(null);
+    }
+
+    /**
+     * Constructor with the factory of the Test Sets read, including the
+     * subtests, for instance {@link ColumnarTestSet#factory()}.
+     *
+     * @param testSetFactory factory of Test Sets, or <code>null</code> for
+     *        {@link TestSet}
+     */
+    public TestSetCodec(TestSetFactory testSetFactory) {
+        super();
+        this.testSetFactory = testSetFactory;
+    }
+
+    /**
+     * @param testSet Test Set
+     * @return the encoded Test Set
+     * @throws NotSerializableException if a diagnostic value or a TAP Line
+     *         cannot be encoded
+     */
+    public byte[] encode(TestSet testSet) throws NotSerializableException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(testSet, bytes);
+        } catch (NotSerializableException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes an encoded Test Set. The stream is neither buffered nor closed.
+     *
+     * @param testSet Test Set
+     * @param out output stream
+     * @throws IOException if an I/O error occurs, or a diagnostic value or a
+     *         TAP Line cannot be encoded
+     */
+    public void write(TestSet testSet, OutputStream out) throws IOException {
+        final Encoder encoder = new Encoder();
+        encoder.testSet(testSet);
+        final Output header = new Output();
+        header.write(MAGIC, 0, MAGIC.length);
+        header.varint(VERSION);
+        header.varint(encoder.table.size());
+        header.varint(encoder.body.size());
+        header.writeTo(out);
+        encoder.table.writeTo(out);
+        encoder.body.writeTo(out);
+    }
+
+    /**
+     * Writes an encoded Test Set to a file.
+     *
+     * @param testSet Test Set
+     * @param file file
+     * @throws IOException if an I/O error occurs, or a diagnostic value or a
+     *         TAP Line cannot be encoded
+     */
+    public void write(TestSet testSet, File file) throws IOException {
+        final OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file));
+        try {
+            write(testSet, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param bytes encoded Test Set
+     * @return the Test Set
+     * @throws IOException if the bytes are not an encoded Test Set, or are
+     *         encoded in an unsupported version
+     */
+    public TestSet decode(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Reads an encoded Test Set. The stream is read up to the end of the Test
+     * Set, and is not closed.
+     *
+     * @param in input stream
+     * @return the Test Set
+     * @throws IOException if an I/O error occurs, the stream is not an encoded
+     *         Test Set, or it is encoded in an unsupported version
+     */
+    public TestSet read(InputStream in) throws IOException {
+        final byte[] magic = new byte[MAGIC.length];
+        readFully(in, magic, magic.length);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not an encoded test set");
+        }
+        final long version = varint(in);
+        if (version != VERSION) {
+            throw new IOException("Unsupported test set version: " + version);
+        }
+        final long tableLength = varint(in);
+        final long bodyLength = varint(in);
+        if (tableLength + bodyLength > Integer.MAX_VALUE) {
+            throw new IOException("Encoded test set too large");
+        }
+        final byte[] bytes = new byte[(int) (tableLength + bodyLength)];
+        readFully(in, bytes, bytes.length);
+        final Input table = new Input(bytes, 0, (int) tableLength);
+        final Input body = new Input(bytes, (int) tableLength, bytes.length);
+        final Decoder decoder = new Decoder(table, body);
+        final TestSet testSet = decoder.testSet();
+        if (body.position != body.limit) {
+            throw new IOException("Corrupt test set: unexpected bytes");
+        }
+        return testSet;
+    }
+
+    /**
+     * Reads an encoded Test Set from a file.
+     *
+     * @param file file
+     * @return the Test Set
+     * @throws IOException if an I/O error occurs, the file is not an encoded
+     *         Test Set, or it is encoded in an unsupported version
+     */
+    public TestSet read(File file) throws IOException {
+        final InputStream in = new BufferedInputStream(
+                new FileInputStream(file));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return a new Test Set
+     */
+    private TestSet newTestSet() {
+        return testSetFactory == null ? new TestSet() : testSetFactory
+                .newTestSet();
+    }
+
+    /**
+     * Reads bytes from a stream.
+     *
+     * @param in input stream
+     * @param bytes array filled
+     * @param length number of bytes
+     * @throws IOException if an I/O error occurs or the stream ends
+     */
+    private static void readFully(InputStream in, byte[] bytes, int length)
+            throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int count = in.read(bytes, read, length - read);
+            if (count < 0) {
+                throw new EOFException("Truncated test set");
+            }
+            read += count;
+        }
+    }
+
+    /**
+     * Reads a varint from a stream.
+     *
+     * @param in input stream
+     * @return the value
+     * @throws IOException if an I/O error occurs or the varint is invalid
+     */
+    private static long varint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated test set");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt test set: invalid varint");
+    }
+
+    /**
+     * Growable array of bytes, written with varints.
+     */
+    private static final class Output extends ByteArrayOutputStream {
+
+        /**
+         * Constructor.
+         */
+        Output() {
+            super(256);
+        }
+
+        /**
+         * Writes an unsigned varint.
+         *
+         * @param value value, as unsigned
+         */
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        /**
+         * Writes a signed value as a zigzag varint.
+         *
+         * @param value value
+         */
+        void signed(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Writes the content of another output, prefixed with its length.
+         *
+         * @param other output
+         */
+        void block(Output other) {
+            varint(other.count);
+            write(other.buf, 0, other.count);
+        }
+
+    }
+
+    /**
+     * Encodes a Test Set into a string table and a body.
+     */
+    private static final class Encoder {
+
+        /**
+         * Texts, each written once.
+         */
+        private final Output table = new Output();
+
+        /**
+         * Encoded Test Set.
+         */
+        private final Output body = new Output();
+
+        /**
+         * Diagnostic being encoded.
+         */
+        private final Output diagnostic = new Output();
+
+        /**
+         * Index of the texts in the table.
+         */
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        /**
+         * Encodes a Test Set and its subtests.
+         *
+         * @param testSet Test Set
+         * @throws IOException if a diagnostic value or a TAP Line cannot be
+         *         encoded
+         */
+        void testSet(TestSet testSet) throws IOException {
+            final Header header = testSet.getHeader();
+            body.varint(header == null ? 0 : 1);
+            if (header != null) {
+                integer(body, header.getVersion());
+                comment(header.getComment());
+                diagnostic(header);
+            }
+            final Plan plan = testSet.getPlan();
+            body.varint(plan == null ? 0 : 1);
+            if (plan != null) {
+                integer(body, plan.getInitialTestNumber());
+                integer(body, plan.getLastTestNumber());
+                body.varint(plan.getSkip() == null ? 0 : 1);
+                if (plan.getSkip() != null) {
+                    string(body, plan.getSkip().getReason());
+                }
+                comment(plan.getComment());
+                diagnostic(plan);
+                subtest(plan.getSubtest());
+            }
+            final List<TapResult> tapLines = testSet.getTapLines();
+            body.varint(tapLines.size());
+            for (TapResult tapLine : tapLines) {
+                tapLine(tapLine);
+            }
+            final Footer footer = testSet.getFooter();
+            body.varint(footer == null ? 0 : 1);
+            if (footer != null) {
+                string(body, footer.getText());
+                comment(footer.getComment());
+                diagnostic(footer);
+            }
+        }
+
+        /**
+         * Encodes a TAP Line.
+         *
+         * @param tapLine TAP Line
+         * @throws IOException if a diagnostic value or the TAP Line cannot be
+         *         encoded
+         */
+        private void tapLine(TapResult tapLine) throws IOException {
+            if (tapLine instanceof TestResult) {
+                body.varint(TEST_RESULT);
+                testResult((TestResult) tapLine);
+            } else if (tapLine instanceof BailOut) {
+                final BailOut bailOut = (BailOut) tapLine;
+                body.varint(BAIL_OUT);
+                string(body, bailOut.getReason());
+                comment(bailOut.getComment());
+                diagnostic(bailOut);
+            } else if (tapLine instanceof Comment) {
+                body.varint(COMMENT);
+                comment((Comment) tapLine);
+            } else if (tapLine instanceof Text) {
+                body.varint(TEXT);
+                string(body, ((Text) tapLine).getValue());
+                diagnostic(tapLine);
+            } else {
+                throw new NotSerializableException(tapLine == null ? "null"
+                        : tapLine.getClass().getName());
+            }
+        }
+
+        /**
+         * Encodes a Test Result.
+         *
+         * @param testResult Test Result
+         * @throws IOException if a diagnostic value cannot be encoded
+         */
+        private void testResult(TestResult testResult) throws IOException {
+            final Directive directive = testResult.getDirective();
+            int flags = code(testResult.getStatus());
+            if (directive != null) {
+                flags |= DIRECTIVE | code(directive.getDirectiveValue()) << 2;
+            }
+            if (testResult.hasComments()) {
+                flags |= COMMENTS;
+            }
+            if (testResult.getSubtest() != null) {
+                flags |= SUBTEST;
+            }
+            if (!testResult.hasTestNumber()) {
+                flags |= NO_NUMBER;
+            }
+            body.varint(flags);
+            if (testResult.hasTestNumber()) {
+                body.signed(testResult.getTestNumberValue());
+            }
+            string(body, testResult.getDescription());
+            if (directive != null) {
+                string(body, directive.getReason());
+            }
+            if (testResult.hasComments()) {
+                final List<Comment> comments = testResult.getComments();
+                body.varint(comments.size());
+                for (Comment comment : comments) {
+                    comment(comment);
+                }
+            }
+            diagnostic(testResult);
+            if (testResult.getSubtest() != null) {
+                testSet(testResult.getSubtest());
+            }
+        }
+
+        /**
+         * Encodes a comment: 0 if absent, 1 or 2 if inline, then its text and
+         * diagnostic.
+         *
+         * @param comment comment, or <code>null</code>
+         * @throws IOException if a diagnostic value cannot be encoded
+         */
+        private void comment(Comment comment) throws IOException {
+            if (comment == null) {
+                body.varint(0);
+                return;
+            }
+            body.varint(comment.isInline() ? 2 : 1);
+            string(body, comment.getText());
+            diagnostic(comment);
+        }
+
+        /**
+         * Encodes a subtest, if any.
+         *
+         * @param subtest subtest, or <code>null</code>
+         * @throws IOException if a diagnostic value or a TAP Line cannot be
+         *         encoded
+         */
+        private void subtest(TestSet subtest) throws IOException {
+            body.varint(subtest == null ? 0 : 1);
+            if (subtest != null) {
+                testSet(subtest);
+            }
+        }
+
+        /**
+         * Encodes the diagnostic of an element, prefixed with its length,
+         * which is 0 without diagnostic.
+         *
+         * @param element TAP element
+         * @throws IOException if a diagnostic value cannot be encoded
+         */
+        private void diagnostic(AbstractTapElementDiagnostic element)
+                throws IOException {
+            if (!element.hasDiagnostic()) {
+                body.varint(0);
+                return;
+            }
+            diagnostic.reset();
+            final Map<?, ?> map = element.getDiagnostic();
+            diagnostic.varint(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                value(entry.getKey());
+                value(entry.getValue());
+            }
+            body.block(diagnostic);
+        }
+
+        /**
+         * Encodes a diagnostic value.
+         *
+         * @param value value
+         * @throws IOException if the value cannot be encoded
+         */
+        private void value(Object value) throws IOException {
+            if (value == null) {
+                diagnostic.varint(NULL);
+            } else if (value instanceof String) {
+                diagnostic.varint(STRING);
+                string(diagnostic, (String) value);
+            } else if (value instanceof Boolean) {
+                diagnostic.varint(((Boolean) value).booleanValue() ? TRUE
+                        : FALSE);
+            } else if (value instanceof Integer) {
+                diagnostic.varint(INT);
+                diagnostic.signed(((Integer) value).intValue());
+            } else if (value instanceof Long) {
+                diagnostic.varint(LONG);
+                diagnostic.signed(((Long) value).longValue());
+            } else if (value instanceof Double) {
+                diagnostic.varint(DOUBLE);
+                diagnostic.varint(Double.doubleToRawLongBits(((Double) value)
+                        .doubleValue()));
+            } else if (value instanceof BigInteger) {
+                diagnostic.varint(BIG_INTEGER);
+                string(diagnostic, value.toString());
+            } else if (value instanceof List) {
+                final List<?> list = (List<?>) value;
+                diagnostic.varint(LIST);
+                diagnostic.varint(list.size());
+                for (Object item : list) {
+                    value(item);
+                }
+            } else if (value instanceof Map) {
+                final Map<?, ?> map = (Map<?, ?>) value;
+                diagnostic.varint(MAP);
+                diagnostic.varint(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    value(entry.getKey());
+                    value(entry.getValue());
+                }
+            } else if (value instanceof Date) {
+                diagnostic.varint(DATE);
+                diagnostic.signed(((Date) value).getTime());
+            } else {
+                throw new NotSerializableException(value.getClass().getName());
+            }
+        }
+
+        /**
+         * Encodes a text as its index in the string table plus one, adding it
+         * to the table if needed, or 0 if <code>null</code>.
+         *
+         * @param output output
+         * @param text text, or <code>null</code>
+         */
+        private void string(Output output, String text) {
+            if (text == null) {
+                output.varint(0);
+                return;
+            }
+            Integer index = strings.get(text);
+            if (index == null) {
+                index = Integer.valueOf(strings.size());
+                strings.put(text, index);
+                final byte[] bytes = utf8(text);
+                table.varint(bytes.length);
+                table.write(bytes, 0, bytes.length);
+            }
+            output.varint(index.intValue() + 1L);
+        }
+
+        /**
+         * Encodes an integer, or 0 if <code>null</code>.
+         *
+         * @param output output
+         * @param value integer, or <code>null</code>
+         */
+        private static void integer(Output output, Integer value) {
+            if (value == null) {
+                output.varint(0);
+            } else {
+                final int i = value.intValue();
+                output.varint((((i << 1) ^ (i >> 31)) & 0xFFFFFFFFL) + 1);
+            }
+        }
+
+        /**
+         * @param status status
+         * @return its code
+         */
+        private static int code(StatusValues status) {
+            return status == null ? 0 : status.ordinal() + 1;
+        }
+
+        /**
+         * @param directive directive value
+         * @return its code
+         */
+        private static int code(DirectiveValues directive) {
+            return directive == null ? 0 : directive.ordinal() + 1;
+        }
+
+        /**
+         * @param text text
+         * @return its UTF-8 bytes
+         */
+        private static byte[] utf8(String text) {
+            try {
+                return text.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+    /**
+     * Bytes being decoded.
+     */
+    private static final class Input {
+
+        /**
+         * Bytes.
+         */
+        private final byte[] bytes;
+
+        /**
+         * Position of the next byte.
+         */
+        private int position;
+
+        /**
+         * End of the bytes to decode.
+         */
+        private final int limit;
+
+        /**
+         * Constructor.
+         *
+         * @param bytes bytes
+         * @param position position of the first byte
+         * @param limit end of the bytes to decode
+         */
+        Input(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        /**
+         * @return the number of bytes left
+         */
+        int remaining() {
+            return limit - position;
+        }
+
+        /**
+         * @return the next varint
+         * @throws IOException if the varint is invalid or truncated
+         */
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw new EOFException("Truncated test set");
+                }
+                final byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt test set: invalid varint");
+        }
+
+        /**
+         * @return the next zigzag varint
+         * @throws IOException if the varint is invalid or truncated
+         */
+        long signed() throws IOException {
+            final long value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * @return the next count, at most the number of bytes left
+         * @throws IOException if the count is invalid
+         */
+        int count() throws IOException {
+            final long count = varint();
+            if (count > remaining()) {
+                throw new IOException("Corrupt test set: invalid count "
+                        + count);
+            }
+            return (int) count;
+        }
+
+    }
+
+    /**
+     * Decodes a Test Set from a string table and a body.
+     */
+    private final class Decoder {
+
+        /**
+         * Texts.
+         */
+        private final String[] strings;
+
+        /**
+         * Encoded Test Set.
+         */
+        private final Input body;
+
+        /**
+         * Constructor, decoding the string table.
+         *
+         * @param table string table
+         * @param body encoded Test Set
+         * @throws IOException if the string table is corrupt
+         */
+        Decoder(Input table, Input body) throws IOException {
+            this.body = body;
+            final List<String> texts = new ArrayList<String>();
+            while (table.remaining() > 0) {
+                final int length = table.count();
+                texts.add(new String(table.bytes, table.position, length,
+                        "UTF-8"));
+                table.position += length;
+            }
+            this.strings = texts.toArray(new String[texts.size()]);
+        }
+
+        /**
+         * Decodes a Test Set and its subtests.
+         *
+         * @return the Test Set
+         * @throws IOException if the Test Set is corrupt
+         */
+        TestSet testSet() throws IOException {
+            final TestSet testSet = newTestSet();
+            if (present()) {
+                final Header header = new Header(integer());
+                header.setComment(comment());
+                diagnostic(header);
+                testSet.setHeader(header);
+            }
+            if (present()) {
+                final Plan plan = new Plan(integer(), integer());
+                if (present()) {
+                    plan.setSkip(new SkipPlan(string()));
+                }
+                plan.setComment(comment());
+                diagnostic(plan);
+                if (present()) {
+                    plan.setSubtest(testSet());
+                }
+                testSet.setPlan(plan);
+            }
+            final int tapLines = body.count();
+            for (int i = 0; i < tapLines; i++) {
+                tapLine(testSet);
+            }
+            if (present()) {
+                final Footer footer = new Footer(string());
+                footer.setComment(comment());
+                diagnostic(footer);
+                testSet.setFooter(footer);
+            }
+            return testSet;
+        }
+
+        /**
+         * Decodes a TAP Line, and adds it to its Test Set.
+         *
+         * @param testSet Test Set
+         * @throws IOException if the TAP Line is corrupt
+         */
+        private void tapLine(TestSet testSet) throws IOException {
+            final long tag = body.varint();
+            if (tag == TEST_RESULT) {
+                testSet.addTestResult(testResult());
+            } else if (tag == BAIL_OUT) {
+                final BailOut bailOut = new BailOut(string());
+                bailOut.setComment(comment());
+                diagnostic(bailOut);
+                testSet.addBailOut(bailOut);
+            } else if (tag == COMMENT) {
+                final Comment comment = comment();
+                if (comment == null) {
+                    throw new IOException("Corrupt test set: missing comment");
+                }
+                testSet.addComment(comment);
+            } else if (tag == TEXT) {
+                final Text text = new Text(string());
+                diagnostic(text);
+                testSet.addTapLine(text);
+            } else {
+                throw new IOException("Corrupt test set: invalid TAP line "
+                        + tag);
+            }
+        }
+
+        /**
+         * Decodes a Test Result, completely, before it is added to its Test
+         * Set.
+         *
+         * @return the Test Result
+         * @throws IOException if the Test Result is corrupt
+         */
+        private TestResult testResult() throws IOException {
+            final int flags = (int) body.varint();
+            final TestResult testResult = (flags & NO_NUMBER) != 0
+                    ? new TestResult(status(flags & 3), null)
+                    : new TestResult(status(flags & 3), (int) body.signed());
+            testResult.setDescription(string());
+            if ((flags & DIRECTIVE) != 0) {
+                testResult.setDirective(new Directive(
+                        directive(flags >> 2 & 3), string()));
+            }
+            if ((flags & COMMENTS) != 0) {
+                final int comments = body.count();
+                for (int i = 0; i < comments; i++) {
+                    testResult.addComment(comment());
+                }
+            }
+            diagnostic(testResult);
+            if ((flags & SUBTEST) != 0) {
+                testResult.setSubtest(testSet());
+            }
+            return testResult;
+        }
+
+        /**
+         * @return the next comment, or <code>null</code>
+         * @throws IOException if the comment is corrupt
+         */
+        private Comment comment() throws IOException {
+            final long kind = body.varint();
+            if (kind == 0) {
+                return null;
+            }
+            final Comment comment = new Comment(string(), kind == 2);
+            diagnostic(comment);
+            return comment;
+        }
+
+        /**
+         * Decodes the diagnostic of an element, if any.
+         *
+         * @param element TAP element
+         * @throws IOException if the diagnostic is corrupt
+         */
+        @SuppressWarnings({"unchecked", "rawtypes" })
+        private void diagnostic(AbstractTapElementDiagnostic element)
+                throws IOException {
+            final int length = body.count();
+            if (length == 0) {
+                return;
+            }
+            final int end = body.position + length;
+            // keys are not all strings, as with YAML
+            final Map diagnostic = map();
+            if (body.position != end) {
+                throw new IOException("Corrupt test set: invalid diagnostic");
+            }
+            element.setDiagnostic(diagnostic);
+        }
+
+        /**
+         * @return the next map of diagnostic keys and values
+         * @throws IOException if the map is corrupt
+         */
+        private Map<Object, Object> map() throws IOException {
+            final int entries = body.count();
+            final Map<Object, Object> map = new LinkedHashMap<Object, Object>(
+                    entries * 4 / 3 + 1);
+            for (int i = 0; i < entries; i++) {
+                map.put(value(), value());
+            }
+            return map;
+        }
+
+        /**
+         * @return the next diagnostic value
+         * @throws IOException if the value is corrupt
+         */
+        private Object value() throws IOException {
+            final long tag = body.varint();
+            switch ((int) tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return string();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return Integer.valueOf((int) body.signed());
+            case LONG:
+                return Long.valueOf(body.signed());
+            case DOUBLE:
+                return Double.valueOf(Double.longBitsToDouble(body.varint()));
+            case BIG_INTEGER:
+                final String digits = string();
+                try {
+                    return new BigInteger(digits);
+                } catch (RuntimeException e) {
+                    // null or not a number
+                    throw new IOException("Corrupt test set: invalid number "
+                            + digits);
+                }
+            case DATE:
+                return new Date(body.signed());
+            case LIST:
+                final int size = body.count();
+                final List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(value());
+                }
+                return list;
+            case MAP:
+                return map();
+            default:
+                throw new IOException("Corrupt test set: invalid value "
+                        + tag);
+            }
+        }
+
+        /**
+         * @return whether the next element is present
+         * @throws IOException if the flag is corrupt
+         */
+        private boolean present() throws IOException {
+            final long flag = body.varint();
+            if (flag > 1) {
+                throw new IOException("Corrupt test set: invalid flag " + flag);
+            }
+            return flag == 1;
+        }
+
+        /**
+         * @return the next text, or <code>null</code>
+         * @throws IOException if the reference is invalid
+         */
+        private String string() throws IOException {
+            final long index = body.varint();
+            if (index > strings.length) {
+                throw new IOException("Corrupt test set: invalid string "
+                        + index);
+            }
+            return index == 0 ? null : strings[(int) index - 1];
+        }
+
+        /**
+         * @return the next integer, or <code>null</code>
+         * @throws IOException if the integer is invalid
+         */
+        private Integer integer() throws IOException {
+            final long value = body.varint();
+            if (value == 0) {
+                return null;
+            }
+            final int zigzag = (int) (value - 1);
+            return Integer.valueOf((zigzag >>> 1) ^ -(zigzag & 1));
+        }
+
+        /**
+         * @param code status code
+         * @return the status
+         * @throws IOException if the code is invalid
+         */
+        private StatusValues status(int code) throws IOException {
+            if (code > STATUSES.length) {
+                throw new IOException("Corrupt test set: invalid status");
+            }
+            return code == 0 ? null : STATUSES[code - 1];
+        }
+
+        /**
+         * @param code directive code
+         * @return the directive value
+         * @throws IOException if the code is invalid
+         */
+        private DirectiveValues directive(int code) throws IOException {
+            if (code > DIRECTIVES.length) {
+                throw new IOException("Corrupt test set: invalid directive");
+            }
+            return code == 0 ? null : DIRECTIVES[code - 1];
+        }
+
+    }
+
+}
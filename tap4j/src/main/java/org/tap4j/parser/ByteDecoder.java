@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.nio.charset.Charset;
+
+/**
+ * Decoder for lines of UTF-8, US-ASCII and ISO-8859-1 bytes. Malformed input
+ * is decoded as U+FFFD. The decoded characters are kept in a reusable array.
+ *
+ * @since 4.2
+ */
+final class ByteDecoder {
+
+    /**
+     * Character used for malformed input.
+     */
+    private static final char REPLACEMENT = '\uFFFD';
+
+    /**
+     * Decoders.
+     */
+    private static final int UTF_8 = 0, US_ASCII = 1, ISO_8859_1 = 2;
+
+    /**
+     * Decoder used.
+     */
+    private final int decoder;
+
+    /**
+     * Decoded characters of the line.
+     */
+    private char[] chars = new char[256];
+
+    /**
+     * Code point decoded by {@link #decodeUtf8(byte[], int, int)}.
+     */
+    private int codePoint;
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param charset UTF-8, US-ASCII or ISO-8859-1
+     */
+    ByteDecoder(Charset charset) {
+        super();
+        final String name = charset.name();
+        if ("US-ASCII".equals(name)) {
+            this.decoder = US_ASCII;
+        } else if ("ISO-8859-1".equals(name)) {
+            this.decoder = ISO_8859_1;
+        } else {
+            this.decoder = UTF_8;
+        }
+    }
+
+    /**
+     * @param charset charset
+     * @return <code>true</code> if the charset can be decoded
+     */
+    static boolean isSupported(Charset charset) {
+        final String name = charset.name();
+        return "UTF-8".equals(name) || "US-ASCII".equals(name)
+                || "ISO-8859-1".equals(name);
+    }
+
+    /**
+     * @return <code>true</code> if every byte is decoded as the character
+     *         with the same value
+     */
+    boolean isLatin1() {
+        return decoder == ISO_8859_1;
+    }
+
+    /**
+     * Decodes a line.
+     *
+     * @param in bytes
+     * @param from first byte of the line
+     * @param to end of the line
+     * @param line view set to the decoded line
+     */
+    void decode(byte[] in, int from, int to, LineBuffer line) {
+        if (chars.length < to - from) {
+            chars = new char[Math.max(to - from, chars.length * 2)];
+        }
+        final char[] out = chars;
+        int i = from;
+        int j = 0;
+        if (decoder == ISO_8859_1) {
+            while (i < to) {
+                out[j++] = (char) (in[i++] & 0xFF);
+            }
+        } else if (decoder == US_ASCII) {
+            while (i < to) {
+                final byte b = in[i++];
+                out[j++] = b >= 0 ? (char) b : REPLACEMENT;
+            }
+        } else {
+            while (i < to) {
+                final byte b = in[i];
+                if (b >= 0) {
+                    out[j++] = (char) b;
+                    i++;
+                } else {
+                    i = decodeUtf8(in, i, to);
+                    j = appendDecoded(out, j);
+                }
+            }
+        }
+        line.set(out, 0, j);
+    }
+
+    /**
+     * Decodes a multi-byte UTF-8 sequence into {@link #codePoint}. Malformed
+     * sequences are decoded as {@link #REPLACEMENT}, one byte at a time.
+     *
+     * @param in bytes
+     * @param i position of the first byte
+     * @param to end of the line
+     * @return position after the sequence
+     */
+    private int decodeUtf8(byte[] in, int i, int to) {
+        final int b0 = in[i] & 0xFF;
+        codePoint = REPLACEMENT;
+        if (b0 >= 0xC2 && b0 <= 0xDF) {
+            if (i + 1 < to && isContinuation(in[i + 1])) {
+                codePoint = ((b0 & 0x1F) << 6) | (in[i + 1] & 0x3F);
+                return i + 2;
+            }
+        } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+            if (i + 2 < to && isContinuation(in[i + 1])
+                    && isContinuation(in[i + 2])) {
+                final int c = ((b0 & 0x0F) << 12) | ((in[i + 1] & 0x3F) << 6)
+                        | (in[i + 2] & 0x3F);
+                if (c >= 0x800 && (c < 0xD800 || c > 0xDFFF)) {
+                    codePoint = c;
+                    return i + 3;
+                }
+            }
+        } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+            if (i + 3 < to && isContinuation(in[i + 1])
+                    && isContinuation(in[i + 2]) && isContinuation(in[i + 3])) {
+                final int c = ((b0 & 0x07) << 18) | ((in[i + 1] & 0x3F) << 12)
+                        | ((in[i + 2] & 0x3F) << 6) | (in[i + 3] & 0x3F);
+                if (c >= 0x10000 && c <= Character.MAX_CODE_POINT) {
+                    codePoint = c;
+                    return i + 4;
+                }
+            }
+        }
+        return i + 1;
+    }
+
+    /**
+     * Appends {@link #codePoint} to the characters.
+     *
+     * @param out characters
+     * @param j position in the characters
+     * @return position after the appended characters
+     */
+    private int appendDecoded(char[] out, int j) {
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            out[j] = (char) codePoint;
+            return j + 1;
+        }
+        final int offset = codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        out[j] = (char) ((offset >>> 10) + Character.MIN_HIGH_SURROGATE);
+        out[j + 1] = (char) ((offset & 0x3FF) + Character.MIN_LOW_SURROGATE);
+        return j + 2;
+    }
+
+    /**
+     * @param b byte
+     * @return <code>true</code> if the byte is a UTF-8 continuation byte
+     */
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Line reader for byte streams in encodings where <code>\n</code> and
+ * <code>\r</code> are single bytes that never appear inside a multi-byte
+ * character. Line terminators are searched in the bytes, and each line is
+ * decoded into a reusable char array.
+ *
+ * @since 4.2
+ */
+final class ByteLineReader extends LineReader {
+
+    /**
+     * Byte stream.
+     */
+    private final InputStream stream;
+
+    /**
+     * Decoder of the lines.
+     */
+    private final ByteDecoder decoder;
+
+    /**
+     * Bytes read.
+     */
+    private byte[] bytes = new byte[BUFFER_SIZE];
+
+    /**
+     * Start of the next line in the bytes.
+     */
+    private int start = 0;
+
+    /**
+     * End of the bytes read.
+     */
+    private int limit = 0;
+
+    /**
+     * Offset in the stream of the first byte of the buffer.
+     */
+    private long base = 0;
+
+    /**
+     * Whether a <code>\n</code> following the last <code>\r</code> must be
+     * skipped.
+     */
+    private boolean skipLineFeed = false;
+
+    /**
+     * View of the line.
+     */
+    private final LineBuffer line = new LineBuffer();
+
+    /**
+     * Whether a last line without line terminator is left unread at the end
+     * of the stream, until more bytes are appended.
+     */
+    private boolean completeLinesOnly = false;
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param stream byte stream
+     * @param charset UTF-8, US-ASCII or ISO-8859-1
+     */
+    ByteLineReader(InputStream stream, Charset charset) {
+        super();
+        this.stream = stream;
+        this.decoder = new ByteDecoder(charset);
+    }
+
+    /**
+     * Defines whether a last line without line terminator is left unread at
+     * the end of the stream, so that it can be read once complete, when the
+     * stream is a file still being written.
+     *
+     * @param completeLinesOnly whether only complete lines are read
+     */
+    void setCompleteLinesOnly(boolean completeLinesOnly) {
+        this.completeLinesOnly = completeLinesOnly;
+    }
+
+    /**
+     * Continues reading a stream at a position, before any line is read.
+     *
+     * @param position offset in the stream of its first byte
+     * @param skipLineFeed whether a <code>\n</code> at the position must be
+     *        skipped, because the previous line ended with <code>\r</code>
+     */
+    void resume(long position, boolean skipLineFeed) {
+        this.base = position;
+        this.skipLineFeed = skipLineFeed;
+    }
+
+    /**
+     * @return whether a <code>\n</code> at the position must be skipped,
+     *         because the last line ended with <code>\r</code>
+     */
+    boolean isSkipLineFeed() {
+        return skipLineFeed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    CharSequence readLine() throws IOException {
+        skipLineFeed();
+        int i = start;
+        for (;;) {
+            while (i < limit) {
+                final byte b = bytes[i];
+                if (b == '\n' || b == '\r') {
+                    decoder.decode(bytes, start, i, line);
+                    start = i + 1;
+                    skipLineFeed = b == '\r';
+                    return line;
+                }
+                i++;
+            }
+            final int scanned = i - start;
+            if (!fill()) {
+                if (start == limit || completeLinesOnly) {
+                    return null;
+                }
+                decoder.decode(bytes, start, limit, line);
+                start = limit;
+                return line;
+            }
+            i = start + scanned;
+        }
+    }
+
+    /**
+     * Reads ahead, if needed, to tell whether the stream has bytes left.
+     *
+     * @return <code>false</code> at the end of the stream
+     * @throws IOException if an I/O error occurs
+     */
+    boolean hasMoreLines() throws IOException {
+        skipLineFeed();
+        return start < limit || fill();
+    }
+
+    /**
+     * Skips the <code>\n</code> of a <code>\r\n</code> line terminator,
+     * once the byte after the <code>\r</code> is available.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void skipLineFeed() throws IOException {
+        if (skipLineFeed && (start < limit || fill())) {
+            skipLineFeed = false;
+            if (bytes[start] == '\n') {
+                start++;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    long getPosition() {
+        return base + start;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    /**
+     * Reads more bytes, discarding the lines already returned and growing the
+     * buffer if a line does not fit in it.
+     *
+     * @return <code>false</code> at the end of the stream
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(bytes, start, bytes, 0, limit - start);
+            base += start;
+            limit -= start;
+            start = 0;
+        }
+        if (limit == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        final int read = stream.read(bytes, limit, bytes.length - limit);
+        if (read <= 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable view of a line held in a byte buffer, for lines whose bytes are
+ * ISO-8859-1 characters, which includes plain ASCII. Characters are read from
+ * the buffer as they are needed, so only the parts of the line that are kept
+ * are ever copied. The view is only valid until the line reader that returned
+ * it reads the next line.
+ *
+ * @since 4.2
+ */
+final class ByteLineView implements CharSequence {
+
+    /**
+     * Bytes.
+     */
+    private ByteBuffer bytes;
+
+    /**
+     * Position of the line in the buffer.
+     */
+    private int offset;
+
+    /**
+     * Length of the line.
+     */
+    private int length;
+
+    /**
+     * Default constructor.
+     */
+    ByteLineView() {
+        super();
+    }
+
+    /**
+     * Points the view to a new line.
+     *
+     * @param bytes bytes
+     * @param offset position of the line in the buffer
+     * @param length length of the line
+     */
+    void set(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public char charAt(int index) {
+        return (char) (bytes.get(offset + index) & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public CharSequence subSequence(int start, int end) {
+        final char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (bytes.get(offset + start + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Line reader for character streams. Characters are read in large chunks and
+ * the lines returned are views of the chunk, without copies.
+ *
+ * @since 4.2
+ */
+final class CharLineReader extends LineReader {
+
+    /**
+     * Character stream.
+     */
+    private final Reader reader;
+
+    /**
+     * Characters read.
+     */
+    private char[] chars = new char[BUFFER_SIZE];
+
+    /**
+     * Start of the next line in the characters.
+     */
+    private int start = 0;
+
+    /**
+     * End of the characters read.
+     */
+    private int limit = 0;
+
+    /**
+     * Offset in the stream of the first character of the buffer.
+     */
+    private long base = 0;
+
+    /**
+     * Whether a <code>\n</code> following the last <code>\r</code> must be
+     * skipped.
+     */
+    private boolean skipLineFeed = false;
+
+    /**
+     * View of the line.
+     */
+    private final LineBuffer line = new LineBuffer();
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param reader character stream
+     */
+    CharLineReader(Reader reader) {
+        super();
+        this.reader = reader;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    CharSequence readLine() throws IOException {
+        if (skipLineFeed && (start < limit || fill())) {
+            skipLineFeed = false;
+            if (chars[start] == '\n') {
+                start++;
+            }
+        }
+        int i = start;
+        for (;;) {
+            while (i < limit) {
+                final char c = chars[i];
+                if (c == '\n' || c == '\r') {
+                    line.set(chars, start, i - start);
+                    start = i + 1;
+                    skipLineFeed = c == '\r';
+                    return line;
+                }
+                i++;
+            }
+            final int scanned = i - start;
+            if (!fill()) {
+                if (start == limit) {
+                    return null;
+                }
+                line.set(chars, start, limit - start);
+                start = limit;
+                return line;
+            }
+            i = start + scanned;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    long getPosition() {
+        return base + start;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads more characters, discarding the lines already returned and
+     * growing the buffer if a line does not fit in it.
+     *
+     * @return <code>false</code> at the end of the stream
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(chars, start, chars, 0, limit - start);
+            base += start;
+            limit -= start;
+            start = 0;
+        }
+        if (limit == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        final int read = reader.read(chars, limit, chars.length - limit);
+        if (read <= 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import org.tap4j.model.BailOut;
+import org.tap4j.model.Comment;
+import org.tap4j.model.Footer;
+import org.tap4j.model.Header;
+import org.tap4j.model.Plan;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.Text;
+
+/**
+ * TAP event handler that ignores every event. Extend it and override only the
+ * events of interest.
+ *
+ * @since 4.2
+ */
+public class DefaultTapEventHandler implements TapEventHandler {
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onHeader(Header header) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onPlan(Plan plan) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onTestResult(TestResult testResult) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onBailOut(BailOut bailOut) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onComment(Comment comment) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onText(Text text) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onFooter(Footer footer) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onDiagnostic(TapElement element) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onSubtestStart(TapElement parent) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onSubtestEnd(TapElement parent) {
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Keeps the diagnostic buffer of a {@link Memento} within a limit, truncating
+ * the YAMLish blocks that exceed it or spilling them to temporary files. The
+ * state of a truncated or spilled block is kept in the memento, so that it is
+ * saved with checkpoints.
+ *
+ * @since 4.2
+ */
+final class DiagnosticLimiter {
+
+    /**
+     * Maximum number of characters buffered for a YAMLish block.
+     */
+    private final int limit;
+
+    /**
+     * What is done with the blocks longer than the limit.
+     */
+    private final DiagnosticOverflow overflow;
+
+    /**
+     * Writer of the block being spilled, or <code>null</code>.
+     */
+    private Writer spillWriter = null;
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param limit maximum number of characters buffered for a YAMLish block
+     * @param overflow what is done with the blocks longer than the limit
+     */
+    DiagnosticLimiter(int limit, DiagnosticOverflow overflow) {
+        super();
+        this.limit = limit;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Appends a line of a YAMLish block.
+     *
+     * @param state current state
+     * @param line YAMLish line
+     * @throws IOException if the line cannot be spilled
+     */
+    void append(Memento state, CharSequence line) throws IOException {
+        if (state.getDiagnosticSpill() != null) {
+            writer(state.getDiagnosticSpill()).append(line).append('\n');
+            return;
+        }
+        final StringBuilder buffer = state.getDiagnosticBuffer();
+        buffer.append(line).append('\n');
+        if (buffer.length() <= limit) {
+            return;
+        }
+        if (overflow == DiagnosticOverflow.SPILL) {
+            spill(state);
+            return;
+        }
+        int head = state.getDiagnosticHeadLength();
+        if (head < 0) {
+            head = buffer.lastIndexOf("\n", limit / 2 - 1) + 1;
+            state.setDiagnosticHeadLength(head);
+        }
+        // let the tail grow to twice its size before dropping lines, so that
+        // each character is moved a constant number of times
+        if (buffer.length() - head > 2 * (limit - head)) {
+            compact(state);
+        }
+    }
+
+    /**
+     * Drops the lines between the head and the tail of a truncated block.
+     *
+     * @param state current state
+     */
+    private void compact(Memento state) {
+        final StringBuilder buffer = state.getDiagnosticBuffer();
+        final int head = state.getDiagnosticHeadLength();
+        int cut = buffer.length() - (limit - head);
+        if (cut <= head) {
+            return;
+        }
+        if (buffer.charAt(cut - 1) != '\n') {
+            cut = buffer.indexOf("\n", cut) + 1;
+            if (cut == 0) {
+                cut = buffer.length();
+            }
+        }
+        state.setDiagnosticTruncated(state.getDiagnosticTruncated() + cut
+                - head);
+        buffer.delete(head, cut);
+    }
+
+    /**
+     * Completes a buffered YAMLish block, inserting a comment where lines
+     * were dropped. The buffer is then cleared.
+     *
+     * @param state current state
+     * @return the YAMLish text
+     */
+    String takeText(Memento state) {
+        final StringBuilder buffer = state.getDiagnosticBuffer();
+        final int head = state.getDiagnosticHeadLength();
+        if (head >= 0) {
+            compact(state);
+            final long truncated = state.getDiagnosticTruncated();
+            if (truncated > 0) {
+                int indentation = head;
+                while (indentation < buffer.length()
+                        && (buffer.charAt(indentation) == ' '
+                        || buffer.charAt(indentation) == '\t')) {
+                    indentation++;
+                }
+                final String prefix = indentation < buffer.length() ? buffer
+                        .substring(head, indentation) : state
+                        .getCurrentYamlIndentation();
+                buffer.insert(head, prefix + "# " + truncated
+                        + " characters truncated\n");
+            }
+            state.setDiagnosticHeadLength(-1);
+            state.setDiagnosticTruncated(0);
+        }
+        final String text = buffer.toString();
+        buffer.setLength(0);
+        return text;
+    }
+
+    /**
+     * Completes a spilled YAMLish block.
+     *
+     * @param state current state
+     * @return the file holding the block
+     * @throws IOException if the file cannot be closed
+     */
+    File takeSpill(Memento state) throws IOException {
+        final File spill = state.getDiagnosticSpill();
+        state.setDiagnosticSpill(null);
+        close();
+        return spill;
+    }
+
+    /**
+     * Closes the writer of the block being spilled, before the state is saved
+     * or when a slice of the TAP Stream fails. The file is kept, and reopened
+     * to append if parsing goes on.
+     *
+     * @throws IOException if the block cannot be written
+     */
+    void close() throws IOException {
+        if (spillWriter != null) {
+            final Writer writer = spillWriter;
+            spillWriter = null;
+            writer.close();
+        }
+    }
+
+    /**
+     * Closes and deletes the block being spilled, when parsing aborts.
+     *
+     * @param state current state
+     */
+    void discard(Memento state) {
+        try {
+            close();
+        } catch (IOException e) {
+            // deleted anyway
+        }
+        final File spill = state.getDiagnosticSpill();
+        if (spill != null) {
+            state.setDiagnosticSpill(null);
+            spill.delete();
+        }
+    }
+
+    /**
+     * Moves the buffered block to a new temporary file.
+     *
+     * @param state current state
+     * @throws IOException if the file cannot be created or written
+     */
+    private void spill(Memento state) throws IOException {
+        final File spill = File.createTempFile("tap4j-diagnostic", ".yml");
+        state.setDiagnosticSpill(spill);
+        final StringBuilder buffer = state.getDiagnosticBuffer();
+        writer(spill).append(buffer);
+        buffer.setLength(0);
+    }
+
+    /**
+     * @param spill file of the block being spilled
+     * @return the writer of the file, opened to append if needed, as when
+     *         parsing resumes from a checkpoint
+     * @throws IOException if the file cannot be opened
+     */
+    private Writer writer(File spill) throws IOException {
+        if (spillWriter == null) {
+            spillWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(spill, true), "UTF-8"));
+        }
+        return spillWriter;
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Reader for the YAMLish diagnostics that are flat maps, as produced by the
+ * JUnit and TestNG extensions. Each line holds a key and a plain, single
+ * quoted or double quoted scalar without escapes, or a literal block scalar.
+ * Scalars are resolved and constructed by SnakeYAML, so the result is the
+ * same as loading the document with SnakeYAML.
+ *
+ * <p>Anything else, like flow collections, anchors, tags, comments or nested
+ * collections, is left to SnakeYAML.</p>
+ *
+ * @since 4.2
+ */
+final class FlatYamlReader {
+
+    /**
+     * Resolver of the scalar types.
+     */
+    private static final Resolver RESOLVER = new Resolver();
+
+    /**
+     * Constructor of the scalars that are not strings.
+     */
+    private static final ScalarConstructor CONSTRUCTOR = new ScalarConstructor();
+
+    /**
+     * Characters that cannot start a plain scalar.
+     */
+    private static final String INDICATORS = ",[]{}#&*!|>'\"%@`";
+
+    /**
+     * Hidden constructor.
+     */
+    private FlatYamlReader() {
+        super();
+    }
+
+    /**
+     * Reads a YAMLish diagnostic.
+     *
+     * @param text YAMLish text
+     * @return the diagnostic, or <code>null</code> if the text must be loaded
+     *         by SnakeYAML
+     */
+    static Map<String, Object> read(String text) {
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (!isPrintable(text.charAt(i))) {
+                return null;
+            }
+        }
+        final Map<String, Object> diagnostic = new LinkedHashMap<String, Object>();
+        int indentation = -1;
+        int pos = 0;
+        while (pos < length) {
+            final int end = lineEnd(text, pos);
+            final int spaces = spaces(text, pos, end);
+            if (pos + spaces == end) {
+                pos = end + 1;
+                continue;
+            }
+            if (indentation < 0) {
+                indentation = spaces;
+            } else if (spaces != indentation) {
+                return null;
+            }
+            final int colon = keyEnd(text, pos + spaces, end);
+            if (colon < 0) {
+                return null;
+            }
+            final String key = text.substring(pos + spaces, colon);
+            if (!Tag.STR.equals(RESOLVER.resolve(NodeId.scalar, key, true))) {
+                return null;
+            }
+            final int start = colon + 1 + spaces(text, colon + 1, end);
+            if (start == end) {
+                return null;
+            }
+            final char first = text.charAt(start);
+            final int valueEnd = trimEnd(text, start, end);
+            if (first == '|') {
+                final String header = text.substring(start, valueEnd);
+                if (!"|".equals(header) && !"|-".equals(header)) {
+                    return null;
+                }
+                final StringBuilder literal = new StringBuilder();
+                pos = readLiteral(text, end + 1, indentation, literal);
+                if (pos < 0) {
+                    return null;
+                }
+                if (header.length() == 1 && literal.length() > 0) {
+                    literal.append('\n');
+                }
+                diagnostic.put(key, literal.toString());
+                continue;
+            }
+            final Object value;
+            if (first == '\'') {
+                value = readSingleQuoted(text, start, valueEnd);
+            } else if (first == '"') {
+                value = readDoubleQuoted(text, start, valueEnd);
+            } else {
+                value = readPlain(text, start, valueEnd);
+            }
+            if (value == null) {
+                return null;
+            }
+            diagnostic.put(key, value == ScalarConstructor.NULL ? null : value);
+            pos = end + 1;
+        }
+        return diagnostic.isEmpty() ? null : diagnostic;
+    }
+
+    /**
+     * Reads the content of a literal block scalar.
+     *
+     * @param text YAMLish text
+     * @param pos start of the first line of the content
+     * @param indentation indentation of the keys
+     * @param literal content read, with the line break of the last line
+     *        clipped
+     * @return start of the line after the block scalar, or <code>-1</code> if
+     *         the block scalar is not supported
+     */
+    private static int readLiteral(String text, int pos, int indentation,
+            StringBuilder literal) {
+        final int length = text.length();
+        int blockIndentation = -1;
+        int lineBreaks = 0;
+        while (pos < length) {
+            final int end = lineEnd(text, pos);
+            final int spaces = spaces(text, pos, end);
+            if (pos + spaces == end) {
+                if (blockIndentation < 0 || spaces > blockIndentation) {
+                    return -1;
+                }
+                lineBreaks++;
+                pos = end + 1;
+                continue;
+            }
+            if (blockIndentation < 0) {
+                if (spaces <= indentation) {
+                    return -1;
+                }
+                blockIndentation = spaces;
+            }
+            if (spaces < blockIndentation) {
+                if (spaces > indentation) {
+                    return -1;
+                }
+                break;
+            }
+            if (end == length) {
+                return -1;
+            }
+            for (int i = 0; i < lineBreaks; i++) {
+                literal.append('\n');
+            }
+            literal.append(text, pos + blockIndentation, end);
+            lineBreaks = 1;
+            pos = end + 1;
+        }
+        return blockIndentation < 0 ? -1 : pos;
+    }
+
+    /**
+     * @param text YAMLish text
+     * @param start opening quote
+     * @param end end of the value
+     * @return the scalar, or <code>null</code> if not supported
+     */
+    private static String readSingleQuoted(String text, int start, int end) {
+        final StringBuilder value = new StringBuilder();
+        int i = start + 1;
+        while (i < end) {
+            final char c = text.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < end && text.charAt(i + 1) == '\'') {
+                    value.append('\'');
+                    i += 2;
+                    continue;
+                }
+                return i + 1 == end ? value.toString() : null;
+            }
+            value.append(c);
+            i++;
+        }
+        return null;
+    }
+
+    /**
+     * @param text YAMLish text
+     * @param start opening quote
+     * @param end end of the value
+     * @return the scalar, or <code>null</code> if not supported
+     */
+    private static String readDoubleQuoted(String text, int start, int end) {
+        final int close = text.indexOf('"', start + 1);
+        if (close != end - 1
+                || text.substring(start, close).indexOf('\\') >= 0) {
+            return null;
+        }
+        return text.substring(start + 1, close);
+    }
+
+    /**
+     * @param text YAMLish text
+     * @param start first character of the value
+     * @param end end of the value
+     * @return the scalar, {@link ScalarConstructor#NULL}, or <code>null</code>
+     *         if not supported
+     */
+    private static Object readPlain(String text, int start, int end) {
+        final char first = text.charAt(start);
+        if (INDICATORS.indexOf(first) >= 0) {
+            return null;
+        }
+        if ((first == '-' || first == '?' || first == ':')
+                && (start + 1 == end || text.charAt(start + 1) == ' ')) {
+            return null;
+        }
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c == '\t' || c == ':' && (i + 1 == end || text.charAt(i + 1) == ' ')
+                    || c == '#' && text.charAt(i - 1) == ' ') {
+                return null;
+            }
+        }
+        final String value = text.substring(start, end);
+        final Tag tag = RESOLVER.resolve(NodeId.scalar, value, true);
+        if (Tag.STR.equals(tag)) {
+            return value;
+        }
+        return CONSTRUCTOR.construct(tag, value);
+    }
+
+    /**
+     * @param text YAMLish text
+     * @param start start of the key
+     * @param end end of the line
+     * @return position of the colon after the key, or <code>-1</code> if not
+     *         supported
+     */
+    private static int keyEnd(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c == ':') {
+                if (i == start || i + 1 < end && text.charAt(i + 1) != ' ') {
+                    return -1;
+                }
+                return i;
+            }
+            final boolean valid = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z'
+                    || c >= '0' && c <= '9' || c == '_'
+                    || i > start && (c == '-' || c == '.');
+            if (!valid) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param text YAMLish text
+     * @param pos start of a line
+     * @return end of the line
+     */
+    private static int lineEnd(String text, int pos) {
+        final int end = text.indexOf('\n', pos);
+        return end < 0 ? text.length() : end;
+    }
+
+    /**
+     * @param text YAMLish text
+     * @param pos position
+     * @param end end of the line
+     * @return number of spaces at the position
+     */
+    private static int spaces(String text, int pos, int end) {
+        int i = pos;
+        while (i < end && text.charAt(i) == ' ') {
+            i++;
+        }
+        return i - pos;
+    }
+
+    /**
+     * @param text YAMLish text
+     * @param start start of the value
+     * @param end end of the line
+     * @return end of the value without the trailing spaces
+     */
+    private static int trimEnd(String text, int start, int end) {
+        int i = end;
+        while (i > start && text.charAt(i - 1) == ' ') {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * @param c character
+     * @return <code>true</code> if SnakeYAML accepts the character, and it is
+     *         not a line break other than <code>\n</code>
+     */
+    private static boolean isPrintable(char c) {
+        return c >= 0x20 && c <= 0x7E || c == '\n' || c == '\t'
+                || c >= 0xA0 && c <= 0xD7FF && c != 0x2028 && c != 0x2029
+                || c >= 0xE000 && c <= 0xFFFD && c != 0xFEFF;
+    }
+
+    /**
+     * Constructs the scalars resolved to types other than strings, with the
+     * SnakeYAML constructors.
+     */
+    private static final class ScalarConstructor extends SafeConstructor {
+
+        /**
+         * Marker of the null scalars.
+         */
+        static final Object NULL = new Object();
+
+        /**
+         * Constructs a scalar.
+         *
+         * @param tag resolved tag
+         * @param value scalar
+         * @return the value, {@link #NULL}, or <code>null</code> if the tag is
+         *         not supported
+         */
+        Object construct(Tag tag, String value) {
+            final ScalarNode node = new ScalarNode(tag, value, null, null, null);
+            if (Tag.TIMESTAMP.equals(tag)) {
+                return new ConstructYamlTimestamp().construct(node);
+            } else if (Tag.INT.equals(tag) || Tag.FLOAT.equals(tag)
+                    || Tag.BOOL.equals(tag)) {
+                return yamlConstructors.get(tag).construct(node);
+            } else if (Tag.NULL.equals(tag)) {
+                return NULL;
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,324 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectStreamException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.tap4j.util.YamlEngine;
+
+/**
+ * Diagnostic of a TAP element that keeps the YAMLish text, or the file it was
+ * spilled to, and only loads it with SnakeYAML when the map is first read or
+ * changed.
+ *
+ * @since 4.2
+ */
+final class LazyDiagnostic extends AbstractMap<String, Object> implements
+        Serializable {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = -2203926734462395519L;
+
+    /**
+     * YAMLish text, or <code>null</code> once loaded.
+     */
+    private String text;
+
+    /**
+     * Spill holding the YAMLish text, or <code>null</code>.
+     */
+    private transient SpillCleaner.Spill spill;
+
+    /**
+     * Loaded diagnostic.
+     */
+    private Map<String, Object> diagnostic;
+
+    /**
+     * YAML engine, or <code>null</code> once loaded.
+     */
+    private transient YamlEngine yamlEngine;
+
+    /**
+     * Whether flat diagnostics are read without SnakeYAML.
+     */
+    private transient boolean flatReaderEnabled;
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param text YAMLish text
+     * @param yamlEngine YAML engine
+     * @param flatReaderEnabled whether flat diagnostics are read without
+     *        SnakeYAML
+     */
+    LazyDiagnostic(String text, YamlEngine yamlEngine,
+            boolean flatReaderEnabled) {
+        super();
+        this.text = text;
+        this.yamlEngine = yamlEngine;
+        this.flatReaderEnabled = flatReaderEnabled;
+    }
+
+    /**
+     * Constructor with parameters, for a diagnostic spilled to disk. The file
+     * is deleted once loaded, or after the diagnostic is garbage collected,
+     * see {@link SpillCleaner}.
+     *
+     * @param file file holding the YAMLish text, in UTF-8
+     * @param yamlEngine YAML engine
+     * @param flatReaderEnabled whether flat diagnostics are read without
+     *        SnakeYAML
+     */
+    LazyDiagnostic(File file, YamlEngine yamlEngine,
+            boolean flatReaderEnabled) {
+        this((String) null, yamlEngine, flatReaderEnabled);
+        this.spill = SpillCleaner.register(this, file);
+    }
+
+    /**
+     * @return the YAMLish text, or <code>null</code> if it was already loaded
+     */
+    synchronized String getText() {
+        return text;
+    }
+
+    /**
+     * Loads the YAMLish text, if not loaded yet.
+     *
+     * @return the diagnostic
+     * @throws ParserException if the YAMLish text is invalid
+     */
+    private synchronized Map<String, Object> load() {
+        if (diagnostic == null) {
+            if (spill != null) {
+                text = read(spill.getFile());
+                spill.delete();
+                spill = null;
+            }
+            final Map<String, Object> loaded = load(text, yamlEngine,
+                    flatReaderEnabled);
+            diagnostic = loaded != null ? loaded
+                    : new LinkedHashMap<String, Object>();
+            text = null;
+            yamlEngine = null;
+        }
+        return diagnostic;
+    }
+
+    /**
+     * Reads a diagnostic spilled to disk.
+     *
+     * @param file file holding the YAMLish text, in UTF-8
+     * @return the YAMLish text
+     * @throws ParserException if the file cannot be read
+     */
+    private static String read(File file) {
+        final StringBuilder text = new StringBuilder((int) Math.min(
+                file.length(), Integer.MAX_VALUE));
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            final char[] chars = new char[8192];
+            int n;
+            while ((n = reader.read(chars)) > 0) {
+                text.append(chars, 0, n);
+            }
+            return text.toString();
+        } catch (IOException e) {
+            throw new ParserException("Error reading diagnostic from "
+                    + file + ": " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // the text was read
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads YAMLish text.
+     *
+     * @param text YAMLish text
+     * @param yamlEngine YAML engine
+     * @param flatReaderEnabled whether flat diagnostics are read without
+     *        SnakeYAML, see {@link FlatYamlReader}
+     * @return the diagnostic, or <code>null</code> for an empty document
+     * @throws ParserException if the YAMLish text is invalid
+     */
+    static Map<String, Object> load(String text, YamlEngine yamlEngine,
+            boolean flatReaderEnabled) {
+        try {
+            return loadYaml(text, yamlEngine, flatReaderEnabled);
+        } catch (Exception ex) {
+            throw new ParserException("Error parsing YAML [" + text + "]: "
+                    + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Loads YAMLish text, without wrapping the errors found.
+     *
+     * @param text YAMLish text
+     * @param yamlEngine YAML engine
+     * @param flatReaderEnabled whether flat diagnostics are read without
+     *        SnakeYAML, see {@link FlatYamlReader}
+     * @return the diagnostic, or <code>null</code> for an empty document
+     * @throws Exception if the YAMLish text is invalid
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> loadYaml(String text, YamlEngine yamlEngine,
+            boolean flatReaderEnabled) throws Exception {
+        if (flatReaderEnabled) {
+            final Map<String, Object> diagnostic = FlatYamlReader.read(text);
+            if (diagnostic != null) {
+                return diagnostic;
+            }
+        }
+        return (Map<String, Object>) yamlEngine.load(text);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return load().entrySet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> keySet() {
+        return load().keySet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<Object> values() {
+        return load().values();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return load().size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return load().isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return load().containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        return load().containsValue(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(Object key) {
+        return load().get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object put(String key, Object value) {
+        return load().put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object remove(Object key) {
+        return load().remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putAll(Map<? extends String, ? extends Object> map) {
+        load().putAll(map);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        load().clear();
+    }
+
+    /**
+     * Serializes the loaded diagnostic instead.
+     *
+     * @return the loaded diagnostic
+     * @throws ObjectStreamException never
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new LinkedHashMap<String, Object>(load());
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads the lines of a TAP Stream. Lines end with <code>\n</code>,
+ * <code>\r\n</code> or <code>\r</code>, and are returned without the line
+ * terminator.
+ *
+ * <p>The buffers are reused, so the line returned is only valid until the
+ * next call to {@link #readLine()}.</p>
+ *
+ * @since 4.2
+ */
+abstract class LineReader implements Closeable {
+
+    /**
+     * Default size of the buffers.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Reads the next line.
+     *
+     * @return the line, or <code>null</code> at the end of the stream
+     * @throws IOException if an I/O error occurs
+     */
+    abstract CharSequence readLine() throws IOException;
+
+    /**
+     * @return offset, in bytes for byte streams or in characters otherwise,
+     *         of the line that the next call to {@link #readLine()} returns
+     */
+    abstract long getPosition();
+
+    /**
+     * Creates a line reader for a byte stream. UTF-8, US-ASCII and ISO-8859-1
+     * are decoded by the reader itself, other encodings through an
+     * {@link InputStreamReader}.
+     *
+     * @param stream byte stream
+     * @param encoding encoding
+     * @return line reader
+     */
+    static LineReader open(InputStream stream, String encoding) {
+        final Charset charset = Charset.forName(encoding);
+        if (ByteDecoder.isSupported(charset)) {
+            return new ByteLineReader(stream, charset);
+        }
+        return new CharLineReader(new InputStreamReader(stream, charset));
+    }
+
+    /**
+     * Creates a line reader for a file, mapped in memory for UTF-8, US-ASCII
+     * and ISO-8859-1, and read through a channel reader for other encodings.
+     *
+     * @param channel file channel
+     * @param encoding encoding
+     * @return line reader
+     * @throws IOException if the file cannot be mapped
+     */
+    static LineReader map(FileChannel channel, String encoding)
+            throws IOException {
+        final Charset charset = Charset.forName(encoding);
+        if (ByteDecoder.isSupported(charset)) {
+            return new MappedLineReader(channel, charset);
+        }
+        return new CharLineReader(Channels.newReader(channel, charset
+                .newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1));
+    }
+
+}
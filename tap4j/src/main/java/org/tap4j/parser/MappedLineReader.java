@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+
+/**
+ * Line reader for memory-mapped files. Line terminators are searched directly
+ * in the mapped bytes. Lines of ASCII characters, or of any byte in
+ * ISO-8859-1, are returned as views of the mapped bytes, while the other
+ * lines are copied and decoded.
+ *
+ * <p>Files are mapped in windows, so files larger than 2 GB can be read
+ * too.</p>
+ *
+ * @since 4.2
+ */
+final class MappedLineReader extends LineReader {
+
+    /**
+     * Size of the windows mapped.
+     */
+    static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * File channel.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Size of the file.
+     */
+    private final long size;
+
+    /**
+     * Decoder for the lines that are not views.
+     */
+    private final ByteDecoder decoder;
+
+    /**
+     * Size of the windows mapped.
+     */
+    private final int windowSize;
+
+    /**
+     * Mapped window.
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * Offset in the file of the window.
+     */
+    private long base = 0;
+
+    /**
+     * Start of the next line in the window.
+     */
+    private int start = 0;
+
+    /**
+     * End of the window.
+     */
+    private int limit = 0;
+
+    /**
+     * Whether a <code>\n</code> following the last <code>\r</code> must be
+     * skipped.
+     */
+    private boolean skipLineFeed = false;
+
+    /**
+     * View of lines that need no decoding.
+     */
+    private final ByteLineView view = new ByteLineView();
+
+    /**
+     * Decoded lines.
+     */
+    private final LineBuffer line = new LineBuffer();
+
+    /**
+     * Bytes of the line being decoded.
+     */
+    private byte[] bytes = new byte[256];
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param channel file channel
+     * @param charset UTF-8, US-ASCII or ISO-8859-1
+     * @throws IOException if the file cannot be mapped
+     */
+    MappedLineReader(FileChannel channel, Charset charset) throws IOException {
+        this(channel, charset, WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param channel file channel
+     * @param charset UTF-8, US-ASCII or ISO-8859-1
+     * @param windowSize size of the windows mapped
+     * @throws IOException if the file cannot be mapped
+     */
+    MappedLineReader(FileChannel channel, Charset charset, int windowSize)
+            throws IOException {
+        super();
+        this.channel = channel;
+        this.size = channel.size();
+        this.decoder = new ByteDecoder(charset);
+        this.windowSize = windowSize;
+        this.map(0, (int) Math.min(size, windowSize));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    CharSequence readLine() throws IOException {
+        if (skipLineFeed && (start < limit || remap())) {
+            skipLineFeed = false;
+            if (window.get(start) == '\n') {
+                start++;
+            }
+        }
+        int i = start;
+        int bits = 0;
+        for (;;) {
+            while (i < limit) {
+                final byte b = window.get(i);
+                if (b == '\n' || b == '\r') {
+                    final CharSequence result = line(start, i, bits);
+                    start = i + 1;
+                    skipLineFeed = b == '\r';
+                    return result;
+                }
+                bits |= b;
+                i++;
+            }
+            final int scanned = i - start;
+            if (!remap()) {
+                if (start == limit) {
+                    return null;
+                }
+                final CharSequence result = line(start, limit, bits);
+                start = limit;
+                return result;
+            }
+            i = start + scanned;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    long getPosition() {
+        return base + start;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * @param from first byte of the line
+     * @param to end of the line
+     * @param bits bytes of the line, or-ed
+     * @return the line
+     */
+    private CharSequence line(int from, int to, int bits) {
+        if (bits >= 0 || decoder.isLatin1()) {
+            view.set(window, from, to - from);
+            return view;
+        }
+        final int length = to - from;
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            bytes[i] = window.get(from + i);
+        }
+        decoder.decode(bytes, 0, length, line);
+        return line;
+    }
+
+    /**
+     * Maps the next window, starting at the next line and larger than it.
+     *
+     * @return <code>false</code> at the end of the file
+     * @throws IOException if the file cannot be mapped or a line is larger
+     *         than 2 GB
+     */
+    private boolean remap() throws IOException {
+        final long next = base + start;
+        final long remaining = size - next;
+        if (base + limit >= size) {
+            return false;
+        }
+        final int pending = limit - start;
+        if (pending == Integer.MAX_VALUE) {
+            throw new IOException("Line too long at offset " + next);
+        }
+        final long length = Math.max(windowSize, 2L * pending);
+        map(next, (int) Math.min(remaining,
+                Math.min(length, Integer.MAX_VALUE)));
+        return true;
+    }
+
+    /**
+     * Maps a window of the file.
+     *
+     * @param offset offset in the file
+     * @param length length of the window
+     * @throws IOException if the file cannot be mapped
+     */
+    private void map(long offset, int length) throws IOException {
+        window = channel.map(MapMode.READ_ONLY, offset, length);
+        base = offset;
+        start = 0;
+        limit = length;
+    }
+
+}
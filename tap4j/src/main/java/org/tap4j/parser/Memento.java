@@ -23,17 +23,71 @@
  */
 package org.tap4j.parser;
 
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+
+import org.tap4j.model.BailOut;
+import org.tap4j.model.Comment;
+import org.tap4j.model.Directive;
+import org.tap4j.model.Header;
+import org.tap4j.model.Plan;
+import org.tap4j.model.SkipPlan;
 import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
 import org.tap4j.model.TestSet;
+import org.tap4j.model.Text;
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
 
 /**
  * Memento for parsers. Stores information about a parser in certain moment
  * of the parsing method.
+ * <p>
+ * Only the parse state is written to checkpoints: the flags, indentation and
+ * partial diagnostic, with copies of the TAP Header, of the TAP Plan and of
+ * the last element, without their subtests. The elements already collected in
+ * the test set are not, so that checkpoints stay small however long the TAP
+ * Stream is.
  *
  * @since 3.0
  */
 public class Memento {
 
+    /**
+     * No last element.
+     */
+    private static final byte NO_ELEMENT = 0;
+
+    /**
+     * Last element: the TAP Header of the test set.
+     */
+    private static final byte HEADER = 1;
+
+    /**
+     * Last element: the TAP Plan of the test set.
+     */
+    private static final byte PLAN = 2;
+
+    /**
+     * Last element: a Test Result.
+     */
+    private static final byte TEST_RESULT = 3;
+
+    /**
+     * Last element: a Bail Out!.
+     */
+    private static final byte BAIL_OUT = 4;
+
+    /**
+     * Last element: a line of text.
+     */
+    private static final byte TEXT = 5;
+
+
     /**
      * If it processed only the first line.
      */
@@ -44,11 +98,6 @@ public class Memento {
      */
     private boolean planBeforeTestResult = false;
 
-    /**
-     * The last line processed.
-     */
-    private String lastLine = null;
-
     /**
      * The last element parsed.
      */
@@ -83,21 +132,57 @@ public class Memento {
      */
     private boolean currentlyInSubtest = false;
 
+    /**
+     * Number of test results parsed.
+     */
+    private int numberOfTestResults = 0;
+
+    /**
+     * Number of bail outs parsed.
+     */
+    private int numberOfBailOuts = 0;
+
     /**
      * Tje diagnostics buffer.
      */
     private final StringBuilder diagnosticBuffer = new StringBuilder();
 
     /**
-     * The immutable test set.
+     * Length of the head kept from a truncated diagnostic, or -1.
+     */
+    private int diagnosticHeadLength = -1;
+
+    /**
+     * Number of characters dropped from a truncated diagnostic.
+     */
+    private long diagnosticTruncated = 0;
+
+    /**
+     * File of a diagnostic spilled to disk, or <code>null</code>.
+     */
+    private File diagnosticSpill = null;
+
+    /**
+     * The test set being filled.
      */
-    private final TestSet testSet = new TestSet();
+    private TestSet testSet;
 
     /**
      * Default constructor.
      */
     public Memento() {
+        this(new TestSet());
+    }
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param testSet the empty test set to fill
+     * @since 4.2
+     */
+    public Memento(TestSet testSet) {
         super();
+        this.testSet = testSet;
     }
 
     /**
@@ -128,20 +213,6 @@ public class Memento {
         this.planBeforeTestResult = planBeforeTestResult;
     }
 
-    /**
-     * @return the lastLine
-     */
-    public String getLastLine() {
-        return lastLine;
-    }
-
-    /**
-     * @param lastLine the lastLine to set
-     */
-    public void setLastLine(String lastLine) {
-        this.lastLine = lastLine;
-    }
-
     /**
      * @return the lastParsedElement
      */
@@ -212,6 +283,34 @@ public class Memento {
         this.currentlyInSubtest = currentlyInSubtest;
     }
 
+    /**
+     * @return the numberOfTestResults
+     */
+    public int getNumberOfTestResults() {
+        return numberOfTestResults;
+    }
+
+    /**
+     * @param numberOfTestResults the numberOfTestResults to set
+     */
+    public void setNumberOfTestResults(int numberOfTestResults) {
+        this.numberOfTestResults = numberOfTestResults;
+    }
+
+    /**
+     * @return the numberOfBailOuts
+     */
+    public int getNumberOfBailOuts() {
+        return numberOfBailOuts;
+    }
+
+    /**
+     * @param numberOfBailOuts the numberOfBailOuts to set
+     */
+    public void setNumberOfBailOuts(int numberOfBailOuts) {
+        this.numberOfBailOuts = numberOfBailOuts;
+    }
+
     /**
      * @return the diagnosticBuffer
      */
@@ -219,6 +318,58 @@ public class Memento {
         return diagnosticBuffer;
     }
 
+    /**
+     * @return length of the head kept from a truncated diagnostic, or -1 if
+     *         the diagnostic is not truncated
+     * @since 4.2
+     */
+    public int getDiagnosticHeadLength() {
+        return diagnosticHeadLength;
+    }
+
+    /**
+     * @param diagnosticHeadLength length of the head kept from a truncated
+     *        diagnostic, or -1
+     * @since 4.2
+     */
+    public void setDiagnosticHeadLength(int diagnosticHeadLength) {
+        this.diagnosticHeadLength = diagnosticHeadLength;
+    }
+
+    /**
+     * @return number of characters dropped from a truncated diagnostic
+     * @since 4.2
+     */
+    public long getDiagnosticTruncated() {
+        return diagnosticTruncated;
+    }
+
+    /**
+     * @param diagnosticTruncated number of characters dropped from a
+     *        truncated diagnostic
+     * @since 4.2
+     */
+    public void setDiagnosticTruncated(long diagnosticTruncated) {
+        this.diagnosticTruncated = diagnosticTruncated;
+    }
+
+    /**
+     * @return file of a diagnostic spilled to disk, or <code>null</code>
+     * @since 4.2
+     */
+    public File getDiagnosticSpill() {
+        return diagnosticSpill;
+    }
+
+    /**
+     * @param diagnosticSpill file of a diagnostic spilled to disk, or
+     *        <code>null</code>
+     * @since 4.2
+     */
+    public void setDiagnosticSpill(File diagnosticSpill) {
+        this.diagnosticSpill = diagnosticSpill;
+    }
+
     /**
      * @return the testSet
      */
@@ -226,6 +377,282 @@ public class Memento {
         return testSet;
     }
 
+    /**
+     * Replaces the test set with another one, keeping its TAP Header and TAP
+     * Plan.
+     *
+     * @param other empty test set
+     */
+    void rebase(TestSet other) {
+        other.setHeader(testSet.getHeader());
+        other.setPlan(testSet.getPlan());
+        this.testSet = other;
+    }
+
+    /**
+     * Writes the parse state, with copies of the TAP Header, TAP Plan and last
+     * element.
+     *
+     * @param out output
+     * @throws IOException if the state cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeBoolean(firstLine);
+        out.writeBoolean(planBeforeTestResult);
+        out.writeInt(baseIndentationLevel);
+        out.writeInt(currentIndentationLevel);
+        out.writeBoolean(currentlyInYaml);
+        writeString(out, currentYamlIndentation);
+        out.writeBoolean(currentlyInSubtest);
+        out.writeInt(numberOfTestResults);
+        out.writeInt(numberOfBailOuts);
+        writeString(out, diagnosticBuffer.toString());
+        out.writeInt(diagnosticHeadLength);
+        out.writeLong(diagnosticTruncated);
+        writeString(out, diagnosticSpill == null ? null : diagnosticSpill
+                .getPath());
+        final Header header = testSet.getHeader();
+        out.writeBoolean(header != null);
+        if (header != null) {
+            writeInteger(out, header.getVersion());
+            writeComment(out, header.getComment());
+        }
+        final Plan plan = testSet.getPlan();
+        out.writeBoolean(plan != null);
+        if (plan != null) {
+            writeInteger(out, plan.getInitialTestNumber());
+            writeInteger(out, plan.getLastTestNumber());
+            writeString(out, plan.getSkip() == null ? null : plan.getSkip()
+                    .getReason());
+            writeComment(out, plan.getComment());
+        }
+        writeElement(out, header, plan);
+    }
+
+    /**
+     * Writes the last element parsed, without its subtest, comments and
+     * diagnostic.
+     *
+     * @param out output
+     * @param header TAP Header of the test set
+     * @param plan TAP Plan of the test set
+     * @throws IOException if the element cannot be written
+     */
+    private void writeElement(DataOutput out, Header header, Plan plan)
+            throws IOException {
+        final TapElement element = lastParsedElement;
+        if (element == null) {
+            out.writeByte(NO_ELEMENT);
+        } else if (element == header) {
+            out.writeByte(HEADER);
+        } else if (element == plan) {
+            out.writeByte(PLAN);
+        } else if (element instanceof TestResult) {
+            final TestResult testResult = (TestResult) element;
+            out.writeByte(TEST_RESULT);
+            writeString(out, testResult.getStatus().name());
+            writeInteger(out, testResult.getTestNumber());
+            writeString(out, testResult.getDescription());
+            final Directive directive = testResult.getDirective();
+            writeString(out, directive == null ? null : directive
+                    .getDirectiveValue().name());
+            if (directive != null) {
+                writeString(out, directive.getReason());
+            }
+        } else if (element instanceof BailOut) {
+            final BailOut bailOut = (BailOut) element;
+            out.writeByte(BAIL_OUT);
+            writeString(out, bailOut.getReason());
+            writeComment(out, bailOut.getComment());
+        } else if (element instanceof Text) {
+            out.writeByte(TEXT);
+            writeString(out, ((Text) element).getValue());
+        } else {
+            throw new NotSerializableException(element.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a parse state written by {@link #writeTo(DataOutput)}, into a
+     * test set holding the TAP Header and TAP Plan.
+     *
+     * @param in input, holding the whole state
+     * @return the parse state
+     * @throws IOException if the state is corrupt
+     */
+    static Memento readFrom(DataInputStream in) throws IOException {
+        final Memento memento = new Memento();
+        memento.firstLine = in.readBoolean();
+        memento.planBeforeTestResult = in.readBoolean();
+        memento.baseIndentationLevel = in.readInt();
+        memento.currentIndentationLevel = in.readInt();
+        memento.currentlyInYaml = in.readBoolean();
+        memento.currentYamlIndentation = readString(in);
+        memento.currentlyInSubtest = in.readBoolean();
+        memento.numberOfTestResults = in.readInt();
+        memento.numberOfBailOuts = in.readInt();
+        final String buffer = readString(in);
+        if (buffer != null) {
+            memento.diagnosticBuffer.append(buffer);
+        }
+        memento.diagnosticHeadLength = in.readInt();
+        memento.diagnosticTruncated = in.readLong();
+        final String spill = readString(in);
+        memento.diagnosticSpill = spill == null ? null : new File(spill);
+        final TestSet testSet = memento.testSet;
+        if (in.readBoolean()) {
+            final Header header = new Header(readInteger(in));
+            final String comment = readString(in);
+            if (comment != null) {
+                header.setComment(new Comment(comment));
+            }
+            testSet.setHeader(header);
+        }
+        if (in.readBoolean()) {
+            final Plan plan = new Plan(readInteger(in), readInteger(in));
+            final String skip = readString(in);
+            if (skip != null) {
+                plan.setSkip(new SkipPlan(skip));
+            }
+            final String comment = readString(in);
+            if (comment != null) {
+                plan.setComment(new Comment(comment));
+            }
+            testSet.setPlan(plan);
+        }
+        memento.lastParsedElement = readElement(in, testSet);
+        return memento;
+    }
+
+    /**
+     * Reads the last element parsed.
+     *
+     * @param in input
+     * @param testSet test set holding the TAP Header and TAP Plan
+     * @return the element, or <code>null</code>
+     * @throws IOException if the element is corrupt
+     */
+    private static TapElement readElement(DataInputStream in, TestSet testSet)
+            throws IOException {
+        final byte kind = in.readByte();
+        switch (kind) {
+        case NO_ELEMENT:
+            return null;
+        case HEADER:
+            return required(testSet.getHeader());
+        case PLAN:
+            return required(testSet.getPlan());
+        case TEST_RESULT:
+            try {
+                final TestResult testResult = new TestResult(
+                        StatusValues.valueOf(readString(in)),
+                        readInteger(in));
+                testResult.setDescription(readString(in));
+                final String directive = readString(in);
+                if (directive != null) {
+                    testResult.setDirective(new Directive(DirectiveValues
+                            .valueOf(directive), readString(in)));
+                }
+                return testResult;
+            } catch (RuntimeException e) {
+                throw new StreamCorruptedException("Invalid test result: "
+                        + e.getMessage());
+            }
+        case BAIL_OUT:
+            final BailOut bailOut = new BailOut(readString(in));
+            final String comment = readString(in);
+            if (comment != null) {
+                bailOut.setComment(new Comment(comment, true));
+            }
+            return bailOut;
+        case TEXT:
+            return new Text(readString(in));
+        default:
+            throw new StreamCorruptedException("Invalid element: " + kind);
+        }
+    }
+
+    /**
+     * @param element TAP Header or TAP Plan of the test set
+     * @return the element
+     * @throws IOException if the element is missing
+     */
+    private static TapElement required(TapElement element)
+            throws IOException {
+        if (element == null) {
+            throw new StreamCorruptedException("Missing element");
+        }
+        return element;
+    }
+
+    /**
+     * @param out output
+     * @param comment comment, or <code>null</code>
+     * @throws IOException if the comment cannot be written
+     */
+    private static void writeComment(DataOutput out, Comment comment)
+            throws IOException {
+        writeString(out, comment == null ? null : comment.getText());
+    }
+
+    /**
+     * @param out output
+     * @param value integer, or <code>null</code>
+     * @throws IOException if the integer cannot be written
+     */
+    private static void writeInteger(DataOutput out, Integer value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value.intValue());
+        }
+    }
+
+    /**
+     * @param in input
+     * @return the integer, or <code>null</code>
+     * @throws IOException if the integer is corrupt
+     */
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Integer.valueOf(in.readInt()) : null;
+    }
+
+    /**
+     * Writes a string of any length, in UTF-8.
+     *
+     * @param out output
+     * @param value string, or <code>null</code>
+     * @throws IOException if the string cannot be written
+     */
+    private static void writeString(DataOutput out, String value)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param in input
+     * @return the string, or <code>null</code>
+     * @throws IOException if the string is corrupt
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.available()) {
+            throw new StreamCorruptedException("Invalid length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
     /**
      * @return the currentYamlIndentation
      */
@@ -0,0 +1,906 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import org.tap4j.model.BailOut;
+import org.tap4j.model.Comment;
+import org.tap4j.model.Directive;
+import org.tap4j.model.Footer;
+import org.tap4j.model.Header;
+import org.tap4j.model.Plan;
+import org.tap4j.model.SkipPlan;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.TestSet;
+import org.tap4j.model.TestSetFactory;
+import org.tap4j.model.Text;
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+import org.tap4j.util.YamlEngine;
+
+/**
+ * State of the parsing of one TAP Stream: the mementos of the test sets being
+ * parsed, the handler, and the options of the parser, copied when the stream
+ * starts. Each TAP Stream gets its own context, so a {@link Tap13Parser} can
+ * parse several streams at the same time, from different threads.
+ *
+ * <p>A context is not thread-safe: the lines of one stream are parsed by one
+ * thread at a time.</p>
+ *
+ * @since 4.2
+ */
+final class ParseContext {
+
+    /**
+     * Version of the encoded state of checkpoints.
+     */
+    private static final byte STATE_VERSION = 1;
+
+    /**
+     * Stack of mementos. Each memento stores the state of an enclosing test
+     * set while a subtest is parsed.
+     */
+    private Stack<Memento> states = new Stack<Memento>();
+
+    /**
+     * The current state.
+     */
+    private Memento state;
+
+    /**
+     * Handler notified of the TAP elements, or <code>null</code> when the
+     * elements are collected into the test set.
+     */
+    private TapEventHandler handler;
+
+    /**
+     * Number of lines parsed.
+     */
+    private long lineNumber = 0;
+
+    /**
+     * Tokenizer for the TAP lines.
+     */
+    private final TapLineTokenizer tokenizer = new TapLineTokenizer();
+
+    /**
+     * Whether subtests are enabled or not.
+     */
+    private final boolean subtestsEnabled;
+
+    /**
+     * Require a TAP plan.
+     */
+    private final boolean planRequired;
+
+    /**
+     * Whether diagnostics are loaded only when read.
+     */
+    private final boolean lazyDiagnosticsEnabled;
+
+    /**
+     * Whether flat diagnostics are read without SnakeYAML.
+     */
+    private final boolean flatDiagnosticsEnabled;
+
+    /**
+     * Whether parsing stops at the first failure.
+     */
+    private final boolean failFastEnabled;
+
+    /**
+     * Whether failed TODO tests are ignored when failing fast.
+     */
+    private final boolean failFastTodoIgnored;
+
+    /**
+     * Failure at which parsing stopped, or <code>null</code>.
+     */
+    private TapElement stoppedAt = null;
+
+    /**
+     * Whether problems are collected instead of thrown.
+     */
+    private final boolean lenient;
+
+    /**
+     * Problems found, or <code>null</code> if none.
+     */
+    private List<TapProblem> problems = null;
+
+    /**
+     * Offset of the line being parsed, or <code>-1</code> if unknown.
+     */
+    private long lineOffset = -1;
+
+    /**
+     * YAML engine used to load diagnostics.
+     */
+    private final YamlEngine yamlEngine;
+
+    /**
+     * Limiter of the diagnostic buffer, or <code>null</code> if unbounded.
+     */
+    private final DiagnosticLimiter diagnosticLimiter;
+
+    /**
+     * Factory of the test sets, or <code>null</code> for {@link TestSet}s.
+     */
+    private final TestSetFactory testSetFactory;
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param parser parser, whose options are copied
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set
+     */
+    ParseContext(Tap13Parser parser, TapEventHandler handler) {
+        super();
+        this.subtestsEnabled = parser.isSubtestsEnabled();
+        this.planRequired = parser.isPlanRequired();
+        this.lazyDiagnosticsEnabled = parser.isLazyDiagnosticsEnabled();
+        this.flatDiagnosticsEnabled = parser.isFlatDiagnosticsEnabled();
+        this.failFastEnabled = parser.isFailFastEnabled();
+        this.failFastTodoIgnored = parser.isFailFastTodoIgnored();
+        this.lenient = parser.isLenient();
+        this.yamlEngine = parser.getYamlEngine();
+        this.diagnosticLimiter = parser.getDiagnosticLimit() > 0
+                ? new DiagnosticLimiter(parser.getDiagnosticLimit(),
+                        parser.getDiagnosticOverflow()) : null;
+        this.testSetFactory = parser.getTestSetFactory();
+        this.state = newMemento();
+        this.handler = handler;
+    }
+
+    /**
+     * Creates a context from a checkpoint.
+     *
+     * @param parser parser, whose options are copied
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set
+     * @param checkpoint checkpoint
+     * @return the context saved in the checkpoint
+     * @throws ParserException if the checkpoint cannot be read
+     */
+    static ParseContext restore(Tap13Parser parser, TapEventHandler handler,
+            TapCheckpoint checkpoint) {
+        final ParseContext context = new ParseContext(parser, handler);
+        context.lineNumber = checkpoint.getLineNumber();
+        if (checkpoint.getLiveState() != null) {
+            context.states = checkpoint.getLiveStates();
+            context.state = checkpoint.getLiveState();
+            checkpoint.releaseLiveState();
+            return context;
+        }
+        try {
+            context.readState(checkpoint.getState());
+        } catch (IOException e) {
+            throw new ParserException("Invalid TAP checkpoint: "
+                    + e.getMessage(), e);
+        }
+        if (context.testSetFactory != null) {
+            for (Memento memento : context.states) {
+                memento.rebase(context.testSetFactory.newTestSet());
+            }
+            context.state.rebase(context.testSetFactory.newTestSet());
+        }
+        context.linkSubtests();
+        return context;
+    }
+
+    /**
+     * Reads the state written by {@link #saveState()}.
+     *
+     * @param bytes encoded state
+     * @throws IOException if the state is corrupt
+     */
+    private void readState(byte[] bytes) throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes));
+        final byte version = in.readByte();
+        if (version != STATE_VERSION) {
+            throw new StreamCorruptedException("Unsupported version: "
+                    + version);
+        }
+        final int depth = in.readInt();
+        if (depth < 0 || depth > in.available()) {
+            throw new StreamCorruptedException("Invalid depth: " + depth);
+        }
+        this.states = new Stack<Memento>();
+        for (int i = 0; i < depth; i++) {
+            this.states.push(Memento.readFrom(in));
+        }
+        this.state = Memento.readFrom(in);
+        if (in.read() != -1) {
+            throw new StreamCorruptedException("Unexpected trailing bytes");
+        }
+        for (Memento memento : states) {
+            final TapElement parent = memento.getLastParsedElement();
+            if (!(parent instanceof TestResult) && !(parent instanceof Plan)) {
+                throw new StreamCorruptedException("Subtest without parent");
+            }
+        }
+    }
+
+    /**
+     * Links the test sets of restored subtests to their parents, the last
+     * elements of the enclosing test sets. Without a handler, the parent Test
+     * Results are collected again, so that the elements parsed after the
+     * checkpoint can be reached from the outermost test set.
+     */
+    private void linkSubtests() {
+        for (int i = 0; i < states.size(); i++) {
+            final Memento memento = states.get(i);
+            final TestSet subtest = i + 1 < states.size() ? states.get(i + 1)
+                    .getTestSet() : state.getTestSet();
+            final TapElement parent = memento.getLastParsedElement();
+            if (parent instanceof TestResult) {
+                ((TestResult) parent).setSubtest(subtest);
+                if (handler == null) {
+                    memento.getTestSet().addTestResult((TestResult) parent);
+                }
+            } else {
+                ((Plan) parent).setSubtest(subtest);
+            }
+        }
+    }
+
+    /**
+     * Creates a checkpoint of the context, before the next line.
+     *
+     * @param offset offset in the stream of the next line
+     * @param skipLineFeed whether a <code>\n</code> at the offset must be
+     *        skipped
+     * @return the checkpoint, holding the serialized and the live state
+     * @throws IOException if an element of the state cannot be serialized
+     */
+    TapCheckpoint checkpoint(long offset, boolean skipLineFeed)
+            throws IOException {
+        return new TapCheckpoint(offset, lineNumber, skipLineFeed,
+                saveState(), states, state);
+    }
+
+    /**
+     * Encodes the state of the context: a version, the mementos of the
+     * enclosing test sets and the current memento, with its partial
+     * diagnostic, but not the elements already collected.
+     *
+     * @return encoded state
+     * @throws IOException if an element of the state cannot be encoded
+     */
+    private byte[] saveState() throws IOException {
+        suspend();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(STATE_VERSION);
+        out.writeInt(this.states.size());
+        for (Memento memento : this.states) {
+            memento.writeTo(out);
+        }
+        this.state.writeTo(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Saves the current state in the stack.
+     */
+    void pushMemento() {
+        this.states.push(state);
+        state = newMemento();
+    }
+
+    /**
+     * @return a memento for a new test set
+     */
+    private Memento newMemento() {
+        if (testSetFactory == null) {
+            return new Memento();
+        }
+        return new Memento(testSetFactory.newTestSet());
+    }
+
+    /**
+     * Loads the previous state from the stack.
+     */
+    void popMemento() {
+        this.state = this.states.pop();
+        if (handler != null) {
+            handler.onSubtestEnd(state.getLastParsedElement());
+        }
+    }
+
+    /**
+     * @return the test set being parsed
+     */
+    TestSet getTestSet() {
+        return state.getTestSet();
+    }
+
+    /**
+     * @return number of lines parsed
+     */
+    long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return <code>true</code> if parsing stopped at a failure
+     */
+    boolean isStopped() {
+        return stoppedAt != null;
+    }
+
+    /**
+     * @return the failure at which parsing stopped, or <code>null</code>
+     */
+    TapElement getStoppedAt() {
+        return stoppedAt;
+    }
+
+    /**
+     * @return problems found in lenient mode, in the order found
+     */
+    List<TapProblem> getProblems() {
+        if (problems == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * Reports a problem, thrown as a {@link ParserException} unless the
+     * context is lenient, in which case it is recorded and the caller
+     * recovers.
+     *
+     * @param message description of the problem
+     * @throws ParserException if the context is not lenient
+     */
+    private void problem(String message) {
+        if (!lenient) {
+            throw new ParserException(message);
+        }
+        if (problems == null) {
+            problems = new ArrayList<TapProblem>();
+        }
+        problems.add(new TapProblem(lineNumber, lineOffset, message));
+    }
+
+    /**
+     * Closes the diagnostic being spilled to disk, if any, keeping its file
+     * for parsing to go on from a checkpoint.
+     *
+     * @throws IOException if the diagnostic cannot be written
+     */
+    void suspend() throws IOException {
+        if (diagnosticLimiter != null) {
+            diagnosticLimiter.close();
+        }
+    }
+
+    /**
+     * Releases the resources of a parse that failed or was abandoned: the
+     * diagnostic being spilled to disk, if any, is closed and deleted.
+     */
+    void abort() {
+        if (diagnosticLimiter != null) {
+            diagnosticLimiter.discard(state);
+        }
+    }
+
+    /**
+     * Completes the TAP Stream, then releases the handler.
+     */
+    void finish() {
+        try {
+            this.onFinish();
+        } finally {
+            this.handler = null;
+        }
+    }
+
+    /**
+     * Counts and parses the next line read from a TAP Stream, ignoring empty
+     * lines.
+     *
+     * @param tapLine TAP line
+     */
+    void parseNextLine(CharSequence tapLine) {
+        parseNextLine(tapLine, -1);
+    }
+
+    /**
+     * Counts and parses the next line read from a TAP Stream, ignoring empty
+     * lines.
+     *
+     * @param tapLine TAP line
+     * @param offset offset of the line in the TAP Stream, reported with the
+     *        problems found in it, or <code>-1</code> if unknown
+     */
+    void parseNextLine(CharSequence tapLine, long offset) {
+        this.lineOffset = offset;
+        if (stoppedAt != null) {
+            return;
+        }
+        this.lineNumber++;
+        if (tapLine.length() > 0) {
+            this.parseLine(tapLine);
+        }
+    }
+
+    /**
+     * Parse a TAP line. The line is not referenced after the call returns, so
+     * line readers may reuse its buffer.
+     *
+     * @param tapLine TAP line
+     */
+    void parseLine(CharSequence tapLine) {
+        int indentation = tokenizer.reset(tapLine);
+
+        // Comment
+        if (tokenizer.isComment()) {
+            tokenizer.tokenize();
+            onComment(tokenizer.getComment());
+            return;
+        }
+
+        // Check if we already know the indentation level... if so, try to
+        // find
+        // out the indentation level of the current line in the TAP Stream.
+        // If the line indentation level is greater than the pre-defined
+        // one, than we know it is a) a META, b)
+        if (state.getBaseIndentationLevel() > -1) {
+            state.setCurrentIndentationLevel(indentation);
+            if (indentation > state.getBaseIndentationLevel()) {
+                // we are at the start of the meta tags, but we should
+                // ignore
+                // the --- or ...
+
+                if (state.isCurrentlyInYaml()) {
+                    if (tokenizer.isYamlEnd(state.getCurrentYamlIndentation())) {
+                        state.setCurrentlyInYaml(false);
+                        this.parseDiagnostics();
+                        return;
+                    }
+                    if (diagnosticLimiter == null) {
+                        state.getDiagnosticBuffer().append(tapLine);
+                        state.getDiagnosticBuffer().append('\n');
+                    } else {
+                        appendDiagnostic(tapLine);
+                    }
+                    return; // NOPMD by Bruno on 12/01/11 07:47
+                } else if (tokenizer.isYamlStart()) {
+                    state.setCurrentlyInYaml(true);
+                    state.setCurrentYamlIndentation(tapLine.subSequence(0, indentation).toString());
+                    return;
+                } else {
+                    // If we are in a different level, but it is not
+                    // YAML,
+                    // Then it must be a subtest! Yay!
+                    if (subtestsEnabled) {
+                        // Check if we have some diagnostic set in the buffer
+                        this.parseDiagnostics();
+                        final TapElement parent = state.getLastParsedElement();
+                        if (parent instanceof TestResult || parent instanceof Plan) {
+                            indentation = state.getBaseIndentationLevel();
+                            this.pushMemento();
+                            if (handler != null) {
+                                handler.onSubtestStart(parent);
+                            } else if (parent instanceof TestResult) {
+                                ((TestResult) parent).setSubtest(state.getTestSet());
+                            } else {
+                                ((Plan) parent).setSubtest(state.getTestSet());
+                            }
+                        }
+                    }
+                }
+            }
+
+            // indentation cannot be less then the base indentation
+            // level
+            this.checkIndentationLevel(indentation, tapLine);
+        }
+
+        // Check if we have some diagnostic set in the buffer
+        this.parseDiagnostics();
+
+        final TapLineTokenizer.LineType lineType;
+        try {
+            lineType = tokenizer.tokenize();
+        } catch (NumberFormatException e) {
+            problem("Invalid number: " + e.getMessage());
+            return;
+        }
+        switch (lineType) {
+        case BAIL_OUT:
+            onBailOut(tokenizer.getBailOutReason(), tokenizer.getComment());
+            break;
+        case HEADER:
+            onHeader(tokenizer.getVersion(), tokenizer.getComment());
+            break;
+        case PLAN:
+            onPlan(tokenizer.getInitialTestNumber(),
+                    tokenizer.getLastTestNumber(), tokenizer.getReason(),
+                    tokenizer.getComment());
+            break;
+        case TEST_RESULT:
+            int testNumber = tokenizer.getTestNumber();
+            if (testNumber < 0) {
+                if (state.getTestSet().getPlan() != null && state.isPlanBeforeTestResult() == false)
+                    return; // done testing mark
+                if (state.getTestSet().getPlan() !=null && state.getTestSet().getPlan().getLastTestNumber() == state.getNumberOfTestResults())
+                    return; // done testing mark but plan before test result
+                testNumber = state.getNumberOfTestResults() + 1;
+            }
+            onTestResult(tokenizer.getStatus(), testNumber,
+                    tokenizer.getDescription(), tokenizer.getDirective(),
+                    tokenizer.getReason(), tokenizer.getComment());
+            break;
+        case FOOTER:
+            onFooter(tokenizer.getFooterText(), tokenizer.getComment());
+            break;
+        default:
+            // Any text. It should not be parsed by the consumer.
+            final Text text = new Text(tapLine.toString());
+            if (handler != null) {
+                handler.onText(text);
+            } else {
+                getTestSet().getTapLines().add(text);
+            }
+            state.setLastParsedElement(text);
+        }
+    }
+
+    /* -- Event handling -- */
+
+    /**
+     * Handles comments.
+     *
+     * @param text Comment
+     */
+    private void onComment(String text) {
+        final Comment comment = new Comment(text);
+        if (handler != null) {
+            handler.onComment(comment);
+        } else {
+            getTestSet().addComment(comment);
+        }
+
+        if (state.getLastParsedElement() instanceof TestResult) {
+            TestResult lastTestResult = (TestResult) state
+                    .getLastParsedElement();
+            lastTestResult.addComment(comment);
+        }
+    }
+
+    /**
+     * Handles Bail Out!s.
+     *
+     * @param reason Reason
+     * @param comment Comment
+     */
+    private void onBailOut(String reason, String comment) {
+        setIndentationLevelIfNotDefined(tokenizer.getIndentation());
+        final BailOut bailOut = new BailOut(reason);
+        if (comment != null && comment.trim().length() > 0) {
+            bailOut.setComment(new Comment(comment, true));
+        }
+        if (handler != null) {
+            handler.onBailOut(bailOut);
+        } else {
+            getTestSet().addBailOut(bailOut);
+        }
+        state.setNumberOfBailOuts(state.getNumberOfBailOuts() + 1);
+        state.setLastParsedElement(bailOut);
+        if (failFastEnabled) {
+            stoppedAt = bailOut;
+        }
+    }
+
+    /**
+     * Handles Headers.
+     *
+     * @param version Version
+     * @param comment Comment
+     */
+    private void onHeader(int version, String comment) {
+        if (getTestSet().getHeader() != null) {
+            problem("Duplicated TAP Header found.");
+            return;
+        }
+        if (!state.isFirstLine()) {
+            problem("Invalid position of TAP Header. It must be the first "
+                    + "element (apart of Comments) in the TAP Stream.");
+            return;
+        }
+        setIndentationLevelIfNotDefined(tokenizer.getIndentation());
+        state.setCurrentIndentationLevel(state.getBaseIndentationLevel());
+        final Header header = new Header(version);
+        if (comment != null && comment.trim().length() > 0) {
+            header.setComment(new Comment(comment));
+        }
+        getTestSet().setHeader(header);
+        if (handler != null) {
+            handler.onHeader(header);
+        }
+        state.setFirstLine(false);
+        state.setLastParsedElement(header);
+    }
+
+    /**
+     * Handles Plans.
+     *
+     * @param begin Plan begin
+     * @param end Plan end
+     * @param skip Skip
+     * @param comment Comment
+     */
+    private void onPlan(int begin, int end, String skip, String comment) {
+        if (getTestSet().getPlan() != null) {
+            problem("Duplicated TAP Plan found.");
+            return;
+        }
+        if (state.getNumberOfTestResults() <= 0
+                && state.getNumberOfBailOuts() <= 0) {
+            state.setPlanBeforeTestResult(true);
+        }
+        setIndentationLevelIfNotDefined(tokenizer.getIndentation());
+        Plan plan = new Plan(begin, end);
+
+        if (skip != null && skip.trim().length() > 0) {
+            plan.setSkip(new SkipPlan(skip));
+        }
+
+        if (comment != null && comment.trim().length() > 0) {
+            plan.setComment(new Comment(comment));
+        }
+        getTestSet().setPlan(plan);
+        if (handler != null) {
+            handler.onPlan(plan);
+        }
+        state.setFirstLine(false);
+        state.setLastParsedElement(plan);
+    }
+
+    /**
+     * Handles Test Results.
+     *
+     * @param status Test Status
+     * @param number Test Number
+     * @param description Description
+     * @param directive Directive
+     * @param reason Reason
+     * @param comment Comment
+     */
+    private void onTestResult(StatusValues status, int number, String description, DirectiveValues directive,
+            String reason, String comment) {
+        setIndentationLevelIfNotDefined(tokenizer.getIndentation());
+        final TestResult testResult = new TestResult(status, number);
+        testResult.setDescription(description);
+
+        if (directive != null) {
+            testResult.setDirective(new Directive(directive, reason));
+        }
+
+        if (comment != null && comment.trim().length() > 0) {
+            testResult.addComment(new Comment(comment));
+        }
+        if (handler != null) {
+            handler.onTestResult(testResult);
+        } else {
+            getTestSet().addTestResult(testResult);
+        }
+        state.setNumberOfTestResults(state.getNumberOfTestResults() + 1);
+        state.setFirstLine(false);
+        state.setLastParsedElement(testResult);
+        if (failFastEnabled && status == StatusValues.NOT_OK
+                && !(failFastTodoIgnored && directive == DirectiveValues.TODO)) {
+            stoppedAt = testResult;
+        }
+    }
+
+    /**
+     * Handles Footer.
+     *
+     * @param text Footer text
+     * @param comment Comment
+     */
+    private void onFooter(String text, String comment) {
+        final Footer footer = new Footer(text);
+        if (comment != null && comment.trim().length() > 0) {
+            footer.setComment(new Comment(comment, true));
+        }
+        getTestSet().setFooter(footer);
+        if (handler != null) {
+            handler.onFooter(footer);
+        }
+        state.setFirstLine(false);
+    }
+
+    /**
+     * Called after the rest of the stream has been processed.
+     */
+    private void onFinish() {
+        if (planRequired && stoppedAt == null) {
+            if (getTestSet().getPlan() == null) {
+                problem("Missing TAP Plan.");
+            }
+        }
+        parseDiagnostics();
+        while (!this.states.isEmpty()) {
+            this.popMemento();
+        }
+    }
+
+    /* -- Utility methods --*/
+
+    /**
+     * <p>
+     * Checks if there is any diagnostic information on the diagnostic buffer.
+     * </p>
+     * <p>
+     * If so, tries to parse it using snakeyaml.
+     * </p>
+     */
+    private void parseDiagnostics() {
+        // If we found any meta, then process it with SnakeYAML
+        if (state.getDiagnosticBuffer().length() > 0
+                || state.getDiagnosticSpill() != null) {
+
+            if (state.getLastParsedElement() == null) {
+                final File spill = takeSpilledDiagnostic();
+                if (spill != null) {
+                    spill.delete();
+                }
+                this.state.getDiagnosticBuffer().setLength(0);
+                problem("Found diagnostic information without a previous TAP element.");
+                return;
+            }
+
+            if (state.getDiagnosticSpill() != null) {
+                state.getLastParsedElement().setDiagnostic(
+                        new LazyDiagnostic(takeSpilledDiagnostic(),
+                                yamlEngine, flatDiagnosticsEnabled));
+                if (handler != null) {
+                    handler.onDiagnostic(state.getLastParsedElement());
+                }
+                return;
+            }
+
+            final String text = diagnosticLimiter == null ? state
+                    .getDiagnosticBuffer().toString() : diagnosticLimiter
+                    .takeText(state);
+            if (lazyDiagnosticsEnabled) {
+                state.getLastParsedElement().setDiagnostic(
+                        new LazyDiagnostic(text, yamlEngine,
+                                flatDiagnosticsEnabled));
+            } else if (lenient) {
+                this.state.getDiagnosticBuffer().setLength(0);
+                try {
+                    final Map<String, Object> diagnostic = LazyDiagnostic
+                            .loadYaml(text, yamlEngine,
+                                    flatDiagnosticsEnabled);
+                    state.getLastParsedElement().setDiagnostic(diagnostic);
+                } catch (Exception e) {
+                    problem("Error parsing YAML: " + e.getMessage());
+                    return;
+                }
+            } else {
+                state.getLastParsedElement().setDiagnostic(
+                        LazyDiagnostic.load(text, yamlEngine,
+                                flatDiagnosticsEnabled));
+            }
+            if (handler != null) {
+                handler.onDiagnostic(state.getLastParsedElement());
+            }
+            this.state.getDiagnosticBuffer().setLength(0);
+        }
+    }
+
+    /**
+     * Appends a YAMLish line to the bounded diagnostic buffer.
+     *
+     * @param tapLine YAMLish line
+     * @throws ParserException if the line cannot be spilled to disk
+     */
+    private void appendDiagnostic(CharSequence tapLine) {
+        try {
+            diagnosticLimiter.append(state, tapLine);
+        } catch (IOException e) {
+            throw new ParserException("Error spilling diagnostic: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Completes a diagnostic spilled to disk.
+     *
+     * @return the file holding the diagnostic, or <code>null</code>
+     * @throws ParserException if the file cannot be closed
+     */
+    private File takeSpilledDiagnostic() {
+        if (diagnosticLimiter == null) {
+            return null;
+        }
+        try {
+            return diagnosticLimiter.takeSpill(state);
+        } catch (IOException e) {
+            throw new ParserException("Error spilling diagnostic: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Set the indentation level, only if not defined yet.
+     * @param indentation indentation of the current TAP Line
+     */
+    private void setIndentationLevelIfNotDefined(int indentation) {
+        if (state.getBaseIndentationLevel() < 0) {
+            state.setBaseIndentationLevel(indentation);
+        }
+    }
+
+    /**
+     * Checks if the indentation is greater than the
+     * {@link #baseIndentationLevel}.
+     *
+     * @param indentation indentation level
+     * @param tapLine TAP Line
+     */
+    private void checkIndentationLevel(int indentation, CharSequence tapLine) {
+        if (indentation < state.getBaseIndentationLevel()) {
+            if (!state.isCurrentlyInYaml()
+                    && this.states.isEmpty() == Boolean.FALSE) {
+                while (!this.states.isEmpty()
+                        && indentation < state.getBaseIndentationLevel()) {
+                    this.popMemento();
+                }
+            } else if (!lenient) {
+                throw new ParserException("Invalid indentation. "
+                        + "Check your TAP Stream. Line: " + tapLine);
+            } else {
+                problem("Invalid indentation.");
+                if (state.isCurrentlyInYaml()) {
+                    state.setCurrentlyInYaml(false);
+                    state.getDiagnosticBuffer().setLength(0);
+                }
+            }
+        }
+    }
+
+}
@@ -24,6 +24,8 @@
 package org.tap4j.parser;
 
 import java.io.File;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
 
 import org.tap4j.model.TestSet;
 
@@ -50,4 +52,85 @@ public interface Parser {
      */
     TestSet parseFile(File tapFile);
 
+    /**
+     * Parses a TAP Stream, passing each TAP element to a handler instead of
+     * building a Test Set.
+     *
+     * @param tapStream TAP Stream
+     * @param handler TAP event handler
+     * @since 4.2
+     */
+    void parseTapStream(String tapStream, TapEventHandler handler);
+
+    /**
+     * Parses a TAP File, passing each TAP element to a handler instead of
+     * building a Test Set.
+     *
+     * @param tapFile TAP File
+     * @param handler TAP event handler
+     * @since 4.2
+     */
+    void parseFile(File tapFile, TapEventHandler handler);
+
+    /**
+     * Parses a TAP Stream held in memory, reading its characters directly.
+     *
+     * @param tapStream TAP Stream
+     * @return Test Set
+     * @since 4.2
+     */
+    TestSet parseTapStream(CharSequence tapStream);
+
+    /**
+     * Parses a TAP Stream held in memory, passing each TAP element to a
+     * handler instead of building a Test Set.
+     *
+     * @param tapStream TAP Stream
+     * @param handler TAP event handler
+     * @since 4.2
+     */
+    void parseTapStream(CharSequence tapStream, TapEventHandler handler);
+
+    /**
+     * Parses a TAP Stream from a character stream, which is closed at the
+     * end.
+     *
+     * @param tapStream TAP Stream
+     * @return Test Set
+     * @since 4.2
+     */
+    TestSet parseTapStream(Reader tapStream);
+
+    /**
+     * Parses a TAP Stream from a character stream, which is closed at the
+     * end, passing each TAP element to a handler instead of building a Test
+     * Set.
+     *
+     * @param tapStream TAP Stream
+     * @param handler TAP event handler
+     * @since 4.2
+     */
+    void parseTapStream(Reader tapStream, TapEventHandler handler);
+
+    /**
+     * Parses a TAP Stream from a channel, which is closed at the end. The
+     * bytes are decoded with the encoding of the parser.
+     *
+     * @param tapStream TAP Stream
+     * @return Test Set
+     * @since 4.2
+     */
+    TestSet parseTapStream(ReadableByteChannel tapStream);
+
+    /**
+     * Parses a TAP Stream from a channel, which is closed at the end, passing
+     * each TAP element to a handler instead of building a Test Set. The bytes
+     * are decoded with the encoding of the parser.
+     *
+     * @param tapStream TAP Stream
+     * @param handler TAP event handler
+     * @since 4.2
+     */
+    void parseTapStream(ReadableByteChannel tapStream, TapEventHandler handler);
+
 }
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+/**
+ * Line reader for a TAP Stream already in memory as a {@link CharSequence},
+ * such as a String. The lines returned are views of the sequence, so the
+ * characters are neither encoded, decoded nor copied.
+ *
+ * @since 4.2
+ */
+final class SequenceLineReader extends LineReader {
+
+    /**
+     * TAP Stream.
+     */
+    private final CharSequence sequence;
+
+    /**
+     * Start of the next line.
+     */
+    private int start = 0;
+
+    /**
+     * View of the line.
+     */
+    private final LineView line = new LineView();
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param sequence TAP Stream
+     */
+    SequenceLineReader(CharSequence sequence) {
+        super();
+        this.sequence = sequence;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    CharSequence readLine() {
+        final int limit = sequence.length();
+        if (start >= limit) {
+            return null;
+        }
+        for (int i = start; i < limit; i++) {
+            final char c = sequence.charAt(i);
+            if (c == '\n' || c == '\r') {
+                line.set(start, i);
+                start = i + 1;
+                if (c == '\r' && start < limit
+                        && sequence.charAt(start) == '\n') {
+                    start++;
+                }
+                return line;
+            }
+        }
+        line.set(start, limit);
+        start = limit;
+        return line;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    long getPosition() {
+        return start;
+    }
+
+    /**
+     * Nothing to close.
+     */
+    public void close() {
+    }
+
+    /**
+     * Reusable view of a line of the sequence.
+     */
+    private final class LineView implements CharSequence {
+
+        /**
+         * Start of the line in the sequence.
+         */
+        private int from;
+
+        /**
+         * Length of the line.
+         */
+        private int length;
+
+        /**
+         * Points the view to a new line.
+         *
+         * @param from start of the line in the sequence
+         * @param to end of the line in the sequence
+         */
+        void set(int from, int to) {
+            this.from = from;
+            this.length = to - from;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public char charAt(int index) {
+            return sequence.charAt(from + index);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public CharSequence subSequence(int start, int end) {
+            return sequence.subSequence(from + start, from + end).toString();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return sequence.subSequence(from, from + length).toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.File;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Deletes the files of spilled diagnostics that were garbage collected without
+ * being read. Only the spilled diagnostics are tracked, with phantom
+ * references, and the files of the collected ones are deleted when another
+ * diagnostic is spilled.
+ *
+ * @since 4.2
+ */
+final class SpillCleaner {
+
+    /**
+     * Queue of the references to collected diagnostics.
+     */
+    private static final ReferenceQueue<Object> QUEUE =
+            new ReferenceQueue<Object>();
+
+    /**
+     * References kept until their file is deleted.
+     */
+    private static final Set<Spill> SPILLS = Collections
+            .synchronizedSet(new HashSet<Spill>());
+
+    /**
+     * Default constructor, hidden.
+     */
+    private SpillCleaner() {
+        super();
+    }
+
+    /**
+     * Tracks the file of a spilled diagnostic.
+     *
+     * @param owner diagnostic reading the file
+     * @param file file holding the diagnostic
+     * @return the spill, to delete once the file is read
+     */
+    static Spill register(Object owner, File file) {
+        expunge();
+        final Spill spill = new Spill(owner, file);
+        SPILLS.add(spill);
+        return spill;
+    }
+
+    /**
+     * Deletes the files of the diagnostics collected so far.
+     */
+    static void expunge() {
+        Object reference;
+        while ((reference = QUEUE.poll()) != null) {
+            ((Spill) reference).delete();
+        }
+    }
+
+    /**
+     * Phantom reference to a spilled diagnostic, with its file.
+     */
+    static final class Spill extends PhantomReference<Object> {
+
+        /**
+         * File holding the diagnostic.
+         */
+        private final File file;
+
+        /**
+         * Constructor with parameters.
+         *
+         * @param owner diagnostic reading the file
+         * @param file file holding the diagnostic
+         */
+        private Spill(Object owner, File file) {
+            super(owner, QUEUE);
+            this.file = file;
+        }
+
+        /**
+         * @return the file holding the diagnostic
+         */
+        File getFile() {
+            return file;
+        }
+
+        /**
+         * Deletes the file and stops tracking it.
+         */
+        void delete() {
+            clear();
+            SPILLS.remove(this);
+            file.delete();
+        }
+
+    }
+
+}
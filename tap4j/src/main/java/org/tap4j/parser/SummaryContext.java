@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tap4j.model.TapSummary;
+
+/**
+ * Counts the elements of a TAP Stream into a {@link TapSummary}, without
+ * building the model. Lines are only classified: no TAP element nor text is
+ * created, and YAMLish diagnostics and subtests are skipped. As in
+ * {@link TapSummary#add(org.tap4j.model.TestSet)}, only the elements of the
+ * top level test set are counted.
+ *
+ * <p>The stream is not validated beyond what counting needs: the plan is
+ * never required, and a plan mismatch is only counted in the summary.</p>
+ *
+ * @since 4.2
+ */
+final class SummaryContext {
+
+    /**
+     * Tokenizer for the TAP lines, without texts.
+     */
+    private final TapLineTokenizer tokenizer = new TapLineTokenizer(false);
+
+    /**
+     * Summary updated with the elements counted.
+     */
+    private final TapSummary summary;
+
+    /**
+     * Whether indented TAP lines are subtests, which are skipped.
+     */
+    private final boolean subtestsEnabled;
+
+    /**
+     * Levels of the enclosing test sets, like the mementos of the parser.
+     */
+    private final List<Level> levels = new ArrayList<Level>();
+
+    /**
+     * Level of the current test set.
+     */
+    private Level level = new Level();
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param summary summary updated with the elements counted
+     * @param subtestsEnabled whether indented TAP lines are subtests, which
+     *        are skipped, or elements of the top level test set
+     */
+    SummaryContext(TapSummary summary, boolean subtestsEnabled) {
+        super();
+        this.summary = summary;
+        this.subtestsEnabled = subtestsEnabled;
+    }
+
+    /**
+     * Counts the element of a line. Indentation is handled as in
+     * {@link ParseContext#parseLine(CharSequence)}, so that the elements
+     * counted are the ones the parser puts in the top level test set.
+     *
+     * @param tapLine TAP line
+     */
+    void parseLine(CharSequence tapLine) {
+        if (tapLine.length() == 0) {
+            return;
+        }
+        int indentation = tokenizer.reset(tapLine);
+        if (tokenizer.isComment()) {
+            return;
+        }
+        if (level.baseIndentation > -1) {
+            if (indentation > level.baseIndentation) {
+                if (level.yamlIndentation >= 0) {
+                    if (tokenizer.isYamlEnd(level.yamlIndentation)) {
+                        level.yamlIndentation = -1;
+                    }
+                    return;
+                } else if (tokenizer.isYamlStart()) {
+                    level.yamlIndentation = indentation;
+                    return;
+                } else if (subtestsEnabled && level.lastIsParent) {
+                    indentation = level.baseIndentation;
+                    levels.add(level);
+                    level = new Level();
+                }
+            }
+            if (indentation < level.baseIndentation) {
+                if (level.yamlIndentation >= 0 || levels.isEmpty()) {
+                    throw new ParserException("Invalid indentation. "
+                            + "Check your TAP Stream. Line: " + tapLine);
+                }
+                while (!levels.isEmpty()
+                        && indentation < level.baseIndentation) {
+                    level = levels.remove(levels.size() - 1);
+                }
+            }
+        }
+        switch (tokenizer.tokenize()) {
+        case PLAN:
+            if (level.hasPlan) {
+                throw new ParserException("Duplicated TAP Plan found.");
+            }
+            level.planBeforeTestResult = level.testResults <= 0
+                    && level.bailOuts <= 0;
+            level.hasPlan = true;
+            level.plannedTests = Math.max(0, tokenizer.getLastTestNumber()
+                    - tokenizer.getInitialTestNumber() + 1);
+            level.lastTestNumber = tokenizer.getLastTestNumber();
+            onElement(true);
+            break;
+        case TEST_RESULT:
+            if (tokenizer.getTestNumber() < 0 && level.hasPlan
+                    && (!level.planBeforeTestResult
+                    || level.lastTestNumber == level.testResults)) {
+                // done testing mark
+                return;
+            }
+            if (levels.isEmpty()) {
+                summary.addTestResult(tokenizer.getStatus(),
+                        tokenizer.getDirective());
+            }
+            level.testResults++;
+            onElement(true);
+            break;
+        case BAIL_OUT:
+            if (levels.isEmpty()) {
+                summary.addBailOut();
+            }
+            level.bailOuts++;
+            onElement(false);
+            break;
+        case HEADER:
+            onElement(false);
+            break;
+        case FOOTER:
+            break;
+        default:
+            level.lastIsParent = false;
+        }
+    }
+
+    /**
+     * Updates the level after an element.
+     *
+     * @param parent whether the element is a Test Result or a Plan, which can
+     *        have a subtest
+     */
+    private void onElement(boolean parent) {
+        if (level.baseIndentation < 0) {
+            level.baseIndentation = tokenizer.getIndentation();
+        }
+        level.lastIsParent = parent;
+    }
+
+    /**
+     * Counts the top level test set, at the end of the TAP Stream.
+     */
+    void finish() {
+        final Level top = levels.isEmpty() ? level : levels.get(0);
+        summary.addTestSet(top.hasPlan ? top.plannedTests : -1,
+                top.testResults);
+    }
+
+    /**
+     * Counters of a test set.
+     */
+    private static final class Level {
+
+        /**
+         * Indentation of the test set, or <code>-1</code> until known.
+         */
+        private int baseIndentation = -1;
+
+        /**
+         * Indentation of the YAMLish block being skipped, or <code>-1</code>.
+         */
+        private int yamlIndentation = -1;
+
+        /**
+         * Whether the last element is a Test Result or a Plan.
+         */
+        private boolean lastIsParent = false;
+
+        /**
+         * Whether a plan was found.
+         */
+        private boolean hasPlan = false;
+
+        /**
+         * Number of tests of the plan, none for a reversed plan.
+         */
+        private int plannedTests = 0;
+
+        /**
+         * Last test number of the plan.
+         */
+        private int lastTestNumber = -1;
+
+        /**
+         * Whether the plan came before the first Test Result.
+         */
+        private boolean planBeforeTestResult = false;
+
+        /**
+         * Number of Test Results.
+         */
+        private int testResults = 0;
+
+        /**
+         * Number of Bail Out!s.
+         */
+        private int bailOuts = 0;
+
+    }
+
+}
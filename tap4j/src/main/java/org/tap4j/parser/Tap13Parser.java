@@ -23,37 +23,40 @@
  */
 package org.tap4j.parser;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.Stack;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-
-import org.tap4j.model.BailOut;
-import org.tap4j.model.Comment;
-import org.tap4j.model.Directive;
-import org.tap4j.model.Footer;
-import org.tap4j.model.Header;
-import org.tap4j.model.Plan;
-import org.tap4j.model.SkipPlan;
-import org.tap4j.model.TestResult;
+
+import org.tap4j.model.IndexedTestSet;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TapSummary;
 import org.tap4j.model.TestSet;
-import org.tap4j.model.Text;
-import org.tap4j.util.DirectiveValues;
-import org.tap4j.util.StatusValues;
-import org.yaml.snakeyaml.Yaml;
+import org.tap4j.model.TestSetFactory;
+import org.tap4j.util.YamlEngine;
 
 /**
  * TAP 13 parser.
  *
+ * <p>Each TAP Stream or file is parsed in a context of its own, so once
+ * configured, a parser can be shared by threads parsing different streams.
+ * Only the streams parsed line by line, with {@link #parseLine(String)},
+ * use the context kept in the parser.</p>
+ *
+ * <p>The options must be set before the parser is shared. They are read
+ * once, when a stream starts, so a change made while streams are parsed
+ * only applies to the streams started afterwards, and the options set
+ * together may be seen apart by a stream starting meanwhile. To change
+ * the options of a shared parser, configure a copy made with
+ * {@link #Tap13Parser(Tap13Parser)} and share the copy instead.</p>
+ *
  * @since 1.0
  */
 public class Tap13Parser implements Parser {
@@ -65,30 +68,75 @@ public class Tap13Parser implements Parser {
             .getCanonicalName());
 
     /**
-     * Stack of mementos. Each memento stores a current state of the parser.
-     * When a new
+     * Encoding used.
      */
-    private Stack<Memento> states = new Stack<Memento>();
+    private final String encoding;
 
     /**
-     * The current state.
+     * Whether subtests are enabled or not.
      */
-    private Memento state = null;
+    private final boolean subtestsEnabled;
+    
+    /**
+     * Require a TAP plan.
+     */
+    private final boolean planRequired;
 
     /**
-     * Encoding used.
+     * Whether TAP files are mapped in memory.
      */
-    private String encoding;
+    private volatile boolean memoryMappingEnabled = false;
 
     /**
-     * Whether subtests are enabled or not.
+     * Whether diagnostics are loaded only when read.
      */
-    private boolean subtestsEnabled = false;
-    
+    private volatile boolean lazyDiagnosticsEnabled = false;
+
     /**
-     * Require a TAP plan.
+     * Whether flat diagnostics are read without SnakeYAML.
+     */
+    private volatile boolean flatDiagnosticsEnabled = false;
+
+    /**
+     * Whether parsing stops at the first failure.
+     */
+    private volatile boolean failFastEnabled = false;
+
+    /**
+     * Whether failed TODO tests are ignored when failing fast.
+     */
+    private volatile boolean failFastTodoIgnored = false;
+
+    /**
+     * Whether problems are collected instead of thrown.
+     */
+    private volatile boolean lenient = false;
+
+    /**
+     * Maximum number of characters buffered for a YAMLish block, or 0.
+     */
+    private volatile int diagnosticLimit = 0;
+
+    /**
+     * What is done with the YAMLish blocks longer than the limit.
+     */
+    private volatile DiagnosticOverflow diagnosticOverflow = DiagnosticOverflow.TRUNCATE;
+
+    /**
+     * Factory of the test sets, or <code>null</code> for {@link TestSet}s.
+     */
+    private volatile TestSetFactory testSetFactory = null;
+
+    /**
+     * YAML engine used to load diagnostics.
+     */
+    private volatile YamlEngine yamlEngine = YamlEngine.getDefault();
+
+    /**
+     * Context of the TAP Stream parsed line by line, from
+     * {@link #startParsing(TapEventHandler)} to {@link #finishParsing()}.
      */
-    private boolean planRequired = true;
+    private ParseContext context = null;
 
     /**
      * Parser Constructor.
@@ -130,61 +178,481 @@ public class Tap13Parser implements Parser {
         this("UTF-8", false);
     }
 
+    /**
+     * Parser Constructor, with the configuration of another parser.
+     *
+     * @param parser parser whose configuration is copied
+     * @since 4.2
+     */
+    public Tap13Parser(Tap13Parser parser) {
+        this(parser.encoding, parser.subtestsEnabled, parser.planRequired);
+        this.memoryMappingEnabled = parser.memoryMappingEnabled;
+        this.lazyDiagnosticsEnabled = parser.lazyDiagnosticsEnabled;
+        this.flatDiagnosticsEnabled = parser.flatDiagnosticsEnabled;
+        this.failFastEnabled = parser.failFastEnabled;
+        this.failFastTodoIgnored = parser.failFastTodoIgnored;
+        this.lenient = parser.lenient;
+        this.diagnosticLimit = parser.diagnosticLimit;
+        this.diagnosticOverflow = parser.diagnosticOverflow;
+        this.testSetFactory = parser.testSetFactory;
+        this.yamlEngine = parser.yamlEngine;
+    }
+
+    /**
+     * @return the encoding
+     * @since 4.2
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return whether subtests are enabled
+     * @since 4.2
+     */
+    public boolean isSubtestsEnabled() {
+        return subtestsEnabled;
+    }
+
+    /**
+     * @return whether a TAP Plan is required
+     * @since 4.2
+     */
+    public boolean isPlanRequired() {
+        return planRequired;
+    }
+
+    /**
+     * @return whether TAP files are mapped in memory
+     * @since 4.2
+     */
+    public boolean isMemoryMappingEnabled() {
+        return memoryMappingEnabled;
+    }
+
+    /**
+     * Defines whether {@link #parseFile(File)} maps TAP files in memory,
+     * instead of reading them through a stream. Mapped files are read without
+     * copying them into the heap, and only the parts of the lines kept in
+     * the model are decoded.
+     *
+     * @param memoryMappingEnabled whether TAP files are mapped in memory
+     * @since 4.2
+     */
+    public void setMemoryMappingEnabled(boolean memoryMappingEnabled) {
+        this.memoryMappingEnabled = memoryMappingEnabled;
+    }
+
+    /**
+     * @return whether diagnostics are loaded only when read
+     * @since 4.2
+     */
+    public boolean isLazyDiagnosticsEnabled() {
+        return lazyDiagnosticsEnabled;
+    }
+
+    /**
+     * Defines whether the YAMLish diagnostics are loaded only when the
+     * diagnostic map of a TAP element is first read, instead of while
+     * parsing. Invalid YAMLish is then reported with a {@link ParserException}
+     * thrown by the diagnostic map.
+     *
+     * @param lazyDiagnosticsEnabled whether diagnostics are loaded only when
+     *        read
+     * @since 4.2
+     */
+    public void setLazyDiagnosticsEnabled(boolean lazyDiagnosticsEnabled) {
+        this.lazyDiagnosticsEnabled = lazyDiagnosticsEnabled;
+    }
+
+    /**
+     * @return whether flat diagnostics are read without SnakeYAML
+     * @since 4.2
+     */
+    public boolean isFlatDiagnosticsEnabled() {
+        return flatDiagnosticsEnabled;
+    }
+
+    /**
+     * Defines whether the YAMLish diagnostics that are flat maps of scalars,
+     * like the ones produced by the JUnit and TestNG extensions, are read by
+     * a specialized reader instead of SnakeYAML. The values are the same, and
+     * other diagnostics are still loaded with the YAML engine.
+     *
+     * @param flatDiagnosticsEnabled whether flat diagnostics are read
+     *        without SnakeYAML
+     * @since 4.2
+     */
+    public void setFlatDiagnosticsEnabled(boolean flatDiagnosticsEnabled) {
+        this.flatDiagnosticsEnabled = flatDiagnosticsEnabled;
+    }
+
+    /**
+     * @return whether parsing stops at the first failure
+     * @since 4.2
+     */
+    public boolean isFailFastEnabled() {
+        return failFastEnabled;
+    }
+
+    /**
+     * Defines whether parsing stops as soon as a <code>not ok</code> Test
+     * Result or a Bail Out! is parsed, at any level. The rest of the stream is
+     * not read, and the Test Set holds the elements parsed until then, without
+     * the diagnostic of the last one. The plan is not required when stopping.
+     * {@link #parseTapStreamWithResult(CharSequence)} and
+     * {@link #parseFileWithResult(File)} tell where parsing stopped.
+     *
+     * @param failFastEnabled whether parsing stops at the first failure
+     * @since 4.2
+     */
+    public void setFailFastEnabled(boolean failFastEnabled) {
+        this.failFastEnabled = failFastEnabled;
+    }
+
+    /**
+     * @return whether failed TODO tests are ignored when failing fast
+     * @since 4.2
+     */
+    public boolean isFailFastTodoIgnored() {
+        return failFastTodoIgnored;
+    }
+
+    /**
+     * Defines whether a <code>not ok</code> Test Result with a TODO directive
+     * is ignored when failing fast, as TAP harnesses do not count it as a
+     * failure.
+     *
+     * @param failFastTodoIgnored whether failed TODO tests are ignored
+     * @since 4.2
+     */
+    public void setFailFastTodoIgnored(boolean failFastTodoIgnored) {
+        this.failFastTodoIgnored = failFastTodoIgnored;
+    }
+
+    /**
+     * @return whether problems are collected instead of thrown
+     * @since 4.2
+     */
+    public boolean isLenient() {
+        return lenient;
+    }
+
+    /**
+     * Defines whether problems in the TAP Stream, such as an invalid
+     * indentation, a duplicated plan or invalid YAMLish, are collected with
+     * their line number and offset instead of throwing a
+     * {@link ParserException}, so that parsing goes on. The element or
+     * diagnostic in error is skipped.
+     * {@link #parseTapStreamWithResult(CharSequence)},
+     * {@link #parseWithResult(InputStream)} and
+     * {@link #parseFileWithResult(File)} return the problems found, while the
+     * other parse methods ignore them. Errors reading the stream are still
+     * thrown, and so are errors in diagnostics loaded lazily, when read.
+     *
+     * @param lenient whether problems are collected instead of thrown
+     * @since 4.2
+     */
+    public void setLenient(boolean lenient) {
+        this.lenient = lenient;
+    }
+
+    /**
+     * @return maximum number of characters buffered for a YAMLish block, or 0
+     *         if unbounded
+     * @since 4.2
+     */
+    public int getDiagnosticLimit() {
+        return diagnosticLimit;
+    }
+
+    /**
+     * Defines the maximum number of characters buffered for a YAMLish
+     * diagnostic block, so that a single huge block cannot exhaust the heap.
+     * Longer blocks are truncated or spilled to disk, as defined by
+     * {@link #setDiagnosticOverflow(DiagnosticOverflow)}. Defaults to 0, for
+     * unbounded blocks.
+     *
+     * @param diagnosticLimit maximum number of characters buffered for a
+     *        YAMLish block, or 0 or less if unbounded
+     * @since 4.2
+     */
+    public void setDiagnosticLimit(int diagnosticLimit) {
+        this.diagnosticLimit = diagnosticLimit;
+    }
+
+    /**
+     * @return what is done with the YAMLish blocks longer than the limit
+     * @since 4.2
+     */
+    public DiagnosticOverflow getDiagnosticOverflow() {
+        return diagnosticOverflow;
+    }
+
+    /**
+     * Defines what is done with the YAMLish blocks longer than the diagnostic
+     * limit. Spilled blocks are always loaded lazily, when the diagnostic is
+     * first read. Defaults to {@link DiagnosticOverflow#TRUNCATE}.
+     *
+     * @param diagnosticOverflow what is done with the YAMLish blocks longer
+     *        than the limit
+     * @since 4.2
+     */
+    public void setDiagnosticOverflow(DiagnosticOverflow diagnosticOverflow) {
+        this.diagnosticOverflow = diagnosticOverflow;
+    }
+
+    /**
+     * @return the factory of the test sets, or <code>null</code> if the
+     *         parser fills {@link TestSet}s
+     * @since 4.2
+     */
+    public TestSetFactory getTestSetFactory() {
+        return testSetFactory;
+    }
+
+    /**
+     * Defines the factory of the test sets filled by the parser, including
+     * the subtests, for instance {@link IndexedTestSet#factory()}. By default,
+     * the parser fills {@link TestSet}s.
+     *
+     * @param testSetFactory factory of the test sets, or <code>null</code>
+     *        for {@link TestSet}s
+     * @since 4.2
+     */
+    public void setTestSetFactory(TestSetFactory testSetFactory) {
+        this.testSetFactory = testSetFactory;
+    }
+
+    /**
+     * @return the YAML engine used to load diagnostics
+     * @since 4.2
+     */
+    public YamlEngine getYamlEngine() {
+        return yamlEngine;
+    }
+
+    /**
+     * Defines the YAML engine used to load diagnostics. By default, the
+     * engine returned by {@link YamlEngine#getDefault()}, which is shared
+     * with the representers.
+     *
+     * @param yamlEngine YAML engine used to load diagnostics
+     * @since 4.2
+     */
+    public void setYamlEngine(YamlEngine yamlEngine) {
+        this.yamlEngine = yamlEngine;
+    }
+
     /**
      * Saves the current state in the stack.
      */
     protected void pushMemento() {
-        this.states.push(state);
-        state = new Memento();
+        context.pushMemento();
     }
 
     /**
      * Loads the previous state from the stack.
      */
     protected void popMemento() {
-        this.state = this.states.pop();
+        context.popMemento();
     }
 
     /**
-     * Get parser test set.
+     * Get the test set of the TAP Stream parsed line by line.
      * @return Test Set
      */
     protected TestSet getTestSet() {
-        return state.getTestSet();
+        return context.getTestSet();
     }
 
     /**
      * {@inheritDoc}
      */
     public TestSet parseTapStream(String tapStream) {
-        ByteArrayInputStream is = null;
+        return this.parseTapStream((CharSequence) tapStream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void parseTapStream(String tapStream, TapEventHandler handler) {
+        this.parseTapStream((CharSequence) tapStream, handler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public TestSet parseTapStream(CharSequence tapStream) {
+        return this.parse(new SequenceLineReader(tapStream), null);
+    }
+
+    /**
+     * Parses a TAP Stream held in memory, telling where parsing stopped when
+     * fail-fast is enabled.
+     *
+     * @param tapStream TAP Stream
+     * @return result of the parsing, with the offset in characters
+     * @see #setFailFastEnabled(boolean)
+     * @since 4.2
+     */
+    public TapParseResult parseTapStreamWithResult(CharSequence tapStream) {
+        return this.parseWithResult(new SequenceLineReader(tapStream), null);
+    }
+
+    /**
+     * Parses a TAP Stream, telling where parsing stopped when fail-fast is
+     * enabled. The stream is closed at the end, even when parsing stops
+     * early.
+     *
+     * @param stream TAP Stream
+     * @return result of the parsing, with the offset in bytes
+     * @see #setFailFastEnabled(boolean)
+     * @since 4.2
+     */
+    public TapParseResult parseWithResult(InputStream stream) {
+        return this.parseWithResult(open(stream), null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void parseTapStream(CharSequence tapStream,
+            TapEventHandler handler) {
+        this.parse(new SequenceLineReader(tapStream), handler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public TestSet parseTapStream(Reader tapStream) {
+        return this.parse(new CharLineReader(tapStream), null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void parseTapStream(Reader tapStream, TapEventHandler handler) {
+        this.parse(new CharLineReader(tapStream), handler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public TestSet parseTapStream(ReadableByteChannel tapStream) {
+        return this.parse(Channels.newInputStream(tapStream));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void parseTapStream(ReadableByteChannel tapStream,
+            TapEventHandler handler) {
+        this.parse(Channels.newInputStream(tapStream), handler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public TestSet parseFile(File tapFile) {
+        return this.parseTapFile(tapFile, null).getTestSet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void parseFile(File tapFile, TapEventHandler handler) {
+        this.parseTapFile(tapFile, handler);
+    }
+
+    /**
+     * Parses a TAP File, telling where parsing stopped when fail-fast is
+     * enabled.
+     *
+     * @param tapFile TAP File
+     * @return result of the parsing, with the offset in bytes
+     * @see #setFailFastEnabled(boolean)
+     * @since 4.2
+     */
+    public TapParseResult parseFileWithResult(File tapFile) {
+        return this.parseTapFile(tapFile, null);
+    }
+
+    /**
+     * Parses a TAP File.
+     *
+     * @param tapFile TAP File
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set
+     * @return result of the parsing
+     */
+    private TapParseResult parseTapFile(File tapFile,
+            TapEventHandler handler) {
+        FileInputStream fis = null;
         try {
-            is = new ByteArrayInputStream(tapStream.getBytes(encoding));
-            return parse(is);
-        } catch (UnsupportedEncodingException uee) {
-            throw new ParserException("Invalid encoding: " + encoding, uee);
+            fis = new FileInputStream(tapFile);
+            if (memoryMappingEnabled) {
+                return parseWithResult(openMapped(fis), handler);
+            } else {
+                return parseWithResult(open(fis), handler);
+            }
+        } catch (FileNotFoundException e) {
+            throw new ParserException("TAP file not found: " + tapFile, e);
         } finally {
-            if (is != null) {
+            if (fis != null) {
                 try {
-                    is.close();
+                    fis.close();
                 } catch (IOException e) {
-                    LOGGER.log(
-                            Level.SEVERE,
-                            "Failed to close byte array stream: "
-                                    + e.getMessage(), e);
+                    LOGGER.log(Level.SEVERE, "Failed to close file stream: "
+                            + e.getMessage(), e);
                 }
             }
         }
     }
 
     /**
-     * {@inheritDoc}
+     * Counts the elements of a TAP Stream held in memory, without building
+     * the TAP model. YAMLish diagnostics and subtests are skipped, and only
+     * the top level test set is counted.
+     *
+     * @param tapStream TAP Stream
+     * @return summary of the TAP Stream
+     * @since 4.2
      */
-    public TestSet parseFile(File tapFile) {
+    public TapSummary summarizeTapStream(CharSequence tapStream) {
+        return this.summarize(new SequenceLineReader(tapStream));
+    }
+
+    /**
+     * Counts the elements of a TAP Stream, without building the TAP model.
+     * The stream is closed at the end.
+     *
+     * @param stream TAP Stream
+     * @return summary of the TAP Stream
+     * @see #summarizeTapStream(CharSequence)
+     * @since 4.2
+     */
+    public TapSummary summarize(InputStream stream) {
+        return this.summarize(open(stream));
+    }
+
+    /**
+     * Counts the elements of a TAP File, without building the TAP model.
+     *
+     * @param tapFile TAP File
+     * @return summary of the TAP File
+     * @see #summarizeTapStream(CharSequence)
+     * @since 4.2
+     */
+    public TapSummary summarizeFile(File tapFile) {
         FileInputStream fis = null;
         try {
             fis = new FileInputStream(tapFile);
-            return parse(fis);
+            if (memoryMappingEnabled) {
+                return summarize(openMapped(fis));
+            } else {
+                return summarize(open(fis));
+            }
         } catch (FileNotFoundException e) {
             throw new ParserException("TAP file not found: " + tapFile, e);
         } finally {
@@ -200,395 +668,322 @@ public class Tap13Parser implements Parser {
     }
 
     /**
-     * Internal parse routine.
-     * @param stream Input Stream
-     * @return Test Set
+     * Counts the elements of the lines of a TAP Stream, closing the line
+     * reader at the end.
+     *
+     * @param reader line reader
+     * @return summary of the TAP Stream
      */
-    protected TestSet parse(InputStream stream) {
-        state = new Memento();
-        Scanner scanner = null;
+    private TapSummary summarize(LineReader reader) {
+        final TapSummary summary = new TapSummary();
+        final SummaryContext counting = new SummaryContext(summary,
+                subtestsEnabled);
         try {
-            scanner = new Scanner(stream, this.encoding);
-            String line = null;
-            while (scanner.hasNextLine()) {
-                line = scanner.nextLine();
-                if (line != null && line.length() > 0) {
-                    this.parseLine(line);
-                }
+            CharSequence line = null;
+            while ((line = reader.readLine()) != null) {
+                counting.parseLine(line);
             }
-            this.onFinish();
-        } catch (Exception e) {
+            counting.finish();
+            return summary;
+        } catch (IOException e) {
+            throw new ParserException("Error reading TAP Stream: "
+                    + e.getMessage(), e);
+        } catch (NumberFormatException e) {
             throw new ParserException("Error parsing TAP Stream: "
                     + e.getMessage(), e);
         } finally {
-            if (scanner != null) {
-                scanner.close();
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to close TAP Stream", e);
             }
         }
+    }
 
-        return this.getTestSet();
+    /**
+     * Internal parse routine.
+     * @param stream Input Stream
+     * @return Test Set
+     */
+    protected TestSet parse(InputStream stream) {
+        return parse(open(stream), null);
     }
 
     /**
-     * Parse a TAP line.
+     * Internal parse routine. When a handler is given, the TAP elements are
+     * passed to it as they are parsed, instead of being collected into the
+     * test set.
      *
-     * @param tapLine TAP line
+     * @param stream Input Stream
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set
      */
-    public void parseLine(String tapLine) {
-        Matcher matcher = null;
-
-        // Comment
-        matcher = Constants.COMMENT_PATTERN.matcher(tapLine);
-        if (matcher.matches()) {
-            onComment(matcher.group(1));
-            return;
-        }
-
-        // Check if we already know the indentation level... if so, try to
-        // find
-        // out the indentation level of the current line in the TAP Stream.
-        // If the line indentation level is greater than the pre-defined
-        // one, than we know it is a) a META, b)
-        if (state.getBaseIndentationLevel() > -1) {
-            matcher = Constants.INDENTATION_PATTERN.matcher(tapLine);
-            if (matcher.matches()) {
-                int indentation = matcher.group(1).length();
-                state.setCurrentIndentationLevel(indentation);
-                if (indentation > state.getBaseIndentationLevel()) {
-                    // we are at the start of the meta tags, but we should
-                    // ignore
-                    // the --- or ...
-
-                    if (state.isCurrentlyInYaml()) {
-                        if (tapLine.equals(state.getCurrentYamlIndentation() + "...")) {
-                            state.setCurrentlyInYaml(false);
-                            return;
-                        }
-                        state.getDiagnosticBuffer().append(tapLine);
-                        state.getDiagnosticBuffer().append('\n');
-                        return; // NOPMD by Bruno on 12/01/11 07:47
-                    } else if (tapLine.trim().equals("---")) {
-                        state.setCurrentlyInYaml(true);
-                        state.setCurrentYamlIndentation(matcher.group(1));
-                        return;
-                    } else {
-                        // If we are in a different level, but it is not
-                        // YAML,
-                        // Then it must be a subtest! Yay!
-                        if (this.subtestsEnabled) {
-                            // Check if we have some diagnostic set in the buffer
-                            this.parseDiagnostics();
-                            if (state.getLastParsedElement() instanceof TestResult) {
-                                indentation = state.getBaseIndentationLevel();
-                                TestResult lastTestResult = (TestResult) state.getLastParsedElement();
-                                this.pushMemento();
-                                lastTestResult.setSubtest(state.getTestSet());
-                            } else if (state.getLastParsedElement() instanceof Plan) {
-                                indentation = state.getBaseIndentationLevel();
-                                Plan lastTestResult = (Plan) state.getLastParsedElement();
-                                this.pushMemento();
-                                lastTestResult.setSubtest(state.getTestSet());
-                            }
-                        }
-                    }
-                }
-
-                // indentation cannot be less then the base indentation
-                // level
-                this.checkIndentationLevel(indentation, tapLine);
-            }
-        }
-
-        // Check if we have some diagnostic set in the buffer
-        this.parseDiagnostics();
-        state.setLastLine(tapLine);
-
-        // Bail Out
-        matcher = Constants.BAIL_OUT_PATTERN.matcher(tapLine);
-        if (matcher.matches()) {
-            onBailOut(matcher.group(1), matcher.group(3));
-            return;
-        }
-
-        // Header
-        matcher = Constants.HEADER_PATTERN.matcher(tapLine);
-        if (matcher.matches()) {
-            onHeader(Integer.parseInt(matcher.group(1)), matcher.group(3));
-            return;
-        }
-
-        // Plan
-        matcher = Constants.PLAN_PATTERN.matcher(tapLine);
-        if (matcher.matches()) {
-            onPlan(Integer.parseInt(matcher.group(1)),
-                    Integer.parseInt(matcher.group(3)), matcher.group(6),
-                    matcher.group(8));
-            return;
-        }
-
-        // Test Result
-        matcher = Constants.TEST_RESULT_PATTERN.matcher(tapLine);
-        if (matcher.matches()) {
-            String testNumberText = matcher.group(2);
-            int testNumber = 0;
-            if (testNumberText != null && testNumberText.trim().equals("") == false) {
-                testNumber = Integer.parseInt(testNumberText);
-            } else {
-                if (state.getTestSet().getPlan() != null && state.isPlanBeforeTestResult() == false)
-                    return; // done testing mark
-                if (state.getTestSet().getPlan() !=null && state.getTestSet().getPlan().getLastTestNumber() == state.getTestSet().getTestResults().size())
-                    return; // done testing mark but plan before test result
-                testNumber = getTestSet().getNextTestNumber();
-            }
-            onTestResult(StatusValues.get(matcher.group(1)),
-                    testNumber, matcher.group(3),
-                    DirectiveValues.get(matcher.group(5)),
-                    matcher.group(6), matcher.group(8));
-            return;
-        }
+    protected void parse(InputStream stream, TapEventHandler handler) {
+        parse(open(stream), handler);
+    }
 
-        // Footer
-        matcher = Constants.FOOTER_PATTERN.matcher(tapLine);
-        if (matcher.matches()) {
-            onFooter(matcher.group(1), matcher.group(3));
-            return;
+    /**
+     * Opens a byte stream.
+     *
+     * @param stream TAP Stream
+     * @return line reader for the stream
+     */
+    private LineReader open(InputStream stream) {
+        try {
+            return LineReader.open(stream, this.encoding);
+        } catch (IllegalArgumentException iae) {
+            throw new ParserException("Invalid encoding: " + encoding, iae);
         }
-
-        // Any text. It should not be parsed by the consumer.
-        final Text text = new Text(tapLine);
-        getTestSet().getTapLines().add(text);
-        state.setLastParsedElement(text);
     }
 
-    /* -- Event handling -- */
-
     /**
-     * Handles comments.
+     * Maps a TAP file in memory.
      *
-     * @param text Comment
+     * @param fis TAP file stream
+     * @return line reader for the mapped file
      */
-    private void onComment(String text) {
-        final Comment comment = new Comment(text);
-        getTestSet().addComment(comment);
-
-        if (state.getLastParsedElement() instanceof TestResult) {
-            TestResult lastTestResult = (TestResult) state
-                    .getLastParsedElement();
-            lastTestResult.addComment(comment);
+    private LineReader openMapped(FileInputStream fis) {
+        try {
+            return LineReader.map(fis.getChannel(), this.encoding);
+        } catch (IllegalArgumentException iae) {
+            throw new ParserException("Invalid encoding: " + encoding, iae);
+        } catch (IOException ioe) {
+            throw new ParserException("Failed to map TAP file: "
+                    + ioe.getMessage(), ioe);
         }
     }
 
     /**
-     * Handles Bail Out!s.
+     * Parses the lines of a TAP Stream in a new context, closing the line
+     * reader at the end.
      *
-     * @param reason Reason
-     * @param comment Comment
+     * @param reader line reader
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set
+     * @return Test Set
      */
-    private void onBailOut(String reason, String comment) {
-        setIndentationLevelIfNotDefined(state.getLastLine());
-        final BailOut bailOut = new BailOut(reason);
-        if (comment != null && comment.trim().length() > 0) {
-            bailOut.setComment(new Comment(comment, true));
-        }
-        getTestSet().addBailOut(bailOut);
-        state.setLastParsedElement(getTestSet().getTapLines().get(
-                (getTestSet().getTapLines().size() - 1)));
+    private TestSet parse(LineReader reader, TapEventHandler handler) {
+        return parseWithResult(reader, handler).getTestSet();
     }
 
     /**
-     * Handles Headers.
+     * Parses the lines of a TAP Stream in a new context, until the end of the
+     * stream or the first failure when fail-fast is enabled, closing the line
+     * reader at the end.
      *
-     * @param version Version
-     * @param comment Comment
+     * @param reader line reader
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set
+     * @return result of the parsing
      */
-    private void onHeader(int version, String comment) {
-        if (getTestSet().getHeader() != null) {
-            throw new ParserException("Duplicated TAP Header found.");
-        }
-        if (!state.isFirstLine()) {
-            throw new ParserException(
-                    "Invalid position of TAP Header. It must be the first "
-                            + "element (apart of Comments) in the TAP Stream.");
-        }
-        setIndentationLevelIfNotDefined(state.getLastLine());
-        state.setCurrentIndentationLevel(state.getBaseIndentationLevel());
-        final Header header = new Header(version);
-        if (comment != null && comment.trim().length() > 0) {
-            header.setComment(new Comment(comment));
+    private TapParseResult parseWithResult(LineReader reader,
+            TapEventHandler handler) {
+        final ParseContext parsing = new ParseContext(this, handler);
+        try {
+            CharSequence line = null;
+            long offset = reader.getPosition();
+            while (!parsing.isStopped()
+                    && (line = reader.readLine()) != null) {
+                parsing.parseNextLine(line, offset);
+                offset = reader.getPosition();
+            }
+            final TapElement stoppedAt = parsing.getStoppedAt();
+            parsing.finish();
+            return new TapParseResult(parsing.getTestSet(), stoppedAt,
+                    parsing.getLineNumber(), offset, parsing.getProblems());
+        } catch (Exception e) {
+            parsing.abort();
+            throw new ParserException("Error parsing TAP Stream: "
+                    + e.getMessage(), e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to close TAP Stream", e);
+            }
         }
-        getTestSet().setHeader(header);
-        state.setFirstLine(false);
-        state.setLastParsedElement(header);
     }
 
     /**
-     * Handles Plans.
+     * Parses at most <code>maxLines</code> lines of a TAP Stream, and returns
+     * a checkpoint from which parsing can be resumed later, by this or another
+     * parser with the same options. The stream must be positioned at the
+     * offset of the checkpoint, or at the start of the TAP Stream when no
+     * checkpoint is given. The stream is not closed.
+     * <p>
+     * When the handler is <code>null</code>, the TAP elements are collected
+     * into the test set of the result once the end of the stream is reached.
+     * A checkpoint kept in memory carries the elements collected so far to the
+     * next slice; a persisted one only carries the parse state, see
+     * {@link TapCheckpoint}. Each call parses in its own context, so slices of
+     * different TAP Streams can be parsed at the same time.
      *
-     * @param begin Plan begin
-     * @param end Plan end
-     * @param skip Skip
-     * @param comment Comment
+     * @param stream Input Stream, positioned at the offset of the checkpoint
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set
+     * @param checkpoint checkpoint to resume from, or <code>null</code> to
+     *        start a new TAP Stream
+     * @param maxLines maximum number of lines to parse
+     * @return the result, with the checkpoint after the last line parsed, or
+     *         with the Test Set if the end of the stream was reached and
+     *         parsing finished
+     * @throws ParserException if the encoding is not UTF-8, US-ASCII or
+     *         ISO-8859-1, or if the stream cannot be read or parsed
+     * @since 4.2
      */
-    private void onPlan(int begin, int end, String skip, String comment) {
-        if (getTestSet().getPlan() != null) {
-            throw new ParserException("Duplicated TAP Plan found.");
+    public TapParseResult parse(InputStream stream, TapEventHandler handler,
+            TapCheckpoint checkpoint, int maxLines) {
+        final Charset charset;
+        try {
+            charset = Charset.forName(this.encoding);
+        } catch (IllegalArgumentException iae) {
+            throw new ParserException("Invalid encoding: " + encoding, iae);
         }
-        if (getTestSet().getTestResults().size() <= 0
-                && getTestSet().getBailOuts().size() <= 0) {
-            state.setPlanBeforeTestResult(true);
+        if (!ByteDecoder.isSupported(charset)) {
+            throw new ParserException("Checkpoints are not supported for "
+                    + "encoding: " + encoding);
         }
-        setIndentationLevelIfNotDefined(state.getLastLine());
-        Plan plan = new Plan(begin, end);
-
-        if (skip != null && skip.trim().length() > 0) {
-            plan.setSkip(new SkipPlan(skip));
+        final ByteLineReader reader = new ByteLineReader(stream, charset);
+        final ParseContext parsing;
+        if (checkpoint == null) {
+            parsing = new ParseContext(this, handler);
+        } else {
+            parsing = ParseContext.restore(this, handler, checkpoint);
+            reader.resume(checkpoint.getOffset(), checkpoint.isSkipLineFeed());
         }
-
-        if (comment != null && comment.trim().length() > 0) {
-            plan.setComment(new Comment(comment));
+        try {
+            long offset = reader.getPosition();
+            for (int i = 0; i < maxLines; i++) {
+                final CharSequence line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                parsing.parseNextLine(line, offset);
+                offset = reader.getPosition();
+            }
+            final TapElement stoppedAt = parsing.getStoppedAt();
+            if (!reader.hasMoreLines()) {
+                parsing.finish();
+                return new TapParseResult(parsing.getTestSet(), stoppedAt,
+                        parsing.getLineNumber(), offset,
+                        parsing.getProblems());
+            }
+            // past the \n of a \r\n line terminator, if any
+            offset = reader.getPosition();
+            return new TapParseResult(null, stoppedAt,
+                    parsing.getLineNumber(), offset, parsing.getProblems(),
+                    parsing.checkpoint(offset, reader.isSkipLineFeed()));
+        } catch (ParserException e) {
+            suspend(parsing);
+            throw e;
+        } catch (Exception e) {
+            suspend(parsing);
+            throw new ParserException("Error parsing TAP Stream: "
+                    + e.getMessage(), e);
         }
-        getTestSet().setPlan(plan);
-        state.setFirstLine(false);
-        state.setLastParsedElement(plan);
     }
 
     /**
-     * Handles Test Results.
+     * Closes the diagnostic being spilled by a slice that failed, keeping its
+     * file for the slice to be parsed again from the previous checkpoint.
      *
-     * @param status Test Status
-     * @param number Test Number
-     * @param description Description
-     * @param directive Directive
-     * @param reason Reason
-     * @param comment Comment
+     * @param parsing context of the slice
      */
-    private void onTestResult(StatusValues status, int number, String description, DirectiveValues directive,
-            String reason, String comment) {
-        setIndentationLevelIfNotDefined(state.getLastLine());
-        final TestResult testResult = new TestResult(status, number);
-        testResult.setDescription(description);
-
-        if (directive != null) {
-            testResult.setDirective(new Directive(directive, reason));
-        }
-
-        if (comment != null && comment.trim().length() > 0) {
-            testResult.addComment(new Comment(comment));
+    private static void suspend(ParseContext parsing) {
+        try {
+            parsing.suspend();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to close spilled diagnostic", e);
         }
-        getTestSet().addTestResult(testResult);
-        state.setFirstLine(false);
-        state.setLastParsedElement(testResult);
     }
 
     /**
-     * Handles Footer.
+     * Parses at most <code>maxLines</code> lines of a TAP file, starting at
+     * the offset of the checkpoint.
      *
-     * @param text Footer text
-     * @param comment Comment
+     * @param tapFile TAP file
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set
+     * @param checkpoint checkpoint to resume from, or <code>null</code> to
+     *        start at the beginning of the file
+     * @param maxLines maximum number of lines to parse
+     * @return the result, with the checkpoint after the last line parsed, or
+     *         with the Test Set if the end of the file was reached and
+     *         parsing finished
+     * @see #parse(InputStream, TapEventHandler, TapCheckpoint, int)
+     * @since 4.2
      */
-    private void onFooter(String text, String comment) {
-        final Footer footer = new Footer(text);
-        if (comment != null && comment.trim().length() > 0) {
-            footer.setComment(new Comment(comment, true));
+    public TapParseResult parseFile(File tapFile, TapEventHandler handler,
+            TapCheckpoint checkpoint, int maxLines) {
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(tapFile);
+            if (checkpoint != null) {
+                fis.getChannel().position(checkpoint.getOffset());
+            }
+            return this.parse(fis, handler, checkpoint, maxLines);
+        } catch (FileNotFoundException e) {
+            throw new ParserException("TAP file not found: " + tapFile, e);
+        } catch (IOException e) {
+            throw new ParserException("Error reading TAP file " + tapFile
+                    + ": " + e.getMessage(), e);
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to close file stream", e);
+                }
+            }
         }
-        getTestSet().setFooter(footer);
-        state.setFirstLine(false);
     }
 
     /**
-     * Called after the rest of the stream has been processed.
+     * Prepares the parser for a new TAP Stream, whose lines are then given to
+     * {@link #parseLine(String)}. The parser keeps the context of this stream
+     * until the next one starts, so streams parsed line by line must not be
+     * parsed at the same time by one parser. The other parse methods use a
+     * context of their own, and can be called from several threads.
+     *
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set
      */
-    private void onFinish() {
-        if (this.planRequired == true) {
-            if (getTestSet().getPlan() == null) {
-                throw new ParserException("Missing TAP Plan.");
-            }
-        }
-        parseDiagnostics();
-        while (!this.states.isEmpty()) {
-            this.popMemento();
-        }
+    protected void startParsing(TapEventHandler handler) {
+        this.context = new ParseContext(this, handler);
     }
 
-    /* -- Utility methods --*/
-
     /**
-     * <p>
-     * Checks if there is any diagnostic information on the diagnostic buffer.
-     * </p>
-     * <p>
-     * If so, tries to parse it using snakeyaml.
-     * </p>
+     * Completes the TAP Stream started with
+     * {@link #startParsing(TapEventHandler)}.
      */
-    private void parseDiagnostics() {
-        // If we found any meta, then process it with SnakeYAML
-        if (state.getDiagnosticBuffer().length() > 0) {
-
-            if (state.getLastParsedElement() == null) {
-                throw new ParserException("Found diagnostic information without a previous TAP element.");
-            }
-
-            try {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> metaIterable = (Map<String, Object>) new Yaml()
-                        .load(state.getDiagnosticBuffer().toString());
-                state.getLastParsedElement().setDiagnostic(metaIterable);
-            } catch (Exception ex) {
-                throw new ParserException("Error parsing YAML ["
-                        + state.getDiagnosticBuffer().toString() + "]: "
-                        + ex.getMessage(), ex);
-            }
-            this.state.getDiagnosticBuffer().setLength(0);
-        }
+    protected void finishParsing() {
+        context.finish();
     }
 
     /**
-     * Set the indentation level, only if not defined yet.
-     * @param tapLine TAP Line
+     * @return number of lines read from the TAP Stream parsed line by line
+     * @since 4.2
      */
-    private void setIndentationLevelIfNotDefined(String tapLine) {
-        if (state.getBaseIndentationLevel() < 0) {
-            state.setBaseIndentationLevel(this.getIndentationLevel(tapLine));
-        }
+    public long getLineNumber() {
+        return context == null ? 0 : context.getLineNumber();
     }
 
     /**
-     * Get the indentation level of a line.
+     * Parse a TAP line.
      *
-     * @param tapLine line.
-     * @return indentation level of a line.
+     * @param tapLine TAP line
      */
-    private int getIndentationLevel(String tapLine) {
-        int indentationLevel = 0;
-
-        final Matcher indentMatcher = Constants.INDENTATION_PATTERN.matcher(tapLine);
-
-        if (indentMatcher.matches()) {
-            String spaces = indentMatcher.group(1);
-            indentationLevel = spaces.length();
-        }
-        return indentationLevel;
+    public void parseLine(String tapLine) {
+        this.parseLine((CharSequence) tapLine);
     }
 
     /**
-     * Checks if the indentation is greater than the
-     * {@link #baseIndentationLevel}.
+     * Parse a TAP line. The line is not referenced after the call returns, so
+     * line readers may reuse its buffer.
      *
-     * @param indentation indentation level
-     * @param tapLine TAP Line
+     * @param tapLine TAP line
      */
-    private void checkIndentationLevel(int indentation, String tapLine) {
-        if (indentation < state.getBaseIndentationLevel()) {
-            if (!state.isCurrentlyInYaml()
-                    && this.states.isEmpty() == Boolean.FALSE) {
-                while (!this.states.isEmpty()
-                        && indentation < state.getBaseIndentationLevel()) {
-                    this.popMemento();
-                }
-            } else {
-                throw new ParserException("Invalid indentation. "
-                        + "Check your TAP Stream. Line: " + tapLine);
-            }
-        }
+    protected void parseLine(CharSequence tapLine) {
+        context.parseLine(tapLine);
     }
 }
@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Stack;
+
+/**
+ * State of a parser between two lines of a TAP Stream, from which parsing can
+ * be resumed later, possibly by another process. It holds the byte offset of
+ * the next line, the number of lines parsed, and an encoded copy of the
+ * parser state: the subtest mementos, with the partial YAMLish diagnostic.
+ * <p>
+ * The encoded state does not grow with the TAP Stream: it leaves out the
+ * elements already parsed. A checkpoint is persisted with
+ * {@link #toByteArray()} and read back with {@link #fromByteArray(byte[])},
+ * which only reads plain values, never classes named by the data. Until it is
+ * persisted, a checkpoint also keeps the live parser state, so that resuming
+ * it once in the same process goes on filling the same test sets. Resuming a
+ * persisted checkpoint without a handler collects the TAP Header, the TAP
+ * Plan and the elements parsed after the checkpoint; inside a subtest, the
+ * enclosing Test Results are collected again, holding the rest of their
+ * subtests.
+ *
+ * @see Tap13Parser#parse(java.io.InputStream, TapEventHandler, TapCheckpoint, int)
+ * @since 4.2
+ */
+public final class TapCheckpoint implements Serializable {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = -2717209516413870917L;
+
+    /**
+     * Version of the encoded checkpoints.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Offset in the stream of the next line.
+     */
+    private final long offset;
+
+    /**
+     * Number of lines parsed.
+     */
+    private final long lineNumber;
+
+    /**
+     * Whether a <code>\n</code> at the offset must be skipped.
+     */
+    private final boolean skipLineFeed;
+
+    /**
+     * Serialized parser state.
+     */
+    private final byte[] state;
+
+    /**
+     * Live mementos of the enclosing test sets, until resumed.
+     */
+    private transient Stack<Memento> liveStates;
+
+    /**
+     * Live memento of the current test set, until resumed.
+     */
+    private transient Memento liveState;
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param offset offset in the stream of the next line
+     * @param lineNumber number of lines parsed
+     * @param skipLineFeed whether a <code>\n</code> at the offset must be
+     *        skipped
+     * @param state encoded parser state
+     * @param liveStates live mementos of the enclosing test sets
+     * @param liveState live memento of the current test set
+     */
+    TapCheckpoint(long offset, long lineNumber, boolean skipLineFeed,
+            byte[] state, Stack<Memento> liveStates, Memento liveState) {
+        super();
+        this.offset = offset;
+        this.lineNumber = lineNumber;
+        this.skipLineFeed = skipLineFeed;
+        this.state = state;
+        this.liveStates = liveStates;
+        this.liveState = liveState;
+    }
+
+    /**
+     * @return offset in the stream, in bytes, of the next line to parse
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return number of lines parsed
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return whether a <code>\n</code> at the offset must be skipped
+     */
+    boolean isSkipLineFeed() {
+        return skipLineFeed;
+    }
+
+    /**
+     * @return encoded parser state
+     */
+    byte[] getState() {
+        return state;
+    }
+
+    /**
+     * @return live mementos of the enclosing test sets, or <code>null</code>
+     *         once resumed or if read back
+     */
+    Stack<Memento> getLiveStates() {
+        return liveStates;
+    }
+
+    /**
+     * @return live memento of the current test set, or <code>null</code>
+     *         once resumed or if read back
+     */
+    Memento getLiveState() {
+        return liveState;
+    }
+
+    /**
+     * Encodes the checkpoint, without its live state.
+     *
+     * @return the encoded checkpoint
+     */
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                state.length + 24);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeLong(offset);
+            out.writeLong(lineNumber);
+            out.writeBoolean(skipLineFeed);
+            out.writeInt(state.length);
+            out.write(state);
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a checkpoint encoded by {@link #toByteArray()}. Its parser state
+     * is only read when parsing resumes from it.
+     *
+     * @param bytes encoded checkpoint
+     * @return the checkpoint
+     * @throws ParserException if the bytes are not an encoded checkpoint
+     */
+    public static TapCheckpoint fromByteArray(byte[] bytes) {
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes));
+        try {
+            final byte version = in.readByte();
+            if (version != VERSION) {
+                throw new ParserException("Invalid TAP checkpoint: "
+                        + "unsupported version " + version);
+            }
+            final long offset = in.readLong();
+            final long lineNumber = in.readLong();
+            final boolean skipLineFeed = in.readBoolean();
+            final int length = in.readInt();
+            if (offset < 0 || lineNumber < 0 || length < 0
+                    || length != in.available()) {
+                throw new ParserException("Invalid TAP checkpoint: "
+                        + "corrupt header");
+            }
+            final byte[] state = new byte[length];
+            in.readFully(state);
+            return new TapCheckpoint(offset, lineNumber, skipLineFeed, state,
+                    null, null);
+        } catch (IOException e) {
+            throw new ParserException("Invalid TAP checkpoint: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Forgets the live state, once resumed, so that resuming again starts from
+     * the encoded state.
+     */
+    void releaseLiveState() {
+        this.liveStates = null;
+        this.liveState = null;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import org.tap4j.model.BailOut;
+import org.tap4j.model.Comment;
+import org.tap4j.model.Footer;
+import org.tap4j.model.Header;
+import org.tap4j.model.Plan;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.Text;
+
+/**
+ * Receives the TAP elements as they are parsed, in the order they appear in
+ * the TAP Stream. Elements passed to a handler are not added to any Test Set,
+ * so the memory used by the parser does not grow with the stream.
+ *
+ * <p>Diagnostics are parsed when the next element begins, so
+ * {@link #onDiagnostic(TapElement)} is called after the element and before
+ * the next one. Comments are still added to the last Test Result.</p>
+ *
+ * @see DefaultTapEventHandler
+ * @since 4.2
+ */
+public interface TapEventHandler {
+
+    /**
+     * @param header TAP Header
+     */
+    void onHeader(Header header);
+
+    /**
+     * @param plan TAP Plan
+     */
+    void onPlan(Plan plan);
+
+    /**
+     * @param testResult Test Result
+     */
+    void onTestResult(TestResult testResult);
+
+    /**
+     * @param bailOut Bail Out!
+     */
+    void onBailOut(BailOut bailOut);
+
+    /**
+     * @param comment Comment
+     */
+    void onComment(Comment comment);
+
+    /**
+     * @param text Text that is not a TAP element
+     */
+    void onText(Text text);
+
+    /**
+     * @param footer TAP Footer
+     */
+    void onFooter(Footer footer);
+
+    /**
+     * Called once the YAMLish diagnostic of an element has been parsed.
+     *
+     * @param element TAP element, with its diagnostic set
+     */
+    void onDiagnostic(TapElement element);
+
+    /**
+     * Called when a subtest begins. The following elements, until
+     * {@link #onSubtestEnd(TapElement)}, belong to the subtest.
+     *
+     * @param parent Test Result or Plan that owns the subtest
+     */
+    void onSubtestStart(TapElement parent);
+
+    /**
+     * Called when a subtest ends.
+     *
+     * @param parent Test Result or Plan that owns the subtest
+     */
+    void onSubtestEnd(TapElement parent);
+
+}
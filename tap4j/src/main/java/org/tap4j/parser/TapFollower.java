@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Follows a TAP file while it is written, like <code>tail -f</code>. Each
+ * call to {@link #poll()} parses only the complete lines appended since the
+ * previous call, and passes the new TAP elements to a handler. The file
+ * offset and the parser state are kept between calls.
+ *
+ * <pre>
+ * TapFollower follower = new TapFollower(file, handler);
+ * while (running) {
+ *     follower.poll();
+ *     Thread.sleep(1000);
+ * }
+ * follower.finish();
+ * </pre>
+ *
+ * <p>If the file is truncated, it is followed again from the start, with a
+ * new parser state. Only UTF-8, US-ASCII and ISO-8859-1 files can be
+ * followed.</p>
+ *
+ * @since 4.2
+ */
+public class TapFollower implements Closeable {
+
+    /**
+     * TAP file.
+     */
+    private final File file;
+
+    /**
+     * Parser used to parse each line.
+     */
+    private final Tap13Parser parser;
+
+    /**
+     * Context in which each line is parsed.
+     */
+    private ParseContext parsing;
+
+    /**
+     * Handler of the TAP elements.
+     */
+    private final TapEventHandler handler;
+
+    /**
+     * Charset of the file.
+     */
+    private final Charset charset;
+
+    /**
+     * File stream, or <code>null</code> until the file exists.
+     */
+    private FileInputStream stream = null;
+
+    /**
+     * Lines of the file.
+     */
+    private ByteLineReader reader = null;
+
+    /**
+     * Constructor with a UTF-8 TAP file.
+     *
+     * @param file TAP file
+     * @param handler handler of the TAP elements
+     */
+    public TapFollower(File file, TapEventHandler handler) {
+        this(file, new Tap13Parser(), handler);
+    }
+
+    /**
+     * Constructor with a TAP file and a parser. The parser can be shared with
+     * other followers.
+     *
+     * @param file TAP file
+     * @param parser parser, defining the encoding of the file
+     * @param handler handler of the TAP elements
+     */
+    public TapFollower(File file, Tap13Parser parser, TapEventHandler handler) {
+        super();
+        this.file = file;
+        this.parser = parser;
+        this.handler = handler;
+        try {
+            this.charset = Charset.forName(parser.getEncoding());
+        } catch (IllegalArgumentException iae) {
+            throw new ParserException("Invalid encoding: "
+                    + parser.getEncoding(), iae);
+        }
+        if (!ByteDecoder.isSupported(charset)) {
+            throw new ParserException("Encoding not supported when following "
+                    + "a TAP file: " + parser.getEncoding());
+        }
+        this.parsing = new ParseContext(parser, handler);
+    }
+
+    /**
+     * Parses the complete lines appended to the file since the last poll.
+     * Nothing is parsed while the file does not exist.
+     *
+     * @return number of lines parsed
+     * @throws ParserException if the file cannot be read or is not valid TAP
+     */
+    public int poll() {
+        try {
+            if (reader != null && file.length() < reader.getPosition()) {
+                close();
+                parsing.abort();
+                parsing = new ParseContext(parser, handler);
+            }
+            if (reader == null) {
+                if (!file.isFile()) {
+                    return 0;
+                }
+                stream = new FileInputStream(file);
+                reader = new ByteLineReader(stream, charset);
+                reader.setCompleteLinesOnly(true);
+            }
+            int lines = 0;
+            CharSequence line = null;
+            while ((line = reader.readLine()) != null) {
+                parsing.parseNextLine(line);
+                lines++;
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new ParserException("Error reading TAP file " + file + ": "
+                    + e.getMessage(), e);
+        } catch (ParserException e) {
+            parsing.abort();
+            throw e;
+        } catch (RuntimeException e) {
+            parsing.abort();
+            throw new ParserException("Error parsing TAP file " + file + ": "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the rest of the file, including a last line without line
+     * terminator, and completes the TAP Stream, validating its plan. The file
+     * is then closed.
+     *
+     * @throws ParserException if the file cannot be read or is not valid TAP
+     */
+    public void finish() {
+        try {
+            poll();
+            if (reader != null) {
+                reader.setCompleteLinesOnly(false);
+                poll();
+            }
+            parsing.finish();
+        } catch (ParserException e) {
+            parsing.abort();
+            throw e;
+        } catch (RuntimeException e) {
+            parsing.abort();
+            throw new ParserException("Error parsing TAP file " + file + ": "
+                    + e.getMessage(), e);
+        } finally {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new ParserException("Error closing TAP file " + file
+                        + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return offset in the file of the first byte not parsed yet
+     */
+    public long getOffset() {
+        return reader == null ? 0 : reader.getPosition();
+    }
+
+    /**
+     * Closes the file, without completing the TAP Stream. A YAMLish block
+     * spilled to disk and not completed yet is deleted.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void close() throws IOException {
+        reader = null;
+        parsing.abort();
+        if (stream != null) {
+            final FileInputStream closed = stream;
+            stream = null;
+            closed.close();
+        }
+    }
+
+}
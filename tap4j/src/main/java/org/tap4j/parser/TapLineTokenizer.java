@@ -0,0 +1,637 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Hand-written tokenizer for TAP lines. It looks at the first non-blank
+ * character of a line to decide which element it may be, and then scans that
+ * element in a single pass, without regular expressions.
+ *
+ * <p>The grammar accepted is exactly the one described by the regular
+ * expressions in {@link Constants}, including their corner cases (e.g. a
+ * directive without a reason is read as a comment).</p>
+ *
+ * <p>Instances are reused for every line and are not thread-safe.</p>
+ *
+ * @since 4.2
+ */
+final class TapLineTokenizer {
+
+    /**
+     * Kinds of TAP lines.
+     */
+    enum LineType {
+        /**
+         * Any text that is not a TAP element.
+         */
+        TEXT,
+        /**
+         * Comment line.
+         */
+        COMMENT,
+        /**
+         * Bail Out! line.
+         */
+        BAIL_OUT,
+        /**
+         * TAP Header.
+         */
+        HEADER,
+        /**
+         * TAP Plan.
+         */
+        PLAN,
+        /**
+         * Test Result.
+         */
+        TEST_RESULT,
+        /**
+         * TAP Footer.
+         */
+        FOOTER
+    }
+
+    /**
+     * Bail Out! token.
+     */
+    private static final String BAIL_OUT = "Bail out!";
+
+    /**
+     * Current line.
+     */
+    private CharSequence line;
+
+    /**
+     * Length of the current line.
+     */
+    private int length;
+
+    /**
+     * Number of leading white spaces of the current line.
+     */
+    private int indentation;
+
+    /**
+     * Type of the current line.
+     */
+    private LineType type;
+
+    /**
+     * Comment line text or inline comment.
+     */
+    private String comment;
+
+    /**
+     * Test Result description, Bail Out! reason or Footer text.
+     */
+    private String text;
+
+    /**
+     * Test Result status.
+     */
+    private StatusValues status;
+
+    /**
+     * Test number, or -1 when the Test Result has no number.
+     */
+    private int testNumber;
+
+    /**
+     * Header version.
+     */
+    private int version;
+
+    /**
+     * Plan initial test number.
+     */
+    private int initialTestNumber;
+
+    /**
+     * Plan last test number.
+     */
+    private int lastTestNumber;
+
+    /**
+     * Test Result directive.
+     */
+    private DirectiveValues directive;
+
+    /**
+     * Directive reason or Plan skip reason.
+     */
+    private String reason;
+
+    /**
+     * Whether descriptions, reasons and comments are extracted.
+     */
+    private final boolean textsEnabled;
+
+    /**
+     * Default constructor.
+     */
+    TapLineTokenizer() {
+        this(true);
+    }
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param textsEnabled whether descriptions, reasons and comments are
+     *        extracted, or only the values needed to count the elements
+     */
+    TapLineTokenizer(boolean textsEnabled) {
+        super();
+        this.textsEnabled = textsEnabled;
+    }
+
+    /**
+     * Sets the line to be tokenized and computes its indentation.
+     *
+     * @param tapLine TAP line
+     * @return indentation of the line
+     */
+    int reset(CharSequence tapLine) {
+        this.line = tapLine;
+        this.length = tapLine.length();
+        this.indentation = skipWhitespaces(0);
+        this.type = null;
+        this.comment = null;
+        this.text = null;
+        this.status = null;
+        this.testNumber = -1;
+        this.directive = null;
+        this.reason = null;
+        return this.indentation;
+    }
+
+    /**
+     * @return the indentation of the current line
+     */
+    int getIndentation() {
+        return indentation;
+    }
+
+    /**
+     * @return <code>true</code> if the current line is a comment line
+     */
+    boolean isComment() {
+        return indentation < length && line.charAt(indentation) == '#';
+    }
+
+    /**
+     * @return <code>true</code> if the current line, once trimmed, is
+     *         <code>---</code>
+     */
+    boolean isYamlStart() {
+        int start = 0;
+        while (start < length && line.charAt(start) <= ' ') {
+            start++;
+        }
+        if (!regionMatches(start, "---")) {
+            return false;
+        }
+        for (int i = start + 3; i < length; i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param yamlIndentation indentation of the YAMLish block
+     * @return <code>true</code> if the current line is the indentation
+     *         followed by <code>...</code>
+     */
+    boolean isYamlEnd(String yamlIndentation) {
+        final int size = yamlIndentation.length();
+        return length == size + 3 && regionMatches(0, yamlIndentation)
+                && regionMatches(size, "...");
+    }
+
+    /**
+     * @param yamlIndentation indentation of the YAMLish block
+     * @return <code>true</code> if the current line is made of that many
+     *         white spaces followed by <code>...</code>
+     */
+    boolean isYamlEnd(int yamlIndentation) {
+        return length == yamlIndentation + 3 && indentation == yamlIndentation
+                && regionMatches(yamlIndentation, "...");
+    }
+
+    /**
+     * Classifies the current line, scanning the fields of its element.
+     *
+     * @return line type
+     */
+    LineType tokenize() {
+        type = LineType.TEXT;
+        if (indentation >= length) {
+            return type;
+        }
+        final char c = line.charAt(indentation);
+        if (c == '#') {
+            comment = substring(skipWhitespaces(indentation + 1), length);
+            type = LineType.COMMENT;
+        } else if (c == 'B') {
+            scanBailOut();
+        } else if (c == 'T') {
+            if (!scanHeader()) {
+                scanFooter();
+            }
+        } else if (c >= '0' && c <= '9') {
+            scanPlan();
+        } else if (c == 'o' || c == 'n') {
+            scanTestResult();
+        }
+        return type;
+    }
+
+    /**
+     * Scans <code>Bail out! reason # comment</code>.
+     */
+    private void scanBailOut() {
+        if (!regionMatches(indentation, BAIL_OUT)) {
+            return;
+        }
+        final int start = skipWhitespaces(indentation + BAIL_OUT.length());
+        final int hash = indexOfHash(start);
+        final int end = hash < 0 ? length : hash;
+        if (end > start) {
+            text = substring(start, end);
+        }
+        scanInlineComment(hash);
+        type = LineType.BAIL_OUT;
+    }
+
+    /**
+     * Scans <code>TAP version 13 # comment</code>.
+     *
+     * @return <code>true</code> if the line is a TAP Header
+     */
+    private boolean scanHeader() {
+        if (!regionMatches(indentation, "TAP")) {
+            return false;
+        }
+        final int start = skipWhitespaces(indentation + 3);
+        if (!regionMatches(start, "version")) {
+            return false;
+        }
+        final int digits = skipWhitespaces(start + 7);
+        final int end = skipDigits(digits);
+        if (end == digits) {
+            return false;
+        }
+        final int next = skipWhitespaces(end);
+        if (next < length && line.charAt(next) != '#') {
+            return false;
+        }
+        version = parseInt(digits, end);
+        scanInlineComment(next < length ? next : -1);
+        type = LineType.HEADER;
+        return true;
+    }
+
+    /**
+     * Scans <code>TAP text # comment</code>.
+     */
+    private void scanFooter() {
+        if (!regionMatches(indentation, "TAP")) {
+            return;
+        }
+        final int start = skipWhitespaces(indentation + 3);
+        final int hash = indexOfHash(start);
+        text = substring(start, hash < 0 ? length : hash);
+        scanInlineComment(hash);
+        type = LineType.FOOTER;
+    }
+
+    /**
+     * Scans <code>1..N # skip reason # comment</code>.
+     */
+    private void scanPlan() {
+        final int beginEnd = skipDigits(indentation);
+        if (beginEnd + 2 > length || line.charAt(beginEnd) != '.'
+                || line.charAt(beginEnd + 1) != '.') {
+            return;
+        }
+        final int lastEnd = skipDigits(beginEnd + 2);
+        if (lastEnd == beginEnd + 2) {
+            return;
+        }
+        final int next = skipWhitespaces(lastEnd);
+        if (next < length && line.charAt(next) != '#') {
+            return;
+        }
+        initialTestNumber = parseInt(indentation, beginEnd);
+        lastTestNumber = parseInt(beginEnd + 2, lastEnd);
+        if (next < length) {
+            scanInlineComment(scanDirective(next, false));
+        }
+        type = LineType.PLAN;
+    }
+
+    /**
+     * Scans <code>ok 1 description # TODO reason # comment</code>.
+     */
+    private void scanTestResult() {
+        int start;
+        if (regionMatches(indentation, "ok")) {
+            status = StatusValues.OK;
+            start = indentation + 2;
+        } else if (regionMatches(indentation, "not ok")) {
+            status = StatusValues.NOT_OK;
+            start = indentation + 6;
+        } else {
+            return;
+        }
+        start = skipWhitespaces(start);
+        final int numberEnd = skipDigits(start);
+        if (numberEnd > start) {
+            testNumber = parseInt(start, numberEnd);
+        }
+        start = skipWhitespaces(numberEnd);
+        final int hash = indexOfHash(start);
+        text = substring(start, hash < 0 ? length : hash);
+        if (hash >= 0) {
+            scanInlineComment(scanDirective(hash, true));
+        }
+        type = LineType.TEST_RESULT;
+    }
+
+    /**
+     * Scans an optional <code># SKIP reason</code> (or <code>TODO</code>,
+     * when allowed) starting at a <code>#</code>. A directive is recognized
+     * only when followed by a reason, otherwise the whole text is a comment.
+     *
+     * @param hash position of the <code>#</code>
+     * @param allowTodo whether <code>TODO</code> is a valid directive
+     * @return position of the <code>#</code> of the inline comment, or
+     *         <code>-1</code> if there is none
+     */
+    private int scanDirective(int hash, boolean allowTodo) {
+        final int start = skipWhitespaces(hash + 1);
+        DirectiveValues value = null;
+        if (regionMatches(start, "SKIP") || regionMatches(start, "skip")) {
+            value = DirectiveValues.SKIP;
+        } else if (allowTodo
+                && (regionMatches(start, "TODO") || regionMatches(start, "todo"))) {
+            value = DirectiveValues.TODO;
+        }
+        if (value == null) {
+            return hash;
+        }
+        final int reasonStart = start + 4;
+        final int next = indexOfHash(reasonStart);
+        final int reasonEnd = next < 0 ? length : next;
+        if (reasonEnd == reasonStart) {
+            return hash;
+        }
+        final int textStart = skipWhitespaces(reasonStart);
+        // a reason made only of white spaces keeps its last character
+        reason = substring(textStart < reasonEnd ? textStart : reasonEnd - 1,
+                reasonEnd);
+        directive = value;
+        return next;
+    }
+
+    /**
+     * Scans an optional inline comment.
+     *
+     * @param hash position of the <code>#</code>, or <code>-1</code>
+     */
+    private void scanInlineComment(int hash) {
+        if (hash >= 0) {
+            comment = substring(skipWhitespaces(hash + 1), length);
+        }
+    }
+
+    /* -- Getters -- */
+
+    /**
+     * @return line type, as returned by {@link #tokenize()}
+     */
+    LineType getType() {
+        return type;
+    }
+
+    /**
+     * @return comment line text or inline comment, may be <code>null</code>
+     */
+    String getComment() {
+        return comment;
+    }
+
+    /**
+     * @return Test Result description
+     */
+    String getDescription() {
+        return text;
+    }
+
+    /**
+     * @return Bail Out! reason, may be <code>null</code>
+     */
+    String getBailOutReason() {
+        return text;
+    }
+
+    /**
+     * @return Footer text
+     */
+    String getFooterText() {
+        return text;
+    }
+
+    /**
+     * @return Test Result status
+     */
+    StatusValues getStatus() {
+        return status;
+    }
+
+    /**
+     * @return test number, or <code>-1</code> if the Test Result has none
+     */
+    int getTestNumber() {
+        return testNumber;
+    }
+
+    /**
+     * @return Header version
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Plan initial test number
+     */
+    int getInitialTestNumber() {
+        return initialTestNumber;
+    }
+
+    /**
+     * @return Plan last test number
+     */
+    int getLastTestNumber() {
+        return lastTestNumber;
+    }
+
+    /**
+     * @return Test Result directive, may be <code>null</code>
+     */
+    DirectiveValues getDirective() {
+        return directive;
+    }
+
+    /**
+     * @return directive reason or Plan skip reason, may be <code>null</code>
+     */
+    String getReason() {
+        return reason;
+    }
+
+    /* -- Utility methods -- */
+
+    /**
+     * Same as <code>\s</code> in {@link java.util.regex.Pattern}.
+     *
+     * @param c character
+     * @return <code>true</code> if c is a white space
+     */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+                || c == '\f' || c == '\r';
+    }
+
+    /**
+     * @param text text
+     * @return number of leading white spaces of the text
+     */
+    static int indentationOf(CharSequence text) {
+        final int size = text.length();
+        int i = 0;
+        while (i < size && isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param from start position
+     * @return position of the first non white space character
+     */
+    private int skipWhitespaces(int from) {
+        int i = from;
+        while (i < length && isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param from start position
+     * @return position of the first non digit character
+     */
+    private int skipDigits(int from) {
+        int i = from;
+        while (i < length) {
+            final char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param from start position
+     * @return position of the next <code>#</code>, or <code>-1</code>
+     */
+    private int indexOfHash(int from) {
+        for (int i = from; i < length; i++) {
+            if (line.charAt(i) == '#') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param offset position in the line
+     * @param token expected token
+     * @return <code>true</code> if the token is found at the position
+     */
+    private boolean regionMatches(int offset, String token) {
+        final int size = token.length();
+        if (offset + size > length) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (line.charAt(offset + i) != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a sequence of digits, leading zeros included, without creating
+     * a String, even when texts are disabled.
+     *
+     * @param start start position
+     * @param end end position
+     * @return the int value
+     * @throws NumberFormatException if the value does not fit in an int
+     */
+    private int parseInt(int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("For input string: \""
+                        + line.subSequence(start, end) + "\"");
+            }
+        }
+        return (int) value;
+    }
+
+    /**
+     * @param start start position
+     * @param end end position
+     * @return text between the positions
+     */
+    private String substring(int start, int end) {
+        if (!textsEnabled) {
+            return null;
+        }
+        return line.subSequence(start, end).toString();
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.util.List;
+
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestSet;
+
+/**
+ * Result of parsing a TAP Stream, telling whether and where parsing stopped
+ * at a failure when fail-fast is enabled, and the problems found in lenient
+ * mode. When a slice of the TAP Stream is parsed, it also holds the
+ * checkpoint from which parsing resumes.
+ *
+ * @see Tap13Parser#parse(java.io.InputStream, TapEventHandler, TapCheckpoint, int)
+ * @see Tap13Parser#setFailFastEnabled(boolean)
+ * @see Tap13Parser#setLenient(boolean)
+ * @since 4.2
+ */
+public final class TapParseResult {
+
+    /**
+     * Test Set parsed.
+     */
+    private final TestSet testSet;
+
+    /**
+     * Failure at which parsing stopped, or <code>null</code>.
+     */
+    private final TapElement stoppedAt;
+
+    /**
+     * Number of lines parsed.
+     */
+    private final long lineNumber;
+
+    /**
+     * Position after the last line parsed.
+     */
+    private final long offset;
+
+    /**
+     * Problems found in lenient mode.
+     */
+    private final List<TapProblem> problems;
+
+    /**
+     * Checkpoint after the last line parsed, or <code>null</code>.
+     */
+    private final TapCheckpoint checkpoint;
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param testSet Test Set parsed
+     * @param stoppedAt failure at which parsing stopped, or <code>null</code>
+     * @param lineNumber number of lines parsed
+     * @param offset position after the last line parsed
+     * @param problems problems found in lenient mode
+     */
+    TapParseResult(TestSet testSet, TapElement stoppedAt, long lineNumber,
+            long offset, List<TapProblem> problems) {
+        this(testSet, stoppedAt, lineNumber, offset, problems, null);
+    }
+
+    /**
+     * Constructor with parameters, for a slice of a TAP Stream.
+     *
+     * @param testSet Test Set parsed, or <code>null</code> before the end of
+     *        the TAP Stream
+     * @param stoppedAt failure at which parsing stopped, or <code>null</code>
+     * @param lineNumber number of lines parsed
+     * @param offset position after the last line parsed
+     * @param problems problems found in lenient mode
+     * @param checkpoint checkpoint after the last line parsed, or
+     *        <code>null</code> at the end of the TAP Stream
+     */
+    TapParseResult(TestSet testSet, TapElement stoppedAt, long lineNumber,
+            long offset, List<TapProblem> problems, TapCheckpoint checkpoint) {
+        super();
+        this.testSet = testSet;
+        this.stoppedAt = stoppedAt;
+        this.lineNumber = lineNumber;
+        this.offset = offset;
+        this.problems = problems;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return the Test Set parsed, partial if parsing stopped, or
+     *         <code>null</code> if a slice ended before the end of the TAP
+     *         Stream
+     */
+    public TestSet getTestSet() {
+        return testSet;
+    }
+
+    /**
+     * @return the checkpoint from which parsing resumes, or <code>null</code>
+     *         if the end of the TAP Stream was reached
+     */
+    public TapCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @return <code>true</code> if parsing stopped before the end of the
+     *         TAP Stream
+     */
+    public boolean isStopped() {
+        return stoppedAt != null;
+    }
+
+    /**
+     * @return the <code>not ok</code> Test Result or Bail Out! at which
+     *         parsing stopped, or <code>null</code>
+     */
+    public TapElement getStoppedAt() {
+        return stoppedAt;
+    }
+
+    /**
+     * @return number of lines parsed, the line where parsing stopped being the
+     *         last one
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return position after the last line parsed, in bytes for byte streams
+     *         and files, or in characters for character streams
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return problems found in lenient mode, in the order found, or an empty
+     *         list
+     */
+    public List<TapProblem> getProblems() {
+        return problems;
+    }
+
+    /**
+     * @return <code>true</code> if problems were found in lenient mode
+     */
+    public boolean hasProblems() {
+        return !problems.isEmpty();
+    }
+
+}
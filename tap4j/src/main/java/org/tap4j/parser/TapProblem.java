@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.Serializable;
+
+/**
+ * Problem found in a TAP Stream parsed in lenient mode, where it does not stop
+ * the parsing.
+ *
+ * @see Tap13Parser#setLenient(boolean)
+ * @since 4.2
+ */
+public final class TapProblem implements Serializable {
+
+    /**
+     * Serial Version UID.
+     */
+    private static final long serialVersionUID = 2512846312874566012L;
+
+    /**
+     * Number of the line, starting at 1.
+     */
+    private final long lineNumber;
+
+    /**
+     * Offset of the line.
+     */
+    private final long offset;
+
+    /**
+     * Description of the problem.
+     */
+    private final String message;
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param lineNumber number of the line, starting at 1
+     * @param offset offset of the line, or <code>-1</code> if unknown
+     * @param message description of the problem
+     */
+    TapProblem(long lineNumber, long offset, String message) {
+        super();
+        this.lineNumber = lineNumber;
+        this.offset = offset;
+        this.message = message;
+    }
+
+    /**
+     * @return number of the line, starting at 1
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return offset of the line, in bytes for byte streams and files, or in
+     *         characters for character streams, or <code>-1</code> if unknown
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return description of the problem
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Line " + lineNumber + ": " + message;
+    }
+
+}
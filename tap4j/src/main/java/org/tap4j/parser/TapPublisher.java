@@ -0,0 +1,423 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.tap4j.model.TapElement;
+
+/**
+ * Publishes the TAP elements of a TAP Stream to a {@link TapSubscriber}, with
+ * backpressure: the stream is only read as far as needed for the elements the
+ * subscriber requested. Elements are read with a {@link TapReader}, so
+ * elements of subtests are in the subtest of their Test Result or Plan.
+ *
+ * <p>Its contract is the one of
+ * <code>java.util.concurrent.Flow.Publisher&lt;TapElement&gt;</code>. The TAP
+ * Stream can be subscribed only once. Without an executor, elements are read
+ * and sent by the thread requesting them; with an executor, by a task of the
+ * executor, one at a time.</p>
+ *
+ * @since 4.2
+ */
+public class TapPublisher {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TapPublisher.class
+            .getCanonicalName());
+
+    /**
+     * TAP file, or <code>null</code> for a stream.
+     */
+    private final File file;
+
+    /**
+     * TAP Stream, or <code>null</code> for a file.
+     */
+    private final InputStream stream;
+
+    /**
+     * Parser used to parse each line.
+     */
+    private final Tap13Parser parser;
+
+    /**
+     * Executor sending the elements, or <code>null</code>.
+     */
+    private final Executor executor;
+
+    /**
+     * Whether the TAP Stream was subscribed.
+     */
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * Constructor with an UTF-8 input stream, whose elements are sent by the
+     * thread requesting them.
+     *
+     * @param stream TAP Stream
+     */
+    public TapPublisher(InputStream stream) {
+        this(stream, new Tap13Parser(), null);
+    }
+
+    /**
+     * Constructor with an input stream.
+     *
+     * @param stream TAP Stream
+     * @param parser parser, defining the encoding of the stream
+     * @param executor executor sending the elements, or <code>null</code> to
+     *        send them from the thread requesting them
+     */
+    public TapPublisher(InputStream stream, Tap13Parser parser,
+            Executor executor) {
+        this(null, stream, parser, executor);
+    }
+
+    /**
+     * Constructor with a channel.
+     *
+     * @param channel TAP Stream
+     * @param parser parser, defining the encoding of the stream
+     * @param executor executor sending the elements, or <code>null</code> to
+     *        send them from the thread requesting them
+     */
+    public TapPublisher(ReadableByteChannel channel, Tap13Parser parser,
+            Executor executor) {
+        this(null, Channels.newInputStream(channel), parser, executor);
+    }
+
+    /**
+     * Constructor with a TAP file, opened once subscribed.
+     *
+     * @param file TAP file
+     * @param parser parser, defining the encoding of the file
+     * @param executor executor sending the elements, or <code>null</code> to
+     *        send them from the thread requesting them
+     */
+    public TapPublisher(File file, Tap13Parser parser, Executor executor) {
+        this(file, null, parser, executor);
+    }
+
+    /**
+     * Constructor with parameters.
+     *
+     * @param file TAP file, or <code>null</code>
+     * @param stream TAP Stream, or <code>null</code>
+     * @param parser parser
+     * @param executor executor, or <code>null</code>
+     */
+    private TapPublisher(File file, InputStream stream, Tap13Parser parser,
+            Executor executor) {
+        super();
+        this.file = file;
+        this.stream = stream;
+        this.parser = parser;
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribes to the TAP elements. A second subscriber receives an
+     * {@link IllegalStateException}.
+     *
+     * @param subscriber subscriber
+     */
+    public void subscribe(TapSubscriber subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new TapSubscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                    "TAP Stream already subscribed"));
+            return;
+        }
+        subscriber.onSubscribe(new Emission(subscriber));
+    }
+
+    /**
+     * Subscription sending the elements of the TAP Stream. Signals are sent
+     * by one drain loop at a time: requests made while it runs, including
+     * from {@link TapSubscriber#onNext(TapElement)}, are handled by the
+     * running loop.
+     */
+    private final class Emission implements TapSubscription, Runnable {
+
+        /**
+         * Subscriber.
+         */
+        private final TapSubscriber subscriber;
+
+        /**
+         * Number of elements requested and not sent yet.
+         */
+        private final AtomicLong demand = new AtomicLong();
+
+        /**
+         * Number of times the drain loop was scheduled.
+         */
+        private final AtomicInteger scheduled = new AtomicInteger();
+
+        /**
+         * Whether the subscription was cancelled.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Invalid request, to send to the subscriber.
+         */
+        private volatile Throwable invalidRequest = null;
+
+        /**
+         * Whether a terminal signal was sent, or the subscription cancelled.
+         */
+        private boolean done = false;
+
+        /**
+         * Element reader, or <code>null</code> until the first request.
+         */
+        private TapReader reader = null;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param subscriber subscriber
+         */
+        Emission(TapSubscriber subscriber) {
+            super();
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException(
+                        "Non-positive request: " + n);
+            } else {
+                for (;;) {
+                    final long current = demand.get();
+                    long next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                    if (demand.compareAndSet(current, next)) {
+                        break;
+                    }
+                }
+            }
+            schedule();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        /**
+         * Runs the drain loop, unless it is already running.
+         */
+        private void schedule() {
+            if (scheduled.getAndIncrement() == 0) {
+                if (executor == null) {
+                    run();
+                } else {
+                    executor.execute(this);
+                }
+            }
+        }
+
+        /**
+         * Sends the requested elements, then the terminal signal.
+         */
+        public void run() {
+            int missed = 1;
+            for (;;) {
+                if (done) {
+                    return;
+                }
+                if (cancelled) {
+                    terminate();
+                    return;
+                }
+                if (invalidRequest != null) {
+                    terminate();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                final long requested = demand.get();
+                long sent = 0;
+                while (sent != requested) {
+                    if (cancelled) {
+                        terminate();
+                        return;
+                    }
+                    final TapElement element = nextElement();
+                    if (element == null) {
+                        return;
+                    }
+                    try {
+                        subscriber.onNext(element);
+                    } catch (RuntimeException e) {
+                        cancelled = true;
+                        terminate();
+                        throw e;
+                    }
+                    sent++;
+                }
+                if (sent != 0 && !cancelled && completeIfExhausted()) {
+                    return;
+                }
+                if (sent != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-sent);
+                }
+                missed = scheduled.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Sends the terminal signal once the demand is used up, if the stream has
+         * no more elements, rather than waiting for a request that may never
+         * come.
+         *
+         * @return whether the terminal signal was sent
+         */
+        private boolean completeIfExhausted() {
+            try {
+                if (reader.hasNext()) {
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                terminate();
+                subscriber.onError(e);
+                return true;
+            }
+            terminate();
+            subscriber.onComplete();
+            return true;
+        }
+
+        /**
+         * Reads the next element, opening the TAP Stream on the first call.
+         * At the end of the stream, or if it cannot be read, the terminal
+         * signal is sent.
+         *
+         * @return the next element, or <code>null</code> after the terminal
+         *         signal
+         */
+        private TapElement nextElement() {
+            try {
+                if (reader == null) {
+                    reader = open();
+                }
+                if (reader.hasNext()) {
+                    return reader.next();
+                }
+            } catch (RuntimeException e) {
+                terminate();
+                subscriber.onError(e);
+                return null;
+            } catch (FileNotFoundException e) {
+                terminate();
+                subscriber.onError(new ParserException("TAP file not found: "
+                        + file, e));
+                return null;
+            }
+            terminate();
+            subscriber.onComplete();
+            return null;
+        }
+
+        /**
+         * @return element reader of the TAP Stream
+         * @throws FileNotFoundException if the TAP file does not exist
+         */
+        private TapReader open() throws FileNotFoundException {
+            final InputStream in = file != null ? new FileInputStream(file)
+                    : stream;
+            try {
+                return new TapReader(TapReader.newLineReader(in,
+                        parser.getEncoding()), parser);
+            } catch (RuntimeException e) {
+                close(in);
+                throw e;
+            }
+        }
+
+        /**
+         * Ends the subscription, closing the TAP Stream.
+         */
+        private void terminate() {
+            done = true;
+            if (reader != null) {
+                close(reader);
+            } else if (stream != null) {
+                close(stream);
+            }
+        }
+
+        /**
+         * Closes the TAP Stream, logging failures.
+         *
+         * @param closeable TAP Stream
+         */
+        private void close(Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to close TAP Stream", e);
+            }
+        }
+
+    }
+
+}
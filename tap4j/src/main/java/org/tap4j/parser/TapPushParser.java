@@ -0,0 +1,318 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.tap4j.model.TestSet;
+
+/**
+ * Non-blocking front end of the parser, for TAP Streams received in chunks of
+ * bytes, such as from sockets or process pipes read by a selector loop. Each
+ * call to {@link #feed(ByteBuffer)} parses the lines completed by the chunk
+ * and keeps the bytes of the last partial line until the next chunk. No
+ * thread ever blocks waiting for input.
+ *
+ * <pre>
+ * TapPushParser push = new TapPushParser(handler);
+ * while (channel.read(buffer) &gt;= 0) {
+ *     buffer.flip();
+ *     push.feed(buffer);
+ *     buffer.clear();
+ * }
+ * push.finish();
+ * </pre>
+ *
+ * <p>A push parser abandoned before the end of its TAP Stream should be
+ * closed, to delete the YAMLish block it may have spilled to disk.</p>
+ *
+ * <p>A push parser is not thread-safe, but it is cheap, so that one thread
+ * can feed many TAP Streams, each with its own push parser. Only UTF-8,
+ * US-ASCII and ISO-8859-1 streams can be pushed.</p>
+ *
+ * @since 4.2
+ */
+public class TapPushParser implements Closeable {
+
+    /**
+     * Initial size of the buffer of the partial line.
+     */
+    private static final int INITIAL_SIZE = 1024;
+
+    /**
+     * Context in which each line is parsed.
+     */
+    private final ParseContext parsing;
+
+    /**
+     * Decoder of the lines.
+     */
+    private final ByteDecoder decoder;
+
+    /**
+     * View of the line.
+     */
+    private final LineBuffer line = new LineBuffer();
+
+    /**
+     * Bytes fed and not parsed yet.
+     */
+    private byte[] bytes = new byte[INITIAL_SIZE];
+
+    /**
+     * Start of the next line in the bytes.
+     */
+    private int start = 0;
+
+    /**
+     * End of the bytes fed.
+     */
+    private int limit = 0;
+
+    /**
+     * End of the bytes already searched for a line terminator.
+     */
+    private int scanned = 0;
+
+    /**
+     * Offset in the stream of the first byte of the buffer.
+     */
+    private long base = 0;
+
+    /**
+     * Whether a <code>\n</code> following the last <code>\r</code> must be
+     * skipped.
+     */
+    private boolean skipLineFeed = false;
+
+    /**
+     * Whether the TAP Stream was finished.
+     */
+    private boolean finished = false;
+
+    /**
+     * Constructor for a UTF-8 TAP Stream.
+     *
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set returned by {@link #finish()}
+     */
+    public TapPushParser(TapEventHandler handler) {
+        this(new Tap13Parser(), handler);
+    }
+
+    /**
+     * Constructor with a parser. The parser can be shared with other push
+     * parsers.
+     *
+     * @param parser parser, defining the encoding of the stream
+     * @param handler TAP event handler, or <code>null</code> to collect the
+     *        TAP elements into the test set returned by {@link #finish()}
+     */
+    public TapPushParser(Tap13Parser parser, TapEventHandler handler) {
+        super();
+        final Charset charset;
+        try {
+            charset = Charset.forName(parser.getEncoding());
+        } catch (IllegalArgumentException iae) {
+            throw new ParserException("Invalid encoding: "
+                    + parser.getEncoding(), iae);
+        }
+        if (!ByteDecoder.isSupported(charset)) {
+            throw new ParserException("Encoding not supported when pushing "
+                    + "a TAP Stream: " + parser.getEncoding());
+        }
+        this.decoder = new ByteDecoder(charset);
+        this.parsing = new ParseContext(parser, handler);
+    }
+
+    /**
+     * Parses the lines completed by a chunk of the TAP Stream. All the
+     * remaining bytes of the chunk are consumed.
+     *
+     * @param chunk next bytes of the TAP Stream
+     * @throws ParserException if a line is not valid TAP, or if the stream
+     *         was finished
+     */
+    public void feed(ByteBuffer chunk) {
+        ensureNotFinished();
+        try {
+            while (chunk.hasRemaining()) {
+                final int length = reserve(chunk.remaining());
+                chunk.get(bytes, limit, length);
+                limit += length;
+                parseLines();
+            }
+        } catch (ParserException e) {
+            parsing.abort();
+            throw e;
+        } catch (RuntimeException e) {
+            parsing.abort();
+            throw new ParserException("Error parsing TAP Stream: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the lines completed by a chunk of the TAP Stream.
+     *
+     * @param chunk bytes
+     * @param offset first byte of the chunk
+     * @param length number of bytes of the chunk
+     * @throws ParserException if a line is not valid TAP, or if the stream
+     *         was finished
+     */
+    public void feed(byte[] chunk, int offset, int length) {
+        feed(ByteBuffer.wrap(chunk, offset, length));
+    }
+
+    /**
+     * Parses the last line, if it has no line terminator, and completes the
+     * TAP Stream, validating its plan.
+     *
+     * @return the test set, with the TAP elements if no handler was given
+     * @throws ParserException if the TAP Stream is not valid, or if it was
+     *         already finished
+     */
+    public TestSet finish() {
+        ensureNotFinished();
+        finished = true;
+        try {
+            skipLineFeed();
+            if (start < limit) {
+                decoder.decode(bytes, start, limit, line);
+                start = limit;
+                parsing.parseNextLine(line);
+            }
+            parsing.finish();
+            return parsing.getTestSet();
+        } catch (ParserException e) {
+            parsing.abort();
+            throw e;
+        } catch (RuntimeException e) {
+            parsing.abort();
+            throw new ParserException("Error parsing TAP Stream: "
+                    + e.getMessage(), e);
+        } finally {
+            bytes = null;
+        }
+    }
+
+    /**
+     * Abandons the TAP Stream, without completing it. A YAMLish block spilled
+     * to disk and not completed yet is deleted. Nothing is done if the TAP
+     * Stream was finished.
+     */
+    public void close() {
+        if (!finished) {
+            finished = true;
+            bytes = null;
+            parsing.abort();
+        }
+    }
+
+    /**
+     * @return offset in the stream of the first byte not parsed yet
+     */
+    public long getPosition() {
+        return base + start;
+    }
+
+    /**
+     * @return <code>true</code> once {@link #finish()} was called
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @throws ParserException if the TAP Stream was finished
+     */
+    private void ensureNotFinished() {
+        if (finished) {
+            throw new ParserException("TAP Stream already finished");
+        }
+    }
+
+    /**
+     * Makes room in the buffer for more bytes, discarding the lines already
+     * parsed, and growing it if the partial line does not leave enough room.
+     *
+     * @param wanted number of bytes to append
+     * @return number of bytes that can be appended, at least one
+     */
+    private int reserve(int wanted) {
+        if (start > 0) {
+            System.arraycopy(bytes, start, bytes, 0, limit - start);
+            base += start;
+            limit -= start;
+            scanned -= start;
+            start = 0;
+        }
+        if (limit == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        return Math.min(wanted, bytes.length - limit);
+    }
+
+    /**
+     * Skips the <code>\n</code> of a <code>\r\n</code> line terminator, once
+     * the byte after the <code>\r</code> was fed.
+     */
+    private void skipLineFeed() {
+        if (skipLineFeed && start < limit) {
+            skipLineFeed = false;
+            if (bytes[start] == '\n') {
+                start++;
+                scanned = start;
+            }
+        }
+    }
+
+    /**
+     * Parses the complete lines of the buffer.
+     */
+    private void parseLines() {
+        skipLineFeed();
+        int i = scanned;
+        while (i < limit) {
+            final byte b = bytes[i];
+            if (b == '\n' || b == '\r') {
+                decoder.decode(bytes, start, i, line);
+                start = i + 1;
+                skipLineFeed = b == '\r';
+                scanned = start;
+                parsing.parseNextLine(line);
+                skipLineFeed();
+                i = scanned;
+            } else {
+                i++;
+            }
+        }
+        scanned = limit;
+    }
+
+}
@@ -0,0 +1,360 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import org.tap4j.model.BailOut;
+import org.tap4j.model.Comment;
+import org.tap4j.model.Footer;
+import org.tap4j.model.Header;
+import org.tap4j.model.Plan;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.TestSet;
+import org.tap4j.model.Text;
+
+/**
+ * Pull parser for TAP Streams. Each call to {@link #next()} reads just enough
+ * lines to return the next TAP element, so the stream can be consumed lazily,
+ * stopped early or interleaved with other work.
+ *
+ * <p>An element is returned once the next element (other than a comment)
+ * begins, or the stream ends. By then its diagnostic, comments and subtests
+ * have been attached to it. Elements of subtests are not returned, they are
+ * in the subtest of their Test Result or Plan.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ *
+ * @since 4.2
+ */
+public class TapReader implements Iterator<TapElement>, Closeable {
+
+    /**
+     * TAP Stream reader.
+     */
+    private final LineReader reader;
+
+    /**
+     * Context in which each line is parsed.
+     */
+    private final ParseContext parsing;
+
+    /**
+     * Collects the elements given by the parser.
+     */
+    private final ElementCollector collector = new ElementCollector();
+
+    /**
+     * Whether the end of the stream has been reached.
+     */
+    private boolean finished = false;
+
+    /**
+     * Constructor with an UTF-8 input stream.
+     *
+     * @param stream TAP Stream
+     */
+    public TapReader(InputStream stream) {
+        this(stream, "UTF-8");
+    }
+
+    /**
+     * Constructor with an input stream.
+     *
+     * @param stream TAP Stream
+     * @param encoding Encoding
+     */
+    public TapReader(InputStream stream, String encoding) {
+        this(newLineReader(stream, encoding),
+                new Tap13Parser(encoding, false));
+    }
+
+    /**
+     * Constructor with a reader.
+     *
+     * @param reader TAP Stream
+     */
+    public TapReader(Reader reader) {
+        this(reader, new Tap13Parser());
+    }
+
+    /**
+     * Constructor with a reader and a parser. The parser can be shared with
+     * other readers.
+     *
+     * @param reader TAP Stream
+     * @param parser parser, defining whether subtests are enabled and whether
+     *        the TAP Plan is required
+     */
+    public TapReader(Reader reader, Tap13Parser parser) {
+        this(new CharLineReader(reader), parser);
+    }
+
+    /**
+     * Constructor with a line reader and a parser.
+     *
+     * @param reader TAP Stream lines
+     * @param parser parser
+     */
+    TapReader(LineReader reader, Tap13Parser parser) {
+        super();
+        this.reader = reader;
+        this.parsing = new ParseContext(parser, collector);
+    }
+
+    /**
+     * @param stream input stream
+     * @param encoding encoding
+     * @return a line reader for the stream
+     */
+    static LineReader newLineReader(InputStream stream,
+            String encoding) {
+        try {
+            return LineReader.open(stream, encoding);
+        } catch (IllegalArgumentException iae) {
+            throw new ParserException("Invalid encoding: " + encoding, iae);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasNext() {
+        while (collector.ready.isEmpty() && !finished) {
+            readLine();
+        }
+        return !collector.ready.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public TapElement next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return collector.ready.removeFirst();
+    }
+
+    /**
+     * Not supported.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Closes the TAP Stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void close() throws IOException {
+        if (!finished) {
+            parsing.abort();
+        }
+        finished = true;
+        reader.close();
+    }
+
+    /**
+     * Reads and parses the next line, finishing the parser at the end of the
+     * stream.
+     */
+    private void readLine() {
+        try {
+            CharSequence line = parsing.isStopped() ? null : reader.readLine();
+            if (line == null) {
+                finished = true;
+                parsing.finish();
+                collector.release();
+            } else {
+                parsing.parseNextLine(line);
+            }
+        } catch (IOException e) {
+            parsing.abort();
+            throw new ParserException("Error reading TAP Stream: "
+                    + e.getMessage(), e);
+        } catch (ParserException e) {
+            parsing.abort();
+            throw e;
+        } catch (RuntimeException e) {
+            parsing.abort();
+            throw new ParserException("Error parsing TAP Stream: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Queues the top level elements, and adds the subtest elements to the
+     * subtest of their parent.
+     */
+    private static class ElementCollector implements TapEventHandler {
+
+        /**
+         * Elements that can be returned.
+         */
+        private final LinkedList<TapElement> ready = new LinkedList<TapElement>();
+
+        /**
+         * Elements whose diagnostic or comments may still be parsed.
+         */
+        private final LinkedList<TapElement> pending = new LinkedList<TapElement>();
+
+        /**
+         * Subtests being parsed.
+         */
+        private final LinkedList<TestSet> subtests = new LinkedList<TestSet>();
+
+        /**
+         * Releases the pending elements.
+         */
+        void release() {
+            ready.addAll(pending);
+            pending.clear();
+        }
+
+        /**
+         * Queues a top level element, releasing the previous ones.
+         *
+         * @param element TAP element
+         */
+        private void add(TapElement element) {
+            release();
+            pending.add(element);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onHeader(Header header) {
+            if (subtests.isEmpty()) {
+                add(header);
+            } else {
+                subtests.getLast().setHeader(header);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onPlan(Plan plan) {
+            if (subtests.isEmpty()) {
+                add(plan);
+            } else {
+                subtests.getLast().setPlan(plan);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onTestResult(TestResult testResult) {
+            if (subtests.isEmpty()) {
+                add(testResult);
+            } else {
+                subtests.getLast().addTestResult(testResult);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onBailOut(BailOut bailOut) {
+            if (subtests.isEmpty()) {
+                add(bailOut);
+            } else {
+                subtests.getLast().addBailOut(bailOut);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onComment(Comment comment) {
+            if (subtests.isEmpty()) {
+                pending.add(comment);
+            } else {
+                subtests.getLast().addComment(comment);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onText(Text text) {
+            if (subtests.isEmpty()) {
+                add(text);
+            } else {
+                subtests.getLast().addTapLine(text);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onFooter(Footer footer) {
+            if (subtests.isEmpty()) {
+                add(footer);
+            } else {
+                subtests.getLast().setFooter(footer);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onDiagnostic(TapElement element) {
+            // already set in the element
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onSubtestStart(TapElement parent) {
+            TestSet subtest = new TestSet();
+            if (parent instanceof TestResult) {
+                ((TestResult) parent).setSubtest(subtest);
+            } else {
+                ((Plan) parent).setSubtest(subtest);
+            }
+            subtests.add(subtest);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void onSubtestEnd(TapElement parent) {
+            subtests.removeLast();
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import org.tap4j.model.TapElement;
+
+/**
+ * Receives the TAP elements of a {@link TapPublisher}, no more than requested
+ * through its {@link TapSubscription}. It follows the contract of
+ * <code>java.util.concurrent.Flow.Subscriber&lt;TapElement&gt;</code>, so that
+ * it can be adapted to it with one method per signal.
+ *
+ * @since 4.2
+ */
+public interface TapSubscriber {
+
+    /**
+     * Called once, before any other signal.
+     *
+     * @param subscription subscription, used to request elements
+     */
+    void onSubscribe(TapSubscription subscription);
+
+    /**
+     * Called for each TAP element, in the order of the TAP Stream.
+     *
+     * @param element TAP element, with its diagnostic and subtest
+     */
+    void onNext(TapElement element);
+
+    /**
+     * Called once if the TAP Stream cannot be read or parsed. No other signal
+     * follows.
+     *
+     * @param throwable cause
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * Called once after the last element of the TAP Stream. No other signal
+     * follows.
+     */
+    void onComplete();
+
+}
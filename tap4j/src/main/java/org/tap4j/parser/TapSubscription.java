@@ -0,0 +1,51 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+/**
+ * Link between a {@link TapPublisher} and its {@link TapSubscriber}, through
+ * which the subscriber requests elements when it is ready for them. It follows
+ * the contract of <code>java.util.concurrent.Flow.Subscription</code>.
+ *
+ * @since 4.2
+ */
+public interface TapSubscription {
+
+    /**
+     * Adds to the number of elements the subscriber is ready to receive.
+     * Requests are cumulative, and <code>Long.MAX_VALUE</code> means no limit.
+     *
+     * @param n number of elements, more than zero, or the subscriber
+     *        receives an {@link IllegalArgumentException} with
+     *        {@link TapSubscriber#onError(Throwable)}
+     */
+    void request(long n);
+
+    /**
+     * Stops sending elements and closes the TAP Stream. Elements may still be
+     * sent while the cancellation is being handled.
+     */
+    void cancel();
+
+}
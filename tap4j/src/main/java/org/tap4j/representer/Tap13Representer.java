@@ -25,9 +25,9 @@ package org.tap4j.representer;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.List;
 import java.util.Map;
 
+import org.tap4j.model.AbstractTapElementDiagnostic;
 import org.tap4j.model.BailOut;
 import org.tap4j.model.Comment;
 import org.tap4j.model.Footer;
@@ -37,9 +37,7 @@ import org.tap4j.model.TapElement;
 import org.tap4j.model.TapResult;
 import org.tap4j.model.TestResult;
 import org.tap4j.model.TestSet;
-import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.DumperOptions.LineBreak;
-import org.yaml.snakeyaml.Yaml;
+import org.tap4j.util.YamlEngine;
 
 /**
  * A TAP 13 representer.
@@ -59,9 +57,10 @@ public class Tap13Representer implements Representer {
     private org.tap4j.representer.DumperOptions options;
 
     /**
-     * YAML parser and emitter.
+     * YAML engine used to dump diagnostics, or <code>null</code> when the
+     * diagnostics are not printed.
      */
-    private Yaml yaml = null;
+    private YamlEngine yamlEngine = null;
 
     /**
      * Default constructor.
@@ -74,15 +73,20 @@ public class Tap13Representer implements Representer {
      * @param options Dumper options
      */
     public Tap13Representer(org.tap4j.representer.DumperOptions options) {
+        this(options, YamlEngine.getDefault());
+    }
+
+    /**
+     * @param options Dumper options
+     * @param yamlEngine YAML engine used to dump diagnostics
+     * @since 4.2
+     */
+    public Tap13Representer(org.tap4j.representer.DumperOptions options,
+            YamlEngine yamlEngine) {
         super();
         this.options = options;
         if (options.isPrintDiagnostics()) {
-            final DumperOptions yamlDumperOptions = new DumperOptions();
-            yamlDumperOptions.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-            yamlDumperOptions.setLineBreak(LineBreak.getPlatformLineBreak());
-            yamlDumperOptions.setExplicitStart(true);
-            yamlDumperOptions.setExplicitEnd(true);
-            yaml = new Yaml(yamlDumperOptions);
+            this.yamlEngine = yamlEngine;
         }
     }
 
@@ -142,9 +146,8 @@ public class Tap13Representer implements Representer {
                 pw.append(' ' + testResult.getDirective().getReason());
             }
         }
-        List<Comment> comments = testResult.getComments();
-        if (comments.size() > 0) {
-            for (Comment comment : comments) {
+        if (testResult.hasComments()) {
+            for (Comment comment : testResult.getComments()) {
                 if (comment.isInline()) {
                     pw.append(' ');
                     printComment(pw, comment);
@@ -259,10 +262,15 @@ public class Tap13Representer implements Representer {
      * @param tapElement TAP element
      */
     protected void printDiagnostic(PrintWriter pw, TapElement tapElement) {
-        if (this.yaml != null) {
+        if (this.yamlEngine != null) {
+            if (tapElement instanceof AbstractTapElementDiagnostic
+                    && !((AbstractTapElementDiagnostic) tapElement)
+                            .hasDiagnostic()) {
+                return;
+            }
             Map<String, Object> diagnostic = tapElement.getDiagnostic();
             if (diagnostic != null && !diagnostic.isEmpty()) {
-                String diagnosticText = yaml.dump(diagnostic);
+                String diagnosticText = yamlEngine.dump(diagnostic);
                 diagnosticText = diagnosticText.replaceAll("((?m)^)", "  ");
                 pw.append(LINE_SEPARATOR);
                 printFiller(pw);
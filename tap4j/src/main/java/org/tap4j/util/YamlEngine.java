@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.util;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.DumperOptions.LineBreak;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Loads and dumps the YAMLish diagnostics of TAP Streams. Creating a SnakeYAML
+ * instance is expensive, while each instance can only be used by one thread,
+ * so an engine keeps a loader and a dumper per thread and reuses them.
+ *
+ * <p>The engine returned by {@link #getDefault()} is shared by the parsers
+ * and representers that are not given another engine. Subclasses can
+ * configure SnakeYAML by overriding {@link #createLoader()} and
+ * {@link #createDumper()}.</p>
+ *
+ * @since 4.2
+ */
+public class YamlEngine {
+
+    /**
+     * Engine shared by default.
+     */
+    private static final YamlEngine DEFAULT = new YamlEngine();
+
+    /**
+     * Loader of each thread.
+     */
+    private final ThreadLocal<Yaml> loaders = new ThreadLocal<Yaml>();
+
+    /**
+     * Dumper of each thread.
+     */
+    private final ThreadLocal<Yaml> dumpers = new ThreadLocal<Yaml>();
+
+    /**
+     * Default constructor.
+     */
+    public YamlEngine() {
+        super();
+    }
+
+    /**
+     * @return the engine shared by default
+     */
+    public static YamlEngine getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Loads a YAML document.
+     *
+     * @param yaml YAML document
+     * @return the object loaded
+     */
+    public Object load(String yaml) {
+        Yaml loader = loaders.get();
+        if (loader == null) {
+            loader = createLoader();
+        }
+        // not cached while in use, nor after a failure that could leave it in
+        // an inconsistent state
+        loaders.remove();
+        final Object data = loader.load(yaml);
+        loaders.set(loader);
+        return data;
+    }
+
+    /**
+     * Dumps an object into a YAML document.
+     *
+     * @param data object
+     * @return YAML document
+     */
+    public String dump(Object data) {
+        Yaml dumper = dumpers.get();
+        if (dumper == null) {
+            dumper = createDumper();
+        }
+        dumpers.remove();
+        final String yaml = dumper.dump(data);
+        dumpers.set(dumper);
+        return yaml;
+    }
+
+    /**
+     * Creates the loader of a thread.
+     *
+     * @return a new loader
+     */
+    protected Yaml createLoader() {
+        return new Yaml();
+    }
+
+    /**
+     * Creates the dumper of a thread. By default, documents are dumped in
+     * block style, with explicit start and end, and with the line break of
+     * the platform.
+     *
+     * @return a new dumper
+     */
+    protected Yaml createDumper() {
+        final DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setLineBreak(LineBreak.getPlatformLineBreak());
+        options.setExplicitStart(true);
+        options.setExplicitEnd(true);
+        return new Yaml(options);
+    }
+
+}
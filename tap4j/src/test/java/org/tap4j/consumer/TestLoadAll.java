@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tap4j.model.TapSummary;
+import org.tap4j.model.TestSet;
+import org.tap4j.parser.Tap13Parser;
+
+/**
+ * Tests for loading the TAP files of a directory in parallel.
+ *
+ * @since 4.2
+ */
+public class TestLoadAll {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            write("test-" + i + ".tap", "1..3\n" +
+                    "ok 1\n" +
+                    "not ok 2 # TODO later\n" +
+                    "  ---\n" +
+                    "  file: " + i + "\n" +
+                    "  ...\n" +
+                    "ok 3 # SKIP no\n");
+        }
+        write("invalid.tap", "1..1\nok 1\n1..2\n");
+        write("notes.txt", "not TAP\n");
+    }
+
+    @Test
+    public void testLoadAll() {
+        TapLoadResult result = new TapConsumerImpl(new Tap13Parser(true))
+                .loadAll(folder.getRoot());
+        assertEquals(200, result.getTestSets().size());
+        assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().containsKey(
+                new File(folder.getRoot(), "invalid.tap")));
+        TestSet testSet = result.getTestSets().get(
+                new File(folder.getRoot(), "test-42.tap"));
+        assertEquals(42, testSet.getTestResult(2).getDiagnostic().get("file"));
+        TapSummary summary = result.getSummary();
+        assertEquals(200, summary.getNumberOfTestSets());
+        assertEquals(600, summary.getPlanned());
+        assertEquals(400, summary.getOk());
+        assertEquals(200, summary.getNotOk());
+        assertEquals(200, summary.getTodo());
+        assertEquals(200, summary.getSkip());
+        assertTrue(summary.isPlanMatched());
+        assertFalse(summary.hasBailOut());
+    }
+
+    @Test
+    public void testLoadAllWithExecutorAndFilter() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            TapLoadResult result = new TapConsumerImpl().loadAll(
+                    folder.getRoot(), new FileFilter() {
+                        public boolean accept(File file) {
+                            return file.getName().startsWith("test-1");
+                        }
+                    }, executor);
+            assertEquals(111, result.getTestSets().size());
+            assertTrue(result.getErrors().isEmpty());
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParserSubclassNotShared() {
+        final AtomicInteger parsing = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        Tap13Parser parser = new Tap13Parser() {
+            @Override
+            public TestSet parseFile(File tapFile) {
+                if (parsing.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                try {
+                    Thread.sleep(1);
+                    return super.parseFile(tapFile);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    parsing.decrementAndGet();
+                }
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            TapLoadResult result = new TapConsumerImpl(parser).loadAll(
+                    folder.getRoot(), new FileFilter() {
+                        public boolean accept(File file) {
+                            return file.getName().startsWith("test-1");
+                        }
+                    }, executor);
+            assertEquals(111, result.getTestSets().size());
+            assertEquals(0, overlaps.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = TapConsumerException.class)
+    public void testNotADirectory() throws IOException {
+        new TapConsumerImpl().loadAll(folder.newFile());
+    }
+
+    /**
+     * @param name file name
+     * @param text file content
+     * @throws IOException if an I/O error occurs
+     */
+    private void write(String name, String text) throws IOException {
+        FileOutputStream fos = new FileOutputStream(new File(folder.getRoot(),
+                name));
+        try {
+            fos.write(text.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+
+}
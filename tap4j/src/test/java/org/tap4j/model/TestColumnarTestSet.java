@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import org.tap4j.parser.Tap13Parser;
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Tests for the columnar test set.
+ *
+ * @since 4.2
+ */
+public class TestColumnarTestSet {
+
+    private static final String TAP = "TAP version 13\n1..5\n"
+            + "ok 1 - first\n"
+            + "not ok 2 - second # TODO not yet\n"
+            + "# a comment\n"
+            + "ok 3 # SKIP no database\n"
+            + "not ok 4 - fourth\n  ---\n  message: failed\n  ...\n"
+            + "Bail out! stop\n"
+            + "ok 5 - last\n";
+
+    private static TestSet parse(TestSetFactory factory) {
+        Tap13Parser parser = new Tap13Parser("UTF-8", true);
+        parser.setTestSetFactory(factory);
+        return parser.parseTapStream(TAP);
+    }
+
+    @Test
+    public void testSameAsTestSet() {
+        TestSet expected = parse(null);
+        TestSet testSet = parse(ColumnarTestSet.factory());
+        assertTrue(testSet instanceof ColumnarTestSet);
+        assertEquals(expected.getNumberOfTestResults(),
+                testSet.getNumberOfTestResults());
+        assertEquals(expected.getNumberOfTapLines(),
+                testSet.getNumberOfTapLines());
+        for (int i = 0; i < expected.getNumberOfTapLines(); i++) {
+            assertEquals(expected.getTapLines().get(i).getClass(), testSet
+                    .getTapLines().get(i).getClass());
+        }
+        for (int i = 1; i <= 5; i++) {
+            TestResult a = expected.getTestResult(i);
+            TestResult b = testSet.getTestResult(i);
+            assertEquals(a.getTestNumber(), b.getTestNumber());
+            assertEquals(a.getStatus(), b.getStatus());
+            assertEquals(a.getDescription(), b.getDescription());
+            if (a.getDirective() == null) {
+                assertNull(b.getDirective());
+            } else {
+                assertEquals(a.getDirective().getDirectiveValue(), b
+                        .getDirective().getDirectiveValue());
+                assertEquals(a.getDirective().getReason(), b.getDirective()
+                        .getReason());
+            }
+            assertEquals(a.getDiagnostic(), b.getDiagnostic());
+            assertEquals(a.getComments().size(), b.getComments().size());
+        }
+        assertTrue(testSet.hasBailOut());
+        assertTrue(testSet.containsOk());
+        assertTrue(testSet.containsNotOk());
+        assertEquals(1, testSet.getNumberOfComments());
+        assertNull(testSet.getTestResult(6));
+    }
+
+    @Test
+    public void testColumns() {
+        ColumnarTestSet testSet = (ColumnarTestSet) parse(ColumnarTestSet
+                .factory());
+        assertEquals(3, testSet.getNumberOfTestResults(StatusValues.OK));
+        assertEquals(2, testSet.getNumberOfTestResults(StatusValues.NOT_OK));
+        assertEquals(1, testSet.getNumberOfTestResults(DirectiveValues.SKIP));
+        assertEquals(1, testSet.getNumberOfTestResults(DirectiveValues.TODO));
+        assertEquals(3, testSet.getNumberOfTestResults((DirectiveValues) null));
+        assertEquals(1, testSet.indexOf(StatusValues.NOT_OK, 0));
+        assertEquals(3, testSet.indexOf(StatusValues.NOT_OK, 2));
+        assertEquals(-1, testSet.indexOf(StatusValues.NOT_OK, 4));
+        assertEquals(Integer.valueOf(4), testSet.getTestNumber(3));
+        assertEquals("- fourth", testSet.getDescription(3));
+        assertEquals("", testSet.getDescription(2));
+        assertEquals(DirectiveValues.SKIP, testSet.getDirectiveValue(2));
+        assertEquals(StatusValues.OK, testSet.getStatus(4));
+    }
+
+    @Test
+    public void testKeepsElementsWithExtras() {
+        ColumnarTestSet testSet = new ColumnarTestSet();
+        TestResult plain = new TestResult(StatusValues.OK, 1);
+        TestResult commented = new TestResult(StatusValues.OK, 2);
+        testSet.addTestResult(plain);
+        assertSame(plain, testSet.getTestResult(1));
+        testSet.addTestResult(commented);
+        commented.addComment(new Comment("after it was added"));
+        testSet.addTestResult(new TestResult(StatusValues.NOT_OK, 3));
+        assertSame(commented, testSet.getTestResult(2));
+        TestResult flyweight = testSet.getTestResult(1);
+        assertFalse(plain == flyweight);
+        assertEquals(StatusValues.OK, flyweight.getStatus());
+        assertEquals(3, testSet.getNumberOfTapLines());
+    }
+
+    @Test
+    public void testNumbering() {
+        ColumnarTestSet testSet = new ColumnarTestSet();
+        testSet.addTestResult(new TestResult());
+        testSet.getTestResults().add(new TestResult(StatusValues.OK, 7));
+        assertEquals(Integer.valueOf(1), testSet.getTestNumber(0));
+        assertEquals(Integer.valueOf(7), testSet.getTestResults().get(1)
+                .getTestNumber());
+        assertEquals(1, testSet.getNumberOfTapLines());
+        assertEquals(3, testSet.getNextTestNumber());
+    }
+
+    @Test
+    public void testLookupByNumber() {
+        ColumnarTestSet testSet = new ColumnarTestSet();
+        TestSet expected = new TestSet();
+        int[] numbers = {1, 1000000, 3, 1, 2 };
+        for (int i = 0; i < numbers.length; i++) {
+            for (TestSet each : new TestSet[] {testSet, expected }) {
+                TestResult testResult = new TestResult(StatusValues.OK,
+                        numbers[i]);
+                testResult.setDescription("- " + i);
+                each.addTestResult(testResult);
+            }
+        }
+        for (int i = 4; i <= 100; i++) {
+            testSet.addTestResult(new TestResult(StatusValues.NOT_OK, i));
+            expected.addTestResult(new TestResult(StatusValues.NOT_OK, i));
+        }
+        for (int number : new int[] {1, 2, 3, 50, 100, 1000000 }) {
+            assertEquals(expected.getTestResult(number).getDescription(),
+                    testSet.getTestResult(number).getDescription());
+            assertEquals(expected.getTestResult(number).getStatus(),
+                    testSet.getTestResult(number).getStatus());
+        }
+        assertEquals("- 0", testSet.getTestResult(1).getDescription());
+        assertNull(testSet.getTestResult(101));
+        assertNull(testSet.getTestResult(999999));
+        assertNull(testSet.getTestResult(-1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemoveUnsupported() {
+        ColumnarTestSet testSet = new ColumnarTestSet();
+        TestResult testResult = new TestResult(StatusValues.OK, 1);
+        testSet.addTestResult(testResult);
+        testSet.removeTestResult(testResult);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        TestSet testSet = parse(ColumnarTestSet.factory());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(testSet);
+        out.close();
+        ColumnarTestSet copy = (ColumnarTestSet) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(5, copy.getNumberOfTestResults());
+        assertEquals("failed", copy.getTestResult(4).getDiagnostic()
+                .get("message"));
+        assertEquals("- last", copy.getTestResults().get(4)
+                .getDescription());
+        assertTrue(copy.hasBailOut());
+    }
+
+}
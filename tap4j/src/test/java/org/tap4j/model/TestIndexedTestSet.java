@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+
+import org.junit.Test;
+import org.tap4j.parser.Tap13Parser;
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Tests for the indexed test set.
+ *
+ * @since 4.2
+ */
+public class TestIndexedTestSet {
+
+    private static TestResult result(StatusValues status, int number,
+            DirectiveValues directive) {
+        TestResult testResult = new TestResult(status, number);
+        if (directive != null) {
+            testResult.setDirective(new Directive(directive, "reason"));
+        }
+        return testResult;
+    }
+
+    @Test
+    public void testLookupAndCounters() {
+        IndexedTestSet testSet = new IndexedTestSet();
+        for (int i = 1; i <= 1000; i++) {
+            testSet.addTestResult(result(i % 10 == 0 ? StatusValues.NOT_OK
+                    : StatusValues.OK, i, i % 100 == 0 ? DirectiveValues.TODO
+                    : null));
+        }
+        testSet.addTestResult(result(StatusValues.OK, 1000000,
+                DirectiveValues.SKIP));
+        assertEquals(1001, testSet.getNumberOfTestResults());
+        assertEquals(901, testSet.getNumberOfOk());
+        assertEquals(100, testSet.getNumberOfNotOk());
+        assertEquals(1, testSet.getNumberOfSkip());
+        assertEquals(10, testSet.getNumberOfTodo());
+        assertTrue(testSet.containsOk());
+        assertTrue(testSet.containsNotOk());
+        for (int i = 1; i <= 1000; i++) {
+            assertEquals(i, testSet.getTestResult(i).getTestNumber()
+                    .intValue());
+        }
+        assertEquals(1000000, testSet.getTestResult(1000000).getTestNumber()
+                .intValue());
+        assertNull(testSet.getTestResult(1001));
+        assertNull(testSet.getTestResult(0));
+        assertNull(testSet.getTestResult(-1));
+        assertNull(testSet.getTestResult(null));
+    }
+
+    @Test
+    public void testRemove() {
+        IndexedTestSet testSet = new IndexedTestSet();
+        TestResult first = result(StatusValues.NOT_OK, 1, null);
+        TestResult duplicate = result(StatusValues.OK, 1, null);
+        TestResult second = result(StatusValues.OK, 2, null);
+        testSet.addTestResult(first);
+        testSet.addTestResult(duplicate);
+        testSet.addTestResult(second);
+        assertSame(first, testSet.getTestResult(1));
+        assertTrue(testSet.removeTestResult(first));
+        assertSame(duplicate, testSet.getTestResult(1));
+        assertFalse(testSet.containsNotOk());
+        assertEquals(2, testSet.getNumberOfOk());
+        assertEquals(2, testSet.getNumberOfTapLines());
+
+        Iterator<TestResult> iterator = testSet.getTestResults().iterator();
+        iterator.next();
+        iterator.remove();
+        assertNull(testSet.getTestResult(1));
+        assertSame(second, testSet.getTestResult(2));
+        assertEquals(1, testSet.getNumberOfOk());
+        testSet.getTestResults().clear();
+        assertNull(testSet.getTestResult(1));
+        assertNull(testSet.getTestResult(2));
+        assertFalse(testSet.containsOk());
+    }
+
+    @Test
+    public void testBailOuts() {
+        IndexedTestSet testSet = new IndexedTestSet();
+        assertFalse(testSet.hasBailOut());
+        BailOut bailOut = new BailOut("stop");
+        testSet.addBailOut(bailOut);
+        assertTrue(testSet.hasBailOut());
+        assertTrue(testSet.removeBailOut(bailOut));
+        assertFalse(testSet.hasBailOut());
+        testSet.getTapLines().add(new BailOut("added as a line"));
+        assertTrue(testSet.hasBailOut());
+    }
+
+    @Test
+    public void testReindex() {
+        IndexedTestSet testSet = new IndexedTestSet();
+        TestResult testResult = result(StatusValues.OK, 1, null);
+        testSet.addTestResult(testResult);
+        testResult.setStatus(StatusValues.NOT_OK);
+        testResult.setTestNumber(5);
+        testSet.reindex();
+        assertSame(testResult, testSet.getTestResult(5));
+        assertNull(testSet.getTestResult(1));
+        assertEquals(1, testSet.getNumberOfNotOk());
+        assertEquals(0, testSet.getNumberOfOk());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        IndexedTestSet testSet = new IndexedTestSet();
+        testSet.addTestResult(result(StatusValues.OK, 1, null));
+        testSet.addTestResult(result(StatusValues.NOT_OK, 2,
+                DirectiveValues.SKIP));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(testSet);
+        out.close();
+        IndexedTestSet copy = (IndexedTestSet) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(2, copy.getTestResult(2).getTestNumber().intValue());
+        assertEquals(1, copy.getNumberOfSkip());
+        copy.addTestResult(result(StatusValues.OK, 3, null));
+        assertEquals(2, copy.getNumberOfOk());
+        assertEquals(3, copy.getTestResult(3).getTestNumber().intValue());
+    }
+
+    @Test
+    public void testParsed() {
+        Tap13Parser parser = new Tap13Parser("UTF-8", true);
+        parser.setTestSetFactory(IndexedTestSet.factory());
+        TestSet testSet = parser.parseTapStream("1..3\n    1..1\n    ok 1\n"
+                + "ok 1\nnot ok 2 # TODO later\nok 3\n");
+        assertTrue(testSet instanceof IndexedTestSet);
+        IndexedTestSet indexed = (IndexedTestSet) testSet;
+        assertEquals(2, indexed.getNumberOfOk());
+        assertEquals(1, indexed.getNumberOfTodo());
+        assertEquals("later", indexed.getTestResult(2).getDirective()
+                .getReason());
+        assertTrue(testSet.getPlan().getSubtest() instanceof IndexedTestSet);
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import org.tap4j.parser.Tap13Parser;
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Tests for the off-heap test set.
+ *
+ * @since 4.2
+ */
+public class TestOffHeapTestSet {
+
+    private static final String TAP = "TAP version 13\n1..4\n"
+            + "ok 1 - first été\n"
+            + "not ok 2 - second # TODO not yet\n"
+            + "ok 3 # SKIP no database\n"
+            + "not ok 4 - fourth\n  ---\n  message: failed\n  ...\n";
+
+    private static OffHeapTestSet parse(String tap) {
+        Tap13Parser parser = new Tap13Parser("UTF-8", true);
+        parser.setTestSetFactory(OffHeapTestSet.factory());
+        return (OffHeapTestSet) parser.parseTapStream(tap);
+    }
+
+    @Test
+    public void testParse() {
+        OffHeapTestSet testSet = parse(TAP);
+        assertEquals(4, testSet.getNumberOfTestResults());
+        assertEquals("- first été", testSet.getTestResult(1)
+                .getDescription());
+        assertEquals("not yet", testSet.getTestResult(2).getDirective()
+                .getReason());
+        assertEquals("failed", testSet.getTestResult(4).getDiagnostic()
+                .get("message"));
+        assertEquals(2, testSet.getNumberOfTestResults(StatusValues.NOT_OK));
+        assertEquals(1, testSet.getNumberOfTestResults(DirectiveValues.SKIP));
+        assertTrue(testSet.containsNotOk());
+        testSet.close();
+    }
+
+    @Test
+    public void testGrowth() {
+        OffHeapTestSet testSet = new OffHeapTestSet();
+        for (int i = 1; i <= 10000; i++) {
+            TestResult testResult = new TestResult(i % 3 == 0
+                    ? StatusValues.NOT_OK : StatusValues.OK, i);
+            testResult.setDescription("- test number " + i);
+            testSet.addTestResult(testResult);
+        }
+        assertEquals(10000, testSet.getNumberOfTestResults());
+        assertEquals(3333, testSet.getNumberOfTestResults(StatusValues.NOT_OK));
+        assertEquals("- test number 5000", testSet.getDescription(4999));
+        assertEquals(Integer.valueOf(10000), testSet.getTestNumber(9999));
+        testSet.close();
+    }
+
+    @Test
+    public void testClose() {
+        OffHeapTestSet testSet = parse("1..1\nok 1 - parent\n"
+                + "    1..1\n    ok 1 - child\n");
+        TestSet subtest = testSet.getTestResult(1).getSubtest();
+        assertTrue(subtest instanceof OffHeapTestSet);
+        assertFalse(testSet.isClosed());
+        testSet.close();
+        testSet.close();
+        assertTrue(testSet.isClosed());
+        assertTrue(((OffHeapTestSet) subtest).isClosed());
+        try {
+            testSet.getNumberOfTestResults();
+            assertTrue("Closed test set used", false);
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        OffHeapTestSet testSet = parse(TAP);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(testSet);
+        out.close();
+        testSet.close();
+        OffHeapTestSet copy = (OffHeapTestSet) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(4, copy.getNumberOfTestResults());
+        assertEquals("- first été", copy.getDescription(0));
+        assertEquals(DirectiveValues.TODO, copy.getDirectiveValue(1));
+        assertEquals("failed", copy.getTestResult(4).getDiagnostic()
+                .get("message"));
+        copy.close();
+    }
+
+}
@@ -24,11 +24,19 @@
 package org.tap4j.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -101,4 +109,109 @@ public class TestTAPTestResult {
         assertTrue(okTestResult.getComments().size() == 0);
     }
 
+    @Test
+    public void testLazyContainers() {
+        assertFalse(okTestResult.hasComments());
+        assertFalse(okTestResult.hasDiagnostic());
+        okTestResult.getDiagnostic().put("message", "failed");
+        assertTrue(okTestResult.hasDiagnostic());
+        okTestResult.addComment(new Comment("note"));
+        assertTrue(okTestResult.hasComments());
+        assertFalse(notOkTestResult.hasComments());
+        assertTrue(notOkTestResult.getComments().isEmpty());
+        notOkTestResult.setDiagnostic(null);
+        assertNull(notOkTestResult.getDiagnostic());
+    }
+
+    @Test
+    public void testNullTestNumber() {
+        TestResult testResult = new TestResult(StatusValues.OK, (Integer) null);
+        assertNull(testResult.getTestNumber());
+        testResult.setTestNumber(1000);
+        assertEquals(Integer.valueOf(1000), testResult.getTestNumber());
+        testResult.setTestNumber(null);
+        assertNull(testResult.getTestNumber());
+    }
+
+    @Test
+    public void testAnyTestNumber() throws Exception {
+        TestResult testResult = new TestResult(StatusValues.OK,
+                Integer.MIN_VALUE);
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE),
+                testResult.getTestNumber());
+        testResult = new TestResult(StatusValues.OK, (Integer) null);
+        testResult.setTestNumber(Integer.MIN_VALUE);
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE),
+                testResult.getTestNumber());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(testResult);
+        out.close();
+        TestResult copy = (TestResult) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), copy.getTestNumber());
+        TestSet testSet = new TestSet();
+        testSet.getTestResults().add(new TestResult(StatusValues.OK,
+                (Integer) null));
+        assertNull(testSet.getTestResult(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void testConcurrentFirstReads() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            final TestResult testResult = new TestResult(StatusValues.OK, 1);
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final String key = "thread " + t;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        Map<String, Object> diagnostic = testResult
+                                .getDiagnostic();
+                        List<Comment> comments = testResult.getComments();
+                        synchronized (testResult) {
+                            diagnostic.put(key, key);
+                            comments.add(new Comment(key));
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(threads.length, testResult.getDiagnostic().size());
+            assertEquals(threads.length, testResult.getComments().size());
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        okTestResultSkip.getDiagnostic().put("line", 10);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(okTestResultSkip);
+        out.writeObject(okTestResult);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray()));
+        TestResult copy = (TestResult) in.readObject();
+        assertEquals(Integer.valueOf(3), copy.getTestNumber());
+        assertEquals(DirectiveValues.SKIP, copy.getDirective()
+                .getDirectiveValue());
+        assertEquals(1, copy.getComments().size());
+        assertEquals(10, copy.getDiagnostic().get("line"));
+        TestResult empty = (TestResult) in.readObject();
+        assertFalse(empty.hasComments());
+        empty.addComment(new Comment("added"));
+        assertEquals(1, empty.getComments().size());
+    }
+
 }
@@ -0,0 +1,212 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tap4j.parser.Tap13Parser;
+import org.tap4j.representer.Tap13Representer;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Tests for the binary codec of Test Sets.
+ *
+ * @since 4.2
+ */
+public class TestTestSetCodec {
+
+    private static final String TAP = "TAP version 13\n1..4\n"
+            + "ok 1 - first été\n"
+            + "not ok 2 - second # TODO not yet\n"
+            + "# a comment\n"
+            + "ok 3 - third # SKIP no database\n"
+            + "    1..1\n    ok 1 - inner\n"
+            + "not ok 4 - fourth\n  ---\n  message: failed\n"
+            + "  count: 12\n  big: 12345678901234\n  ratio: 0.5\n"
+            + "  passed: false\n  nothing: ~\n"
+            + "  lines:\n    - one\n    - two\n"
+            + "  data:\n    got: 1\n    expected: 2\n  ...\n"
+            + "Bail out! stop\n";
+
+    private static TestSet parse(String tap) {
+        return new Tap13Parser("UTF-8", true).parseTapStream(tap);
+    }
+
+    private static String represent(TestSet testSet) {
+        return new Tap13Representer().representData(testSet);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        TestSet testSet = parse(TAP);
+        TestSetCodec codec = new TestSetCodec();
+        TestSet copy = codec.decode(codec.encode(testSet));
+        assertEquals(represent(testSet), represent(copy));
+        assertEquals(4, copy.getNumberOfTestResults());
+        assertEquals(1, copy.getNumberOfComments());
+        assertTrue(copy.hasBailOut());
+        assertEquals(1, copy.getTestResult(3).getSubtest()
+                .getNumberOfTestResults());
+        Map<String, Object> diagnostic = copy.getTestResult(4).getDiagnostic();
+        assertEquals(testSet.getTestResult(4).getDiagnostic(), diagnostic);
+        assertEquals(Integer.valueOf(12), diagnostic.get("count"));
+        assertEquals(Long.valueOf(12345678901234L), diagnostic.get("big"));
+        assertEquals(Boolean.FALSE, diagnostic.get("passed"));
+        assertEquals(Arrays.asList("one", "two"), diagnostic.get("lines"));
+        assertTrue(diagnostic.containsKey("nothing"));
+    }
+
+    @Test
+    public void testFactory() throws IOException {
+        TestSetCodec codec = new TestSetCodec(ColumnarTestSet.factory());
+        TestSet copy = codec.decode(codec.encode(parse(TAP)));
+        assertTrue(copy instanceof ColumnarTestSet);
+        assertTrue(copy.getTestResult(3).getSubtest()
+                instanceof ColumnarTestSet);
+        assertEquals(represent(parse(TAP)), represent(copy));
+    }
+
+    @Test
+    public void testStringTable() throws IOException {
+        TestSet testSet = new TestSet();
+        for (int i = 1; i <= 1000; i++) {
+            TestResult testResult = new TestResult(StatusValues.OK, i);
+            testResult.setDescription("- the same rather long description");
+            testResult.getDiagnostic().put("severity", "low");
+            testSet.addTestResult(testResult);
+        }
+        TestSetCodec codec = new TestSetCodec();
+        byte[] bytes = codec.encode(testSet);
+        assertTrue(bytes.length < 16 * 1000);
+        TestSet copy = codec.decode(bytes);
+        List<TestResult> testResults = copy.getTestResults();
+        assertEquals(1000, testResults.size());
+        assertEquals(Integer.valueOf(1000), testResults.get(999)
+                .getTestNumber());
+        assertSame(testResults.get(0).getDescription(), testResults.get(1)
+                .getDescription());
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        TestSetCodec codec = new TestSetCodec();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(parse(TAP), out);
+        codec.write(parse("1..1\nok 1 - alone\n"), out);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(4, codec.read(in).getNumberOfTestResults());
+        assertEquals("- alone", codec.read(in).getTestResult(1)
+                .getDescription());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testDateValue() throws IOException {
+        TestSet testSet = new TestSet();
+        TestResult testResult = new TestResult(StatusValues.OK, 1);
+        Date date = new Date(1234567890L);
+        testResult.getDiagnostic().put("date", date);
+        testSet.addTestResult(testResult);
+        TestSetCodec codec = new TestSetCodec();
+        assertEquals(date, codec.decode(codec.encode(testSet))
+                .getTestResult(1).getDiagnostic().get("date"));
+    }
+
+    @Test
+    public void testNonStringKeys() throws IOException {
+        TestSet testSet = parse("1..1\nok 1\n  ---\n  1: one\n"
+                + "  when: 2001-12-14\n  ...\n");
+        TestSetCodec codec = new TestSetCodec();
+        Map<String, Object> diagnostic = codec.decode(codec.encode(testSet))
+                .getTestResult(1).getDiagnostic();
+        assertEquals(testSet.getTestResult(1).getDiagnostic(), diagnostic);
+        assertEquals("one", ((Map<?, ?>) diagnostic).get(Integer.valueOf(1)));
+    }
+
+    @Test(expected = NotSerializableException.class)
+    public void testUnsupportedValue() throws IOException {
+        TestSet testSet = new TestSet();
+        TestResult testResult = new TestResult(StatusValues.OK, 1);
+        testResult.getDiagnostic().put("set", new HashSet<String>());
+        testSet.addTestResult(testResult);
+        new TestSetCodec().encode(testSet);
+    }
+
+    @Test
+    public void testInvalid() {
+        TestSetCodec codec = new TestSetCodec();
+        byte[] bytes = null;
+        try {
+            bytes = codec.encode(parse(TAP));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+        assertInvalid(codec, "TAP version 13".getBytes());
+        assertInvalid(codec, Arrays.copyOf(bytes, bytes.length - 3));
+        byte[] version = bytes.clone();
+        version[4] = 2;
+        assertInvalid(codec, version);
+        byte[] corrupt = bytes.clone();
+        corrupt[corrupt.length - 1] = 127;
+        assertInvalid(codec, corrupt);
+        TestSet testSet = new TestSet();
+        TestResult testResult = new TestResult(StatusValues.OK, 1);
+        testResult.getDiagnostic().put("big", new BigInteger("12"));
+        testSet.addTestResult(testResult);
+        try {
+            bytes = codec.encode(testSet);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+        // corrupts the digits of the number in the string table
+        int digits = new String(bytes).indexOf("12");
+        bytes[digits] = 'b';
+        assertInvalid(codec, bytes);
+    }
+
+    private static void assertInvalid(TestSetCodec codec, byte[] bytes) {
+        try {
+            codec.decode(bytes);
+            fail("Invalid test set decoded");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+}
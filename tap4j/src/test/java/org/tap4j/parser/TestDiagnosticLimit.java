@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.TestSet;
+import org.tap4j.util.YamlEngine;
+
+/**
+ * Tests for the bounded diagnostic buffer.
+ *
+ * @since 4.2
+ */
+public class TestDiagnosticLimit {
+
+    private static String tap(int lines) {
+        StringBuilder tap = new StringBuilder("1..2\nnot ok 1 - big\n  ---\n"
+                + "  message: failed\n  body: |\n");
+        for (int i = 0; i < lines; i++) {
+            tap.append("    line ").append(i).append('\n');
+        }
+        tap.append("  status: 500\n  ...\nok 2\n");
+        return tap.toString();
+    }
+
+    private static Tap13Parser parser(int limit, DiagnosticOverflow overflow) {
+        Tap13Parser parser = new Tap13Parser();
+        parser.setDiagnosticLimit(limit);
+        parser.setDiagnosticOverflow(overflow);
+        return parser;
+    }
+
+    @Test
+    public void testWithinLimit() {
+        TestSet testSet = parser(10000, DiagnosticOverflow.TRUNCATE)
+                .parseTapStream(tap(10));
+        Map<String, Object> diagnostic = testSet.getTestResult(1)
+                .getDiagnostic();
+        assertEquals(new Tap13Parser().parseTapStream(tap(10))
+                .getTestResult(1).getDiagnostic(), diagnostic);
+    }
+
+    @Test
+    public void testTruncate() {
+        TestSet testSet = parser(400, DiagnosticOverflow.TRUNCATE)
+                .parseTapStream(tap(10000));
+        assertEquals(2, testSet.getNumberOfTestResults());
+        Map<String, Object> diagnostic = testSet.getTestResult(1)
+                .getDiagnostic();
+        assertEquals("failed", diagnostic.get("message"));
+        assertEquals(500, diagnostic.get("status"));
+        String body = (String) diagnostic.get("body");
+        assertTrue(body.startsWith("line 0\nline 1\n"));
+        assertTrue(body.endsWith("line 9999\n"));
+        assertTrue(body.contains(" characters truncated\n"));
+        assertTrue(body.length() < 400);
+    }
+
+    @Test
+    public void testTruncateLongLine() {
+        StringBuilder line = new StringBuilder("  huge: ");
+        for (int i = 0; i < 1000; i++) {
+            line.append('x');
+        }
+        String tap = "1..1\nok 1\n  ---\n  first: 1\n" + line
+                + "\n  last: 2\n  ...\n";
+        Map<String, Object> diagnostic = parser(100,
+                DiagnosticOverflow.TRUNCATE).parseTapStream(tap)
+                .getTestResult(1).getDiagnostic();
+        assertEquals(1, diagnostic.get("first"));
+        assertEquals(2, diagnostic.get("last"));
+        assertFalse(diagnostic.containsKey("huge"));
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        final String tap = tap(10000);
+        final Tap13Parser parser = parser(400, DiagnosticOverflow.SPILL);
+        TestSet testSet = parser.parseWithResult(new ByteArrayInputStream(
+                tap.getBytes("UTF-8"))).getTestSet();
+        TestResult result = testSet.getTestResult(1);
+        LazyDiagnostic diagnostic = (LazyDiagnostic) result.getDiagnostic();
+        assertNull(diagnostic.getText());
+        assertEquals(new Tap13Parser().parseTapStream(tap).getTestResult(1)
+                .getDiagnostic(), diagnostic);
+        assertEquals(2, testSet.getNumberOfTestResults());
+    }
+
+    @Test
+    public void testSpillAcrossCheckpoints() throws Exception {
+        final String tap = tap(1000);
+        final byte[] bytes = tap.getBytes("UTF-8");
+        final Tap13Parser parser = parser(200, DiagnosticOverflow.SPILL);
+        TapCheckpoint checkpoint = null;
+        TapParseResult result;
+        int slices = 0;
+        do {
+            ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+            if (checkpoint != null) {
+                in.skip(checkpoint.getOffset());
+            }
+            result = parser.parse(in, null, checkpoint, 100);
+            checkpoint = result.getCheckpoint();
+            slices++;
+        } while (checkpoint != null);
+        assertTrue(slices > 5);
+        Map<String, Object> diagnostic = result.getTestSet()
+                .getTestResult(1).getDiagnostic();
+        assertEquals(new Tap13Parser().parseTapStream(tap).getTestResult(1)
+                .getDiagnostic(), diagnostic);
+    }
+
+    @Test
+    public void testSpillFileDeletedWhenLoaded() throws Exception {
+        final Memento state = new Memento();
+        final DiagnosticLimiter limiter = new DiagnosticLimiter(10,
+                DiagnosticOverflow.SPILL);
+        limiter.append(state, "  a: 1");
+        limiter.append(state, "  b: 2");
+        File spill = state.getDiagnosticSpill();
+        assertNotNull(spill);
+        assertEquals(0, state.getDiagnosticBuffer().length());
+        assertEquals(spill, limiter.takeSpill(state));
+        assertNull(state.getDiagnosticSpill());
+        LazyDiagnostic diagnostic = new LazyDiagnostic(spill,
+                YamlEngine.getDefault(), false);
+        assertEquals(2, diagnostic.size());
+        assertFalse(spill.exists());
+    }
+
+    @Test
+    public void testSpillFileDeletedWhenCollected() throws Exception {
+        final File spill = File.createTempFile("tap4j-diagnostic", ".yml");
+        new LazyDiagnostic(spill, YamlEngine.getDefault(), false);
+        for (int i = 0; i < 100 && spill.exists(); i++) {
+            System.gc();
+            Thread.sleep(10);
+            SpillCleaner.expunge();
+        }
+        assertFalse(spill.exists());
+    }
+
+    @Test
+    public void testSpillFileDeletedOnAbort() throws Exception {
+        final Memento state = new Memento();
+        final DiagnosticLimiter limiter = new DiagnosticLimiter(10,
+                DiagnosticOverflow.SPILL);
+        limiter.append(state, "  a: 1");
+        limiter.append(state, "  b: 2");
+        File spill = state.getDiagnosticSpill();
+        assertTrue(spill.exists());
+        limiter.discard(state);
+        assertNull(state.getDiagnosticSpill());
+        assertFalse(spill.exists());
+    }
+
+    @Test
+    public void testSpillFileDeletedWhenReaderFails() throws Exception {
+        final String tap = "1..1\nok 1\n  ---\n  a: 1\n  b: 2\n  c: 3\n";
+        final Reader failing = new Reader() {
+            private final Reader delegate = new StringReader(tap);
+
+            @Override
+            public int read(char[] buffer, int off, int len)
+                    throws IOException {
+                int read = delegate.read(buffer, off, len);
+                if (read < 0) {
+                    throw new IOException("connection reset");
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+        };
+        final File tmp = new File(System.getProperty("java.io.tmpdir"));
+        final int before = spills(tmp);
+        TapReader reader = new TapReader(failing,
+                parser(10, DiagnosticOverflow.SPILL));
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            fail("Expected the stream failure to surface");
+        } catch (ParserException e) {
+            assertEquals(before, spills(tmp));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testSpillFileDeletedWhenPushParserClosed() throws Exception {
+        final File tmp = new File(System.getProperty("java.io.tmpdir"));
+        final int before = spills(tmp);
+        final byte[] tap = "1..1\nok 1\n  ---\n  a: 1\n  b: 2\n  c: 3\n"
+                .getBytes("UTF-8");
+        TapPushParser push = new TapPushParser(
+                parser(10, DiagnosticOverflow.SPILL), null);
+        push.feed(tap, 0, tap.length);
+        assertEquals(before + 1, spills(tmp));
+        push.close();
+        assertEquals(before, spills(tmp));
+        assertTrue(push.isFinished());
+    }
+
+    @Test
+    public void testSpillFileDeletedWhenFollowerClosed() throws Exception {
+        final File tmp = new File(System.getProperty("java.io.tmpdir"));
+        final File file = File.createTempFile("tap4j-follow", ".tap");
+        try {
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                out.write("1..1\nok 1\n  ---\n  a: 1\n  b: 2\n  c: 3\n"
+                        .getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            final int before = spills(tmp);
+            TapFollower follower = new TapFollower(file,
+                    parser(10, DiagnosticOverflow.SPILL), null);
+            follower.poll();
+            assertEquals(before + 1, spills(tmp));
+            follower.close();
+            assertEquals(before, spills(tmp));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static int spills(File dir) {
+        final String[] names = dir.list(new FilenameFilter() {
+            public boolean accept(File parent, String name) {
+                return name.startsWith("tap4j-diagnostic");
+            }
+        });
+        return names == null ? 0 : names.length;
+    }
+
+    @Test
+    public void testTruncateFlowSequence() {
+        Tap13Parser parser = parser(20, DiagnosticOverflow.TRUNCATE);
+        parser.setLenient(true);
+        TapParseResult result = parser.parseTapStreamWithResult(
+                "1..1\nok 1\n  ---\n  a: [1,\n    2,\n    3,\n    4,\n"
+                        + "    5]\n  ...\n");
+        assertFalse(result.hasProblems());
+        assertEquals(Arrays.asList(1, 5), result.getTestSet()
+                .getTestResult(1).getDiagnostic().get("a"));
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.tap4j.model.BailOut;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.TestSet;
+
+/**
+ * Tests for the fail-fast parse mode.
+ *
+ * @since 4.2
+ */
+public class TestFailFast {
+
+    private static final String TAP = "1..4\nok 1\nnot ok 2 # TODO later\n"
+            + "not ok 3 - broken\n  ---\n  message: failed\n  ...\nok 4\n";
+
+    private static Tap13Parser failFast(boolean todoIgnored) {
+        Tap13Parser parser = new Tap13Parser("UTF-8", true);
+        parser.setFailFastEnabled(true);
+        parser.setFailFastTodoIgnored(todoIgnored);
+        return parser;
+    }
+
+    @Test
+    public void testStopsAtFirstNotOk() {
+        TapParseResult result = failFast(false).parseTapStreamWithResult(TAP);
+        assertTrue(result.isStopped());
+        assertEquals(2, ((TestResult) result.getStoppedAt()).getTestNumber()
+                .intValue());
+        assertEquals(2, result.getTestSet().getNumberOfTestResults());
+        assertEquals(3, result.getLineNumber());
+        assertEquals(TAP.indexOf("not ok 3"), result.getOffset());
+    }
+
+    @Test
+    public void testTodoIgnored() throws Exception {
+        TapParseResult result = failFast(true).parseWithResult(
+                new ByteArrayInputStream(TAP.getBytes("UTF-8")));
+        assertTrue(result.isStopped());
+        assertEquals(3, ((TestResult) result.getStoppedAt()).getTestNumber()
+                .intValue());
+        assertEquals(3, result.getTestSet().getNumberOfTestResults());
+        assertEquals(4, result.getLineNumber());
+        assertEquals(TAP.indexOf("  ---"), result.getOffset());
+        assertTrue(result.getTestSet().getTestResult(3).getDiagnostic()
+                .isEmpty());
+    }
+
+    @Test
+    public void testStopsAtBailOut() {
+        TestSet testSet = failFast(false).parseTapStream(
+                "1..3\nok 1\nBail out! no database\nok 2\nok 3\n");
+        assertEquals(1, testSet.getNumberOfTestResults());
+        assertEquals(1, testSet.getNumberOfBailOuts());
+        assertEquals("no database", testSet.getBailOuts().get(0)
+                .getReason());
+    }
+
+    @Test
+    public void testStopsInSubtest() {
+        TapParseResult result = failFast(false).parseTapStreamWithResult(
+                "1..2\n    1..2\n    not ok 1 - inner\n    ok 2\nok 1\nok 2\n");
+        assertTrue(result.isStopped());
+        assertEquals("- inner", ((TestResult) result.getStoppedAt())
+                .getDescription());
+        assertEquals(0, result.getTestSet().getNumberOfTestResults());
+        assertEquals(1, result.getTestSet().getPlan().getSubtest()
+                .getNumberOfTestResults());
+    }
+
+    @Test
+    public void testPlanNotRequiredWhenStopped() {
+        TestSet testSet = failFast(false).parseTapStream(
+                "ok 1\nBail out!\n");
+        assertEquals(1, testSet.getNumberOfBailOuts());
+        assertTrue(testSet.getBailOuts().get(0) instanceof BailOut);
+    }
+
+    @Test
+    public void testPassingStream() {
+        TapParseResult result = failFast(false).parseTapStreamWithResult(
+                "1..2\nok 1\nok 2\n");
+        assertFalse(result.isStopped());
+        assertNull(result.getStoppedAt());
+        assertEquals(2, result.getTestSet().getNumberOfTestResults());
+        assertEquals(3, result.getLineNumber());
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        TestSet testSet = new Tap13Parser().parseTapStream(TAP);
+        assertEquals(4, testSet.getNumberOfTestResults());
+    }
+
+    @Test
+    public void testReaderStops() {
+        TapReader reader = new TapReader(new StringReader(TAP),
+                failFast(true));
+        int elements = 0;
+        while (reader.hasNext()) {
+            reader.next();
+            elements++;
+        }
+        assertEquals(4, elements);
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tap4j.model.TestSet;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Tests for the flat YAMLish diagnostics reader.
+ *
+ * @since 4.2
+ */
+public class TestFlatYamlReader {
+
+    @Test
+    public void testJUnitDiagnostic() {
+        String text = "  message: 'testFail(org.tap4j.Example): expected'\n" +
+                "  severity: High\n" +
+                "  source: org.tap4j.Example#testFail\n" +
+                "  datetime: 2012-05-14T21:18:34\n" +
+                "  file: Example.java\n" +
+                "  line: 42\n" +
+                "  name: testFail\n" +
+                "  error: java.lang.AssertionError\n" +
+                "  backtrace: |\n" +
+                "    java.lang.AssertionError: expected\n" +
+                "    \tat org.tap4j.Example.testFail(Example.java:42)\n" +
+                "\n" +
+                "    \tat java.lang.reflect.Method.invoke(Method.java:597)\n" +
+                "\n" +
+                "  skipped: false\n";
+        Map<String, Object> diagnostic = assertSameAsSnakeYaml(text);
+        assertTrue(diagnostic.get("datetime") instanceof Date);
+        assertEquals(Integer.valueOf(42), diagnostic.get("line"));
+        assertEquals(Boolean.FALSE, diagnostic.get("skipped"));
+    }
+
+    @Test
+    public void testScalars() {
+        assertSameAsSnakeYaml("a: ~\nb: 0x1F\nc: 1.5e3\nd: \"x y\"\n"
+                + "e: 'it''s'\nf: a#b\ng: -1\nh: été\n");
+        assertSameAsSnakeYaml("text: |-\n  one\n   two\n\n\nnext: 1\n");
+    }
+
+    @Test
+    public void testFallback() {
+        String[] texts = new String[] {
+            "",
+            "list: [1, 2]\n",
+            "map: {a: 1}\n",
+            "anchor: &a x\n",
+            "nested:\n  a: 1\n",
+            "items:\n- 1\n",
+            "comment: text # comment\n",
+            "tagged: !!str 1\n",
+            "folded: >\n  text\n",
+            "keep: |+\n  text\n",
+            "escaped: \"a\\tb\"\n",
+            "multi: plain\n  continued\n",
+            "on: boolean key\n",
+            "emoji: 😀\n",
+            "- sequence\n",
+        };
+        for (String text : texts) {
+            assertNull(text, FlatYamlReader.read(text));
+        }
+    }
+
+    @Test
+    public void testParserOption() {
+        String tap = "1..1\n" +
+                "not ok 1\n" +
+                "  ---\n" +
+                "  message: failed\n" +
+                "  got: [1, 2]\n" +
+                "  ...\n";
+        Tap13Parser parser = new Tap13Parser();
+        parser.setFlatDiagnosticsEnabled(true);
+        TestSet testSet = parser.parseTapStream(tap);
+        assertEquals(new Tap13Parser().parseTapStream(tap).getTestResult(1)
+                .getDiagnostic(), testSet.getTestResult(1).getDiagnostic());
+    }
+
+    /**
+     * @param text YAMLish text
+     * @return the diagnostic read
+     */
+    private static Map<String, Object> assertSameAsSnakeYaml(String text) {
+        Map<String, Object> diagnostic = FlatYamlReader.read(text);
+        assertNotNull(text, diagnostic);
+        assertEquals(new Yaml().load(text), diagnostic);
+        return diagnostic;
+    }
+
+}
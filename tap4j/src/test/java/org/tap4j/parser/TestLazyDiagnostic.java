@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.LinkedHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.TestSet;
+
+/**
+ * Tests for the diagnostics loaded only when read.
+ *
+ * @since 4.2
+ */
+public class TestLazyDiagnostic {
+
+    private Tap13Parser parser;
+
+    @Before
+    public void setUp() {
+        parser = new Tap13Parser();
+        parser.setLazyDiagnosticsEnabled(true);
+    }
+
+    @Test
+    public void testLoadedWhenRead() {
+        String tap = "1..2\n" +
+                "ok 1\n" +
+                "not ok 2\n" +
+                "  ---\n" +
+                "  message: failed\n" +
+                "  got: [1, 2]\n" +
+                "  ...\n";
+        TestSet testSet = parser.parseTapStream(tap);
+        LazyDiagnostic diagnostic = (LazyDiagnostic) testSet.getTestResult(2)
+                .getDiagnostic();
+        assertNotNull(diagnostic.getText());
+        assertEquals("failed", diagnostic.get("message"));
+        assertNull(diagnostic.getText());
+        assertEquals(new Tap13Parser().parseTapStream(tap).getTestResult(2)
+                .getDiagnostic(), diagnostic);
+        diagnostic.put("extra", "value");
+        assertEquals(3, diagnostic.size());
+        assertTrue(testSet.getTestResult(1).getDiagnostic().isEmpty());
+    }
+
+    @Test(expected = ParserException.class)
+    public void testInvalidYamlReportedWhenRead() {
+        String tap = "1..1\n" +
+                "not ok 1\n" +
+                "  ---\n" +
+                "  - [unbalanced\n" +
+                "  ...\n";
+        TestResult result = parser.parseTapStream(tap).getTestResult(1);
+        result.getDiagnostic().size();
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        String tap = "1..1\n" +
+                "not ok 1\n" +
+                "  ---\n" +
+                "  message: failed\n" +
+                "  ...\n";
+        TestResult result = parser.parseTapStream(tap).getTestResult(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(result);
+        out.close();
+        TestResult copy = (TestResult) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertTrue(copy.getDiagnostic() instanceof LinkedHashMap);
+        assertEquals("failed", copy.getDiagnostic().get("message"));
+    }
+
+}
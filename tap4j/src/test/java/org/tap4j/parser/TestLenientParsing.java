@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import org.junit.Test;
+import org.tap4j.model.TestSet;
+
+/**
+ * Tests for the lenient parse mode.
+ *
+ * @since 4.2
+ */
+public class TestLenientParsing {
+
+    private static Tap13Parser lenient() {
+        Tap13Parser parser = new Tap13Parser("UTF-8", true);
+        parser.setLenient(true);
+        return parser;
+    }
+
+    @Test
+    public void testDuplicatedPlan() {
+        String tap = "1..3\nok 1\n1..2\nok 2\nok 3\n";
+        TapParseResult result = lenient().parseTapStreamWithResult(tap);
+        List<TapProblem> problems = result.getProblems();
+        assertEquals(1, problems.size());
+        assertEquals(3, problems.get(0).getLineNumber());
+        assertEquals(tap.indexOf("1..2"), problems.get(0).getOffset());
+        assertEquals("Duplicated TAP Plan found.",
+                problems.get(0).getMessage());
+        TestSet testSet = result.getTestSet();
+        assertEquals(3, testSet.getNumberOfTestResults());
+        assertEquals(3, testSet.getPlan().getLastTestNumber().intValue());
+    }
+
+    @Test
+    public void testNumberOutOfRange() {
+        String tap = "1..2\nok 1\nok 99999999999\nok 2\n";
+        TapParseResult result = lenient().parseTapStreamWithResult(tap);
+        assertEquals(1, result.getProblems().size());
+        TapProblem problem = result.getProblems().get(0);
+        assertEquals(3, problem.getLineNumber());
+        assertTrue(problem.getMessage().contains("99999999999"));
+        assertEquals(2, result.getTestSet().getNumberOfTestResults());
+
+        result = lenient().parseTapStreamWithResult("1..99999999999\nok 1\n");
+        assertEquals(1, result.getProblems().get(0).getLineNumber());
+        assertEquals(1, result.getTestSet().getNumberOfTestResults());
+    }
+
+    @Test(expected = ParserException.class)
+    public void testNumberOutOfRangeStrict() {
+        new Tap13Parser().parseTapStream("1..1\nok 99999999999\n");
+    }
+
+    @Test(expected = ParserException.class)
+    public void testStrictByDefault() {
+        new Tap13Parser().parseTapStream("1..3\nok 1\n1..2\nok 2\nok 3\n");
+    }
+
+    @Test
+    public void testInvalidYaml() throws Exception {
+        String tap = "1..2\nok 1\n  ---\n  a: [1\n  ...\nok 2\n";
+        TapParseResult result = lenient().parseWithResult(
+                new ByteArrayInputStream(tap.getBytes("UTF-8")));
+        assertEquals(1, result.getProblems().size());
+        TapProblem problem = result.getProblems().get(0);
+        assertEquals(5, problem.getLineNumber());
+        assertEquals(tap.indexOf("  ..."), problem.getOffset());
+        assertTrue(problem.getMessage().startsWith("Error parsing YAML"));
+        assertFalse(problem.getMessage().contains("a: [1"));
+        assertEquals(2, result.getTestSet().getNumberOfTestResults());
+        assertTrue(result.getTestSet().getTestResult(1).getDiagnostic()
+                .isEmpty());
+    }
+
+    @Test
+    public void testUnterminatedYaml() {
+        String tap = "  1..2\n  ok 1\n    ---\n    a: 1\nok 2\n";
+        TapParseResult result = lenient().parseTapStreamWithResult(tap);
+        assertEquals(1, result.getProblems().size());
+        assertEquals("Invalid indentation.",
+                result.getProblems().get(0).getMessage());
+        assertEquals(5, result.getProblems().get(0).getLineNumber());
+        assertEquals(2, result.getTestSet().getNumberOfTestResults());
+    }
+
+    @Test
+    public void testHeaderAndMissingPlan() {
+        Tap13Parser parser = new Tap13Parser("UTF-8", false, true);
+        parser.setLenient(true);
+        TapParseResult result = parser.parseTapStreamWithResult(
+                "ok 1\nTAP version 13\nok 2\n");
+        assertEquals(2, result.getProblems().size());
+        assertEquals(2, result.getProblems().get(0).getLineNumber());
+        assertEquals("Missing TAP Plan.",
+                result.getProblems().get(1).getMessage());
+        assertEquals(2, result.getTestSet().getNumberOfTestResults());
+    }
+
+    @Test
+    public void testOptionsReadWhenStreamStarts() {
+        Tap13Parser parser = new Tap13Parser();
+        TapPushParser started = new TapPushParser(parser, null);
+        parser.setLenient(true);
+        byte[] tap = "1..2\nok 1\n1..1\nok 2\n".getBytes();
+        try {
+            started.feed(tap, 0, tap.length);
+            started.finish();
+            fail("Expected the options of a started stream to be kept");
+        } catch (ParserException e) {
+            // strict, as when the stream started
+        }
+        TapPushParser restarted = new TapPushParser(parser, null);
+        restarted.feed(tap, 0, tap.length);
+        restarted.finish();
+    }
+
+    @Test
+    public void testNoProblems() {
+        TapParseResult result = lenient().parseTapStreamWithResult(
+                "1..1\nok 1\n");
+        assertFalse(result.hasProblems());
+        assertTrue(result.getProblems().isEmpty());
+    }
+
+}
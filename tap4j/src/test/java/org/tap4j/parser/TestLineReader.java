@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tap4j.representer.Tap13Representer;
+
+/**
+ * Tests for the line readers.
+ *
+ * @since 4.2
+ */
+public class TestLineReader {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLineTerminators() throws IOException {
+        final String tap = "1..3\nok 1\r\nok 2\rok 3\r\n\r\n# end";
+        final List<String> expected = Arrays.asList("1..3", "ok 1", "ok 2",
+                "ok 3", "", "# end");
+        assertEquals(expected, readAll(bytes(tap, "UTF-8", false), "UTF-8"));
+        assertEquals(expected, readAll(bytes(tap, "UTF-8", true), "UTF-8"));
+        assertEquals(expected, readAll(new CharLineReader(new StringReader(tap))));
+        assertEquals(expected, readAll(new SequenceLineReader(tap)));
+        assertEquals(expected, readAll(new SequenceLineReader(
+                new StringBuilder(tap))));
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        assertEquals(0, readAll(bytes("", "UTF-8", false), "UTF-8").size());
+        assertEquals(Arrays.asList(""),
+                readAll(bytes("\r\n", "UTF-8", true), "UTF-8"));
+    }
+
+    @Test
+    public void testEncodings() throws IOException {
+        final String tap = "ok 1 - café € 😀\nnot ok 2 - ü";
+        final List<String> expected = Arrays.asList(
+                "ok 1 - café € 😀", "not ok 2 - ü");
+        assertEquals(expected, readAll(bytes(tap, "UTF-8", true), "UTF-8"));
+        assertEquals(expected, readAll(bytes(tap, "UTF-16", false), "UTF-16"));
+        assertEquals(Arrays.asList("ok 1 - éÿ"), readAll(
+                bytes("ok 1 - éÿ", "ISO-8859-1", false),
+                "ISO-8859-1"));
+    }
+
+    @Test
+    public void testMalformedInput() throws IOException {
+        final byte[] bytes = new byte[] {'o', 'k', ' ', (byte) 0xC3, ' ',
+                (byte) 0xE2, (byte) 0x82, '\n', (byte) 0xFF, (byte) 0x80 };
+        final List<String> lines = readAll(new ByteArrayInputStream(bytes),
+                "UTF-8");
+        assertEquals(Arrays.asList("ok � ��", "��"),
+                lines);
+        assertEquals(Arrays.asList("ok �"), readAll(
+                new ByteArrayInputStream(new byte[] {'o', 'k', ' ',
+                        (byte) 0xC3 }), "US-ASCII"));
+    }
+
+    @Test
+    public void testLongLines() throws IOException {
+        final StringBuilder tap = new StringBuilder();
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            final StringBuilder line = new StringBuilder("ok - ");
+            for (int j = 0; j < LineReader.BUFFER_SIZE / 3 * i; j++) {
+                line.append(j % 2 == 0 ? 'a' : 'é');
+            }
+            expected.add(line.toString());
+            tap.append(line).append('\n');
+        }
+        assertEquals(expected,
+                readAll(bytes(tap.toString(), "UTF-8", false), "UTF-8"));
+        assertEquals(expected, readAll(new CharLineReader(new StringReader(
+                tap.toString()))));
+    }
+
+    @Test
+    public void testPosition() throws IOException {
+        final LineReader reader = LineReader.open(
+                bytes("ok 1 - é\r\nok 2\n", "UTF-8", false), "UTF-8");
+        assertEquals(0L, reader.getPosition());
+        assertEquals("ok 1 - é", reader.readLine().toString());
+        assertEquals(10L, reader.getPosition());
+        assertEquals("ok 2", reader.readLine().toString());
+        assertEquals(16L, reader.getPosition());
+        assertNull(reader.readLine());
+        assertEquals(16L, reader.getPosition());
+    }
+
+    @Test
+    public void testParser() {
+        final Tap13Parser parser = new Tap13Parser();
+        assertTrue(parser.parseTapStream("1..1\r  ok 1\r  ---\r  "
+                + "message: é\r  ...\r").getTestResult(1)
+                .getDiagnostic().containsValue("é"));
+    }
+
+    @Test
+    public void testParserOverloads() throws IOException {
+        final String tap = "1..2\r\nok 1 - café\r\nnot ok 2\r\n";
+        final StringBuilder sequence = new StringBuilder(tap);
+        assertEquals("- café", new Tap13Parser().parseTapStream(sequence)
+                .getTestResult(1).getDescription());
+        assertEquals(2, new Tap13Parser().parseTapStream(
+                new StringReader(tap)).getNumberOfTestResults());
+        assertEquals("- café", new Tap13Parser().parseTapStream(
+                Channels.newChannel(bytes(tap, "UTF-8", true)))
+                .getTestResult(1).getDescription());
+    }
+
+    @Test
+    public void testMappedWindows() throws IOException {
+        final StringBuilder tap = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            tap.append(i % 3 == 0 ? "ok - é " : "ok - ").append(i)
+                    .append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        tap.append("not ok - a line longer than a window");
+        final File file = write(tap.toString());
+        for (String encoding : Arrays.asList("UTF-8", "ISO-8859-1")) {
+            final FileInputStream fis = new FileInputStream(file);
+            assertEquals(
+                    readAll(bytes(tap.toString(), "UTF-8", false), encoding),
+                    readAll(new MappedLineReader(fis.getChannel(),
+                            Charset.forName(encoding), 16)));
+        }
+    }
+
+    @Test
+    public void testMappedParser() throws IOException {
+        final String tap = "TAP version 13\r\n1..2\r\nok 1 - café\r\n"
+                + "  ---\r\n  message: ü€\r\n  ...\r\n# done\r\n"
+                + "not ok 2 # SKIP no\r\n";
+        final File file = write(tap);
+        final Tap13Parser parser = new Tap13Parser();
+        final String streamed = new Tap13Representer().representData(
+                parser.parseFile(file));
+        parser.setMemoryMappingEnabled(true);
+        assertEquals(streamed, new Tap13Representer().representData(
+                parser.parseFile(file)));
+        final Tap13Parser planless = new Tap13Parser("UTF-8", false, false);
+        planless.setMemoryMappingEnabled(true);
+        assertEquals(0, planless.parseFile(folder.newFile())
+                .getNumberOfTestResults());
+    }
+
+    /**
+     * @param text text
+     * @return UTF-8 file with the text
+     * @throws IOException if an I/O error occurs
+     */
+    private File write(String text) throws IOException {
+        final File file = folder.newFile();
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(text.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+
+    /**
+     * @param reader line reader
+     * @return the lines read
+     * @throws IOException if an I/O error occurs
+     */
+    private static List<String> readAll(LineReader reader) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        CharSequence line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line.toString());
+        }
+        reader.close();
+        return lines;
+    }
+
+    /**
+     * @param stream byte stream
+     * @param encoding encoding
+     * @return the lines read
+     * @throws IOException if an I/O error occurs
+     */
+    private static List<String> readAll(InputStream stream, String encoding)
+            throws IOException {
+        return readAll(LineReader.open(stream, encoding));
+    }
+
+    /**
+     * @param text text
+     * @param encoding encoding
+     * @param trickle whether the stream returns one byte at a time
+     * @return the encoded text
+     * @throws IOException if the encoding is not supported
+     */
+    private static InputStream bytes(String text, String encoding,
+            boolean trickle) throws IOException {
+        final InputStream stream = new ByteArrayInputStream(
+                text.getBytes(encoding));
+        if (!trickle) {
+            return stream;
+        }
+        return new FilterInputStream(stream) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+}
@@ -49,7 +49,6 @@ public class TestMemento {
     public void testMemento() {
         assertTrue(memento.isFirstLine());
         assertFalse(memento.isPlanBeforeTestResult());
-        assertNull(memento.getLastLine());
         assertNull(memento.getLastParsedElement());
         assertEquals(-1, memento.getBaseIndentationLevel());
         assertEquals(-1, memento.getCurrentIndentationLevel());
@@ -62,7 +61,6 @@ public class TestMemento {
         boolean currentlyInSubtest = true;
         boolean currentlyInYaml = true;
         boolean firstLine = false;
-        String lastLine = "nani";
         TapElement lastParsedElement = new Text("nani nani");
         boolean planBeforeTestResult = true;
         
@@ -71,13 +69,11 @@ public class TestMemento {
         memento.setCurrentlyInSubtest(currentlyInSubtest);
         memento.setCurrentlyInYaml(currentlyInYaml);
         memento.setFirstLine(firstLine);
-        memento.setLastLine(lastLine);
         memento.setLastParsedElement(lastParsedElement);
         memento.setPlanBeforeTestResult(planBeforeTestResult);
         
         assertEquals(firstLine, memento.isFirstLine());
         assertEquals(planBeforeTestResult, memento.isPlanBeforeTestResult());
-        assertEquals(lastLine, memento.getLastLine());
         assertEquals(lastParsedElement, memento.getLastParsedElement());
         assertEquals(baseIndentationLevel, memento.getBaseIndentationLevel());
         assertEquals(currentIndentationLevel, memento.getCurrentIndentationLevel());
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.TestSet;
+
+/**
+ * Tests for one parser shared by concurrent parses.
+ *
+ * @since 4.2
+ */
+public class TestSharedParser {
+
+    private static String tap(int tests) {
+        StringBuilder tap = new StringBuilder("1..").append(tests)
+                .append('\n');
+        for (int i = 1; i <= tests; i++) {
+            tap.append("ok ").append(i).append(" - test ").append(i)
+                    .append("\n  ---\n  number: ").append(i)
+                    .append("\n  ...\n");
+            if (i % 10 == 0) {
+                tap.append("    1..1\n    ok 1 - subtest\n");
+            }
+        }
+        return tap.toString();
+    }
+
+    @Test
+    public void testConcurrentParses() throws Exception {
+        final Tap13Parser parser = new Tap13Parser("UTF-8", true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<TestSet>> futures = new ArrayList<Future<TestSet>>();
+            for (int i = 0; i < 64; i++) {
+                final String tap = tap(20 + i);
+                futures.add(executor.submit(new Callable<TestSet>() {
+                    public TestSet call() {
+                        return parser.parseTapStream(tap);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                TestSet testSet = futures.get(i).get();
+                assertEquals(20 + i, testSet.getNumberOfTestResults());
+                TestResult last = testSet.getTestResult(20 + i);
+                assertEquals(20 + i, last.getDiagnostic().get("number"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParseFromHandler() {
+        final Tap13Parser parser = new Tap13Parser();
+        final List<Integer> inner = new ArrayList<Integer>();
+        parser.parseTapStream("1..2\nok 1\nok 2\n",
+                new DefaultTapEventHandler() {
+                    @Override
+                    public void onTestResult(TestResult testResult) {
+                        inner.add(parser.parseTapStream("1..3\nok\nok\nok\n")
+                                .getNumberOfTestResults());
+                    }
+                });
+        assertEquals(2, inner.size());
+        assertEquals(Integer.valueOf(3), inner.get(1));
+    }
+
+    @Test
+    public void testSharedByReaders() {
+        Tap13Parser parser = new Tap13Parser();
+        TapReader first = new TapReader(new StringReader(
+                "1..1\nok 1\n"), parser);
+        TapReader second = new TapReader(new StringReader(
+                "1..2\nok 1\nnot ok 2\n"), parser);
+        int elements = 0;
+        while (first.hasNext() || second.hasNext()) {
+            if (first.hasNext()) {
+                first.next();
+                elements++;
+            }
+            if (second.hasNext()) {
+                second.next();
+                elements++;
+            }
+        }
+        assertEquals(5, elements);
+    }
+
+}
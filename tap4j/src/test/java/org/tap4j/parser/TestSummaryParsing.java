@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.tap4j.model.TapSummary;
+import org.tap4j.model.TestSet;
+
+/**
+ * Tests for counting TAP Streams without building the model.
+ *
+ * @since 4.2
+ */
+public class TestSummaryParsing {
+
+    @Test
+    public void testCounts() {
+        TapSummary summary = new Tap13Parser("UTF-8", true)
+                .summarizeTapStream("TAP version 13\n1..4\n"
+                        + "ok 1 - first # SKIP no database\n"
+                        + "  ---\n  message: 'not ok 9'\n  ...\n"
+                        + "    1..1\n    not ok 1 - inner\n"
+                        + "not ok 2 - second # TODO later\n"
+                        + "# not ok 3\n"
+                        + "ok 3\n"
+                        + "Bail out! stop\n");
+        assertEquals(1, summary.getNumberOfTestSets());
+        assertEquals(4, summary.getPlanned());
+        assertEquals(2, summary.getOk());
+        assertEquals(1, summary.getNotOk());
+        assertEquals(1, summary.getSkip());
+        assertEquals(1, summary.getTodo());
+        assertEquals(1, summary.getBailOuts());
+        assertFalse(summary.isPlanMatched());
+        assertTrue(summary.hasBailOut());
+    }
+
+    @Test
+    public void testZeroPaddedNumbers() {
+        Tap13Parser parser = new Tap13Parser();
+        for (String tap : new String[] {"1..1\nok 0000000001 foo\n",
+                "1..00000000001\nok 1\n" }) {
+            TapSummary expected = new TapSummary();
+            expected.add(parser.parseTapStream(tap));
+            TapSummary summary = parser.summarizeTapStream(tap);
+            assertEquals(1, summary.getPlanned());
+            assertEquals(expected.getPlanned(), summary.getPlanned());
+            assertEquals(expected.getOk(), summary.getOk());
+            assertTrue(summary.isPlanMatched());
+        }
+    }
+
+    @Test
+    public void testReversedPlan() {
+        Tap13Parser parser = new Tap13Parser();
+        for (String tap : new String[] {"2..0\n", "2..0\nok\n",
+                "ok 1\n2..0\nok\n" }) {
+            TapSummary expected = new TapSummary();
+            expected.add(parser.parseTapStream(tap));
+            TapSummary summary = parser.summarizeTapStream(tap);
+            assertEquals(expected.getPlanned(), summary.getPlanned());
+            assertEquals(expected.getOk(), summary.getOk());
+            assertEquals(expected.getPlanMismatches(),
+                    summary.getPlanMismatches());
+        }
+        assertEquals(0, parser.summarizeTapStream("2..0\n").getPlanned());
+        assertTrue(parser.summarizeTapStream("2..0\n").isPlanMatched());
+    }
+
+    @Test(expected = ParserException.class)
+    public void testReversedPlanDuplicated() {
+        new Tap13Parser().summarizeTapStream("2..0\n1..1\nok 1\n");
+    }
+
+    @Test(expected = ParserException.class)
+    public void testNumberOutOfRange() {
+        new Tap13Parser().summarizeTapStream("1..1\nok 99999999999\n");
+    }
+
+    @Test
+    public void testSameAsModel() {
+        List<File> files = new ArrayList<File>();
+        collect(new File("src/test/resources"), files);
+        assertTrue(files.size() > 10);
+        for (File file : files) {
+            for (boolean subtests : new boolean[] {true, false }) {
+                Tap13Parser parser = new Tap13Parser("UTF-8", subtests, false);
+                TestSet testSet;
+                try {
+                    testSet = parser.parseFile(file);
+                } catch (ParserException e) {
+                    continue;
+                }
+                TapSummary expected = new TapSummary();
+                expected.add(testSet);
+                TapSummary summary = parser.summarizeFile(file);
+                String name = file + " " + subtests;
+                assertEquals(name, expected.getPlanned(), summary.getPlanned());
+                assertEquals(name, expected.getOk(), summary.getOk());
+                assertEquals(name, expected.getNotOk(), summary.getNotOk());
+                assertEquals(name, expected.getSkip(), summary.getSkip());
+                assertEquals(name, expected.getTodo(), summary.getTodo());
+                assertEquals(name, expected.getBailOuts(),
+                        summary.getBailOuts());
+                assertEquals(name, expected.getPlanMismatches(),
+                        summary.getPlanMismatches());
+            }
+        }
+    }
+
+    private static void collect(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else if (child.getName().endsWith(".tap")) {
+                files.add(child);
+            }
+        }
+    }
+
+}
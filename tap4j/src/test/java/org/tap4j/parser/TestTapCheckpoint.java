@@ -0,0 +1,335 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tap4j.model.Plan;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.TestSet;
+import org.tap4j.util.DirectiveValues;
+
+/**
+ * Tests for resuming parsing from checkpoints.
+ *
+ * @since 4.2
+ */
+public class TestTapCheckpoint {
+
+    private static final String TAP = "1..3\r\n"
+            + "    1..2\r\n"
+            + "    ok 1 - inner\r\n"
+            + "    not ok 2 - inner\r\n"
+            + "not ok 1 - first\r"
+            + "  ---\r\n"
+            + "  message: 'über'\r\n"
+            + "  severity: fail\r\n"
+            + "  ...\r\n"
+            + "\r\n"
+            + "ok 2 - second\n"
+            + "ok 3 - third # SKIP none\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResumeEveryLine() throws Exception {
+        File file = write(TAP);
+        TestSet expected = new Tap13Parser("UTF-8", true).parseFile(file);
+
+        TapCheckpoint checkpoint = null;
+        TapParseResult result = null;
+        int slices = 0;
+        do {
+            Tap13Parser parser = new Tap13Parser("UTF-8", true);
+            result = parser.parseFile(file, null, checkpoint, 1);
+            checkpoint = result.getCheckpoint();
+            slices++;
+        } while (checkpoint != null);
+        assertEquals(12, slices);
+        assertEquals(12, result.getLineNumber());
+
+        TestSet testSet = result.getTestSet();
+        assertEquals(expected.getNumberOfTestResults(),
+                testSet.getNumberOfTestResults());
+        assertEquals(Integer.valueOf(3), testSet.getPlan().getLastTestNumber());
+        TestResult first = testSet.getTestResult(1);
+        assertEquals("über", first.getDiagnostic().get("message"));
+        assertEquals("fail", first.getDiagnostic().get("severity"));
+        assertNotNull(expected.getPlan().getSubtest());
+        TestSet subtest = testSet.getPlan().getSubtest();
+        assertNotNull(subtest);
+        assertEquals(2, subtest.getNumberOfTestResults());
+        assertEquals(DirectiveValues.SKIP, testSet.getTestResult(3)
+                .getDirective().getDirectiveValue());
+    }
+
+    @Test
+    public void testResumeSerializedEveryLine() throws Exception {
+        File file = write(TAP);
+        Recorder expected = new Recorder();
+        new Tap13Parser("UTF-8", true).parseFile(file, expected, null,
+                Integer.MAX_VALUE);
+
+        Recorder recorder = new Recorder();
+        TapCheckpoint checkpoint = null;
+        do {
+            Tap13Parser parser = new Tap13Parser("UTF-8", true);
+            checkpoint = copy(parser.parseFile(file, recorder, checkpoint, 1)
+                    .getCheckpoint());
+        } while (checkpoint != null);
+        assertEquals(expected.events, recorder.events);
+        assertEquals("fail", recorder.diagnostics.get(0).get("severity"));
+    }
+
+    @Test
+    public void testCompactCheckpoint() throws Exception {
+        StringBuilder tap = new StringBuilder("TAP version 13\n1..2000\n");
+        for (int i = 1; i <= 2000; i++) {
+            tap.append("ok ").append(i).append(" - test ").append(i)
+                    .append('\n');
+        }
+        byte[] bytes = tap.toString().getBytes("UTF-8");
+        Tap13Parser parser = new Tap13Parser();
+        TapCheckpoint checkpoint = null;
+        List<Integer> sizes = new ArrayList<Integer>();
+        TapParseResult result;
+        do {
+            ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+            if (checkpoint != null) {
+                in.skip(checkpoint.getOffset());
+            }
+            result = parser.parse(in, null, checkpoint, 100);
+            checkpoint = result.getCheckpoint();
+            if (checkpoint != null) {
+                sizes.add(checkpoint.toByteArray().length);
+            }
+        } while (checkpoint != null);
+        assertEquals(2000, result.getTestSet().getNumberOfTestResults());
+        assertTrue(sizes.get(0) < 2000);
+        assertTrue(sizes.get(sizes.size() - 1) - sizes.get(0) < 16);
+
+        TapCheckpoint copy = copy(parser.parse(
+                new ByteArrayInputStream(bytes), null, null, 1000)
+                .getCheckpoint());
+        ByteArrayInputStream rest = new ByteArrayInputStream(bytes);
+        rest.skip(copy.getOffset());
+        TestSet testSet = parser.parse(rest, null, copy, Integer.MAX_VALUE)
+                .getTestSet();
+        assertEquals(Integer.valueOf(2000), testSet.getPlan()
+                .getLastTestNumber());
+        assertEquals(1002, testSet.getNumberOfTestResults());
+        assertEquals("- test 999", testSet.getTestResults().get(0)
+                .getDescription());
+    }
+
+    @Test
+    public void testInterleavedStreams() throws IOException {
+        byte[] first = "1..2\nok 1\nok 2\n".getBytes("UTF-8");
+        byte[] second = "1..3\nnot ok 1\nnot ok 2\nnot ok 3\n"
+                .getBytes("UTF-8");
+        Tap13Parser parser = new Tap13Parser();
+        TapCheckpoint a = parser.parse(new ByteArrayInputStream(first), null,
+                null, 2).getCheckpoint();
+        TapCheckpoint b = parser.parse(new ByteArrayInputStream(second),
+                null, null, 2).getCheckpoint();
+        TestSet testSet = parser.parse(rest(first, a), null, a, 10)
+                .getTestSet();
+        assertEquals(2, testSet.getNumberOfTestResults());
+        assertTrue(testSet.containsOk());
+        testSet = parser.parse(rest(second, b), null, b, 10).getTestSet();
+        assertEquals(3, testSet.getNumberOfTestResults());
+        assertTrue(testSet.containsNotOk());
+    }
+
+    @Test
+    public void testCheckpointOffset() throws IOException {
+        byte[] bytes = TAP.getBytes("UTF-8");
+        Tap13Parser parser = new Tap13Parser("UTF-8", true);
+        TapParseResult result = parser.parse(
+                new ByteArrayInputStream(bytes), null, null, 7);
+        assertNull(result.getTestSet());
+        TapCheckpoint checkpoint = result.getCheckpoint();
+        assertEquals(7, checkpoint.getLineNumber());
+        assertEquals(TAP.substring(0, TAP.indexOf("  severity"))
+                .getBytes("UTF-8").length, checkpoint.getOffset());
+
+        parser = new Tap13Parser("UTF-8", true);
+        result = parser.parse(rest(bytes, checkpoint), null, checkpoint,
+                Integer.MAX_VALUE);
+        assertNull(result.getCheckpoint());
+        assertEquals(3, result.getTestSet().getNumberOfTestResults());
+        assertEquals("fail", result.getTestSet().getTestResult(1)
+                .getDiagnostic().get("severity"));
+    }
+
+    @Test
+    public void testSkipLineFeed() throws IOException {
+        byte[] bytes = "1..2\rok 1\r\nok 2\n".getBytes("UTF-8");
+        Tap13Parser parser = new Tap13Parser();
+        TapCheckpoint checkpoint = parser.parse(
+                new ByteArrayInputStream(bytes), null, null, 2)
+                .getCheckpoint();
+        assertEquals(11, checkpoint.getOffset());
+
+        parser = new Tap13Parser();
+        TapParseResult result = parser.parse(rest(bytes, checkpoint), null,
+                checkpoint, 2);
+        assertNull(result.getCheckpoint());
+        assertEquals(3, result.getLineNumber());
+        assertEquals(2, result.getTestSet().getNumberOfTestResults());
+    }
+
+    @Test
+    public void testResumeInsideSubtest() throws IOException {
+        String tap = "1..2\nok 1 - parent\n    1..3\n    ok 1 - a\n"
+                + "    ok 2 - b\n    ok 3 - c\nok 2 - after\n";
+        byte[] bytes = tap.getBytes("UTF-8");
+        Tap13Parser parser = new Tap13Parser("UTF-8", true);
+        TapCheckpoint checkpoint = copy(parser.parse(
+                new ByteArrayInputStream(bytes), null, null, 4)
+                .getCheckpoint());
+        TestSet testSet = parser.parse(rest(bytes, checkpoint), null,
+                checkpoint, Integer.MAX_VALUE).getTestSet();
+        assertEquals(2, testSet.getNumberOfTestResults());
+        TestResult parent = testSet.getTestResult(1);
+        assertEquals("- parent", parent.getDescription());
+        TestSet subtest = parent.getSubtest();
+        assertNotNull(subtest);
+        assertEquals(Integer.valueOf(3), subtest.getPlan()
+                .getLastTestNumber());
+        assertEquals(2, subtest.getNumberOfTestResults());
+        assertEquals("- c", subtest.getTestResult(3).getDescription());
+        assertEquals("- after", testSet.getTestResult(2).getDescription());
+    }
+
+    @Test
+    public void testInvalidCheckpoint() throws IOException {
+        byte[] bytes = TAP.getBytes("UTF-8");
+        byte[] encoded = new Tap13Parser("UTF-8", true).parse(
+                new ByteArrayInputStream(bytes), null, null, 3)
+                .getCheckpoint().toByteArray();
+        try {
+            TapCheckpoint.fromByteArray(Arrays.copyOf(encoded,
+                    encoded.length - 1));
+            fail("Expected a truncated checkpoint to be rejected");
+        } catch (ParserException e) {
+            assertTrue(e.getMessage().startsWith("Invalid TAP checkpoint"));
+        }
+        encoded[22] = 99;
+        TapCheckpoint corrupt = TapCheckpoint.fromByteArray(encoded);
+        try {
+            new Tap13Parser("UTF-8", true).parse(rest(bytes, corrupt), null,
+                    corrupt, 1);
+            fail("Expected a corrupt checkpoint to be rejected");
+        } catch (ParserException e) {
+            assertTrue(e.getMessage().startsWith("Invalid TAP checkpoint"));
+        }
+    }
+
+    @Test(expected = ParserException.class)
+    public void testUnsupportedEncoding() {
+        new Tap13Parser("UTF-16", false).parse(new ByteArrayInputStream(
+                new byte[0]), null, null, 1);
+    }
+
+    private static ByteArrayInputStream rest(byte[] bytes,
+            TapCheckpoint checkpoint) {
+        ByteArrayInputStream rest = new ByteArrayInputStream(bytes);
+        rest.skip(checkpoint.getOffset());
+        return rest;
+    }
+
+    private File write(String tap) throws IOException {
+        File file = folder.newFile("checkpoint.tap");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(tap.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static TapCheckpoint copy(TapCheckpoint checkpoint) {
+        if (checkpoint == null) {
+            return null;
+        }
+        return TapCheckpoint.fromByteArray(checkpoint.toByteArray());
+    }
+
+    private static class Recorder extends DefaultTapEventHandler {
+
+        private final List<String> events = new ArrayList<String>();
+
+        private final List<Map<String, Object>> diagnostics =
+                new ArrayList<Map<String, Object>>();
+
+        @Override
+        public void onPlan(Plan plan) {
+            events.add("plan " + plan.getLastTestNumber());
+        }
+
+        @Override
+        public void onTestResult(TestResult testResult) {
+            events.add(testResult.getStatus() + " "
+                    + testResult.getTestNumber());
+        }
+
+        @Override
+        public void onDiagnostic(TapElement element) {
+            events.add("diagnostic");
+            diagnostics.add(element.getDiagnostic());
+        }
+
+        @Override
+        public void onSubtestStart(TapElement parent) {
+            events.add("subtest");
+        }
+
+        @Override
+        public void onSubtestEnd(TapElement parent) {
+            events.add("end");
+        }
+
+    }
+
+}
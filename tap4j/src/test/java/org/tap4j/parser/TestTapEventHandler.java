@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.tap4j.model.BailOut;
+import org.tap4j.model.Comment;
+import org.tap4j.model.Footer;
+import org.tap4j.model.Header;
+import org.tap4j.model.Plan;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.Text;
+
+/**
+ * Tests for parsing TAP with a {@link TapEventHandler}.
+ *
+ * @since 4.2
+ */
+public class TestTapEventHandler {
+
+    /**
+     * Records the events as strings.
+     */
+    private static class RecordingHandler implements TapEventHandler {
+        private final List<String> events = new ArrayList<String>();
+        public void onHeader(Header header) {
+            events.add("header " + header.getVersion());
+        }
+        public void onPlan(Plan plan) {
+            events.add("plan " + plan.getLastTestNumber());
+        }
+        public void onTestResult(TestResult testResult) {
+            assertNull(testResult.getSubtest());
+            events.add(testResult.getStatus() + " " + testResult.getTestNumber());
+        }
+        public void onBailOut(BailOut bailOut) {
+            events.add("bail out " + bailOut.getReason());
+        }
+        public void onComment(Comment comment) {
+            events.add("comment " + comment.getText());
+        }
+        public void onText(Text text) {
+            events.add("text " + text.getValue());
+        }
+        public void onFooter(Footer footer) {
+            events.add("footer " + footer.getText());
+        }
+        public void onDiagnostic(TapElement element) {
+            events.add("diagnostic " + element.getDiagnostic().get("datetime"));
+        }
+        public void onSubtestStart(TapElement parent) {
+            events.add("subtest start");
+        }
+        public void onSubtestEnd(TapElement parent) {
+            events.add("subtest end");
+        }
+    }
+
+    @Test
+    public void testEvents() {
+        String tap = "TAP version 13\n" +
+                "1..3\n" +
+                "ok 1 - first\n" +
+                "# a comment\n" +
+                "not ok 2 - second\n" +
+                "  ---\n" +
+                "  datetime: 20140823T093012\n" +
+                "  ...\n" +
+                "random text\n" +
+                "Bail out! stop\n" +
+                "TAP done";
+        RecordingHandler handler = new RecordingHandler();
+        new Tap13Parser().parseTapStream(tap, handler);
+        String[] expected = {"header 13", "plan 3", "ok 1", "comment a comment",
+            "not ok 2", "diagnostic 20140823T093012", "text random text",
+            "bail out stop", "footer done"};
+        assertEquals(expected.length, handler.events.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], handler.events.get(i));
+        }
+    }
+
+    @Test
+    public void testSubtestEvents() {
+        final List<TapElement> parents = new ArrayList<TapElement>();
+        final int[] testResults = new int[1];
+        TapEventHandler handler = new DefaultTapEventHandler() {
+            @Override
+            public void onTestResult(TestResult testResult) {
+                testResults[0]++;
+            }
+            @Override
+            public void onSubtestStart(TapElement parent) {
+                parents.add(parent);
+            }
+            @Override
+            public void onSubtestEnd(TapElement parent) {
+                assertSame(parents.get(parents.size() - 1), parent);
+                parents.add(null);
+            }
+        };
+        new Tap13Parser(true).parseFile(new File(TestTapEventHandler.class
+            .getResource("/org/tap4j/parser/issueGitHub17/issue-17-tap-stream.tap")
+            .getFile()), handler);
+        assertEquals(8, testResults[0]);
+        assertEquals(4, parents.size());
+        assertEquals(Integer.valueOf(1), ((TestResult) parents.get(0)).getTestNumber());
+        assertEquals(Integer.valueOf(2), ((TestResult) parents.get(2)).getTestNumber());
+    }
+
+}
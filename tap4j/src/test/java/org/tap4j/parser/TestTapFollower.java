@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tap4j.consumer.TapConsumerImpl;
+import org.tap4j.model.BailOut;
+import org.tap4j.model.Plan;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
+
+/**
+ * Tests for following a TAP file while it is written.
+ *
+ * @since 4.2
+ */
+public class TestTapFollower {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private final List<String> events = new ArrayList<String>();
+
+    private final TapEventHandler handler = new DefaultTapEventHandler() {
+        @Override
+        public void onPlan(Plan plan) {
+            events.add("plan " + plan.getLastTestNumber());
+        }
+
+        @Override
+        public void onTestResult(TestResult testResult) {
+            events.add(testResult.getStatus() + " "
+                    + testResult.getTestNumber());
+        }
+
+        @Override
+        public void onBailOut(BailOut bailOut) {
+            events.add("bail out " + bailOut.getReason());
+        }
+
+        @Override
+        public void onDiagnostic(TapElement element) {
+            events.add("diagnostic " + element.getDiagnostic());
+        }
+    };
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "follow.tap");
+    }
+
+    @Test
+    public void testFollow() throws IOException {
+        TapFollower follower = new TapConsumerImpl().follow(file, handler);
+        assertEquals(0, follower.poll());
+        append("1..3\nok 1\r");
+        assertEquals(2, follower.poll());
+        assertEquals("[plan 3, ok 1]", events.toString());
+        append("\nnot ok 2\n  ---\n  message: fail");
+        follower.poll();
+        assertEquals("[plan 3, ok 1, not ok 2]", events.toString());
+        assertEquals(26, follower.getOffset());
+        append("ed\n  ...\nok 3");
+        follower.poll();
+        assertEquals("[plan 3, ok 1, not ok 2, diagnostic {message=failed}]",
+                events.toString());
+        follower.finish();
+        assertEquals("[plan 3, ok 1, not ok 2, diagnostic {message=failed}, "
+                + "ok 3]", events.toString());
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        TapFollower follower = new TapFollower(file, handler);
+        append("1..2\nok 1\nok 2\n");
+        follower.poll();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write("1..1\nok 1\n".getBytes("UTF-8"));
+        fos.close();
+        follower.poll();
+        follower.close();
+        assertEquals("[plan 2, ok 1, ok 2, plan 1, ok 1]",
+                events.toString());
+    }
+
+    @Test(expected = ParserException.class)
+    public void testFinishValidatesPlan() throws IOException {
+        TapFollower follower = new TapFollower(file, handler);
+        append("1..2\nok 1\nok 2\n1..2\n");
+        follower.finish();
+    }
+
+    @Test(expected = ParserException.class)
+    public void testUnsupportedEncoding() {
+        new TapFollower(file, new Tap13Parser("UTF-16", false), handler);
+    }
+
+    /**
+     * @param text text appended to the file
+     * @throws IOException if an I/O error occurs
+     */
+    private void append(String text) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file, true);
+        try {
+            fos.write(text.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.tap4j.parser.TapLineTokenizer.LineType;
+import org.tap4j.util.DirectiveValues;
+import org.tap4j.util.StatusValues;
+
+/**
+ * Tests for the TAP line tokenizer.
+ *
+ * @since 4.2
+ */
+public class TestTapLineTokenizer {
+
+    private TapLineTokenizer tokenizer;
+
+    @Before
+    public void setUp() {
+        tokenizer = new TapLineTokenizer();
+    }
+
+    private LineType tokenize(String line) {
+        tokenizer.reset(line);
+        return tokenizer.tokenize();
+    }
+
+    @Test
+    public void testComment() {
+        assertEquals(LineType.COMMENT, tokenize("  #   a comment "));
+        assertTrue(tokenizer.isComment());
+        assertEquals(2, tokenizer.getIndentation());
+        assertEquals("a comment ", tokenizer.getComment());
+    }
+
+    @Test
+    public void testTestResult() {
+        assertEquals(LineType.TEST_RESULT, tokenize("not ok 12 - foo # TODO not yet # later"));
+        assertEquals(StatusValues.NOT_OK, tokenizer.getStatus());
+        assertEquals(12, tokenizer.getTestNumber());
+        assertEquals("- foo ", tokenizer.getDescription());
+        assertEquals(DirectiveValues.TODO, tokenizer.getDirective());
+        assertEquals("not yet ", tokenizer.getReason());
+        assertEquals("later", tokenizer.getComment());
+    }
+
+    @Test
+    public void testTestResultWithoutNumber() {
+        assertEquals(LineType.TEST_RESULT, tokenize("ok"));
+        assertEquals(StatusValues.OK, tokenizer.getStatus());
+        assertEquals(-1, tokenizer.getTestNumber());
+        assertEquals("", tokenizer.getDescription());
+        assertNull(tokenizer.getComment());
+    }
+
+    @Test
+    public void testDirectiveWithoutReasonIsAComment() {
+        assertEquals(LineType.TEST_RESULT, tokenize("ok 1 # SKIP"));
+        assertNull(tokenizer.getDirective());
+        assertEquals("SKIP", tokenizer.getComment());
+    }
+
+    @Test
+    public void testPlan() {
+        assertEquals(LineType.PLAN, tokenize("1..0 # skip no database"));
+        assertEquals(1, tokenizer.getInitialTestNumber());
+        assertEquals(0, tokenizer.getLastTestNumber());
+        assertEquals("no database", tokenizer.getReason());
+        assertEquals(LineType.TEXT, tokenize("1...2"));
+    }
+
+    @Test
+    public void testHeaderAndFooter() {
+        assertEquals(LineType.HEADER, tokenize("TAP version 13 # c"));
+        assertEquals(13, tokenizer.getVersion());
+        assertEquals("c", tokenizer.getComment());
+        assertEquals(LineType.FOOTER, tokenize("TAP version 13 done"));
+        assertEquals("version 13 done", tokenizer.getFooterText());
+    }
+
+    @Test
+    public void testBailOut() {
+        assertEquals(LineType.BAIL_OUT, tokenize("Bail out! no disk # really"));
+        assertEquals("no disk ", tokenizer.getBailOutReason());
+        assertEquals("really", tokenizer.getComment());
+        assertEquals(LineType.BAIL_OUT, tokenize("Bail out!"));
+        assertNull(tokenizer.getBailOutReason());
+    }
+
+    @Test
+    public void testYamlMarkers() {
+        tokenizer.reset("  ---  ");
+        assertTrue(tokenizer.isYamlStart());
+        tokenizer.reset("  ...");
+        assertFalse(tokenizer.isYamlStart());
+        assertTrue(tokenizer.isYamlEnd("  "));
+        assertFalse(tokenizer.isYamlEnd(" "));
+    }
+
+    @Test
+    public void testText() {
+        assertEquals(LineType.TEXT, tokenize("oh no, not a test"));
+        assertEquals(LineType.TEST_RESULT, tokenize("okay"));
+        assertEquals(LineType.TEXT, tokenize("   "));
+        assertEquals(LineType.TEXT, tokenize("Bail out"));
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.tap4j.model.Plan;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
+
+/**
+ * Tests for publishing TAP elements with backpressure.
+ *
+ * @since 4.2
+ */
+public class TestTapPublisher {
+
+    private static final String TAP = "1..3\nok 1\nnot ok 2\n  ---\n"
+            + "  message: failed\n  ...\nok 3\n";
+
+    private static class Recorder implements TapSubscriber {
+        final List<TapElement> elements = new ArrayList<TapElement>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        TapSubscription subscription;
+        Throwable error;
+        boolean completed;
+
+        public void onSubscribe(TapSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onNext(TapElement element) {
+            elements.add(element);
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+    }
+
+    private static class ClosingStream extends ByteArrayInputStream {
+        boolean closed;
+
+        ClosingStream(String text) throws UnsupportedEncodingException {
+            super(text.getBytes("UTF-8"));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        ClosingStream stream = new ClosingStream(TAP);
+        Recorder recorder = new Recorder();
+        new TapPublisher(stream).subscribe(recorder);
+        assertTrue(recorder.elements.isEmpty());
+        assertEquals(TAP.length(), stream.available());
+
+        recorder.subscription.request(1);
+        assertEquals(1, recorder.elements.size());
+        assertTrue(recorder.elements.get(0) instanceof Plan);
+        recorder.subscription.request(2);
+        assertEquals(3, recorder.elements.size());
+        TestResult second = (TestResult) recorder.elements.get(2);
+        assertEquals("failed", second.getDiagnostic().get("message"));
+        assertFalse(recorder.completed);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(4, recorder.elements.size());
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+        assertTrue(stream.closed);
+    }
+
+    @Test
+    public void testExactRequestCompletes() throws Exception {
+        ClosingStream stream = new ClosingStream("1..2\nok 1\nok 2\n");
+        Recorder recorder = new Recorder();
+        new TapPublisher(stream).subscribe(recorder);
+        recorder.subscription.request(3);
+        assertEquals(3, recorder.elements.size());
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+        assertTrue(stream.closed);
+    }
+
+    @Test
+    public void testRequestFromOnNext() throws Exception {
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onSubscribe(TapSubscription subscription) {
+                super.onSubscribe(subscription);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(TapElement element) {
+                super.onNext(element);
+                subscription.request(1);
+            }
+        };
+        new TapPublisher(new ClosingStream(TAP)).subscribe(recorder);
+        assertEquals(4, recorder.elements.size());
+        assertTrue(recorder.completed);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        ClosingStream stream = new ClosingStream(TAP);
+        Recorder recorder = new Recorder();
+        new TapPublisher(stream).subscribe(recorder);
+        recorder.subscription.request(1);
+        recorder.subscription.cancel();
+        recorder.subscription.request(10);
+        assertEquals(1, recorder.elements.size());
+        assertTrue(stream.closed);
+        assertFalse(recorder.completed);
+    }
+
+    @Test
+    public void testInvalidRequest() throws Exception {
+        Recorder recorder = new Recorder();
+        new TapPublisher(new ClosingStream(TAP)).subscribe(recorder);
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testSingleSubscriber() throws Exception {
+        TapPublisher publisher = new TapPublisher(new ClosingStream(TAP));
+        publisher.subscribe(new Recorder());
+        Recorder second = new Recorder();
+        publisher.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testParseError() throws Exception {
+        Recorder recorder = new Recorder();
+        new TapPublisher(new ClosingStream("ok 1\nok 2\n")).subscribe(
+                recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertTrue(recorder.error instanceof ParserException);
+    }
+
+    @Test
+    public void testMissingFile() {
+        Recorder recorder = new Recorder();
+        new TapPublisher(new File("missing.tap"), new Tap13Parser(), null)
+                .subscribe(recorder);
+        recorder.subscription.request(1);
+        assertTrue(recorder.error instanceof ParserException);
+    }
+
+    @Test
+    public void testExecutorAndChannel() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            InputStream stream = new ClosingStream(TAP);
+            Recorder recorder = new Recorder();
+            new TapPublisher(Channels.newChannel(stream), new Tap13Parser(),
+                    executor).subscribe(recorder);
+            recorder.subscription.request(Long.MAX_VALUE);
+            assertTrue(recorder.terminated.await(10, TimeUnit.SECONDS));
+            assertEquals(4, recorder.elements.size());
+            assertTrue(recorder.completed);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
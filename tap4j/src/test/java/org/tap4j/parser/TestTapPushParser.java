@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.tap4j.model.Plan;
+import org.tap4j.model.TapElement;
+import org.tap4j.model.TestResult;
+import org.tap4j.model.TestSet;
+
+/**
+ * Tests for the push parser.
+ *
+ * @since 4.2
+ */
+public class TestTapPushParser {
+
+    private static final String TAP = "1..3\r\n"
+            + "ok 1 - ünïcödé €\r"
+            + "  ---\r\n"
+            + "  message: 'über'\r\n"
+            + "  ...\r\n"
+            + "not ok 2 - second\n"
+            + "\n"
+            + "ok 3 - third";
+
+    @Test
+    public void testChunkSizes() throws UnsupportedEncodingException {
+        byte[] bytes = TAP.getBytes("UTF-8");
+        TestSet expected = new Tap13Parser().parseTapStream(TAP);
+        for (int size = 1; size <= bytes.length; size++) {
+            TapPushParser push = new TapPushParser(null);
+            for (int i = 0; i < bytes.length; i += size) {
+                push.feed(bytes, i, Math.min(size, bytes.length - i));
+            }
+            TestSet testSet = push.finish();
+            assertEquals(expected.getNumberOfTestResults(),
+                    testSet.getNumberOfTestResults());
+            assertEquals("- ünïcödé €", testSet.getTestResult(1)
+                    .getDescription());
+            assertEquals("über", testSet.getTestResult(1).getDiagnostic()
+                    .get("message"));
+            assertEquals("- third", testSet.getTestResult(3)
+                    .getDescription());
+            assertEquals(bytes.length, push.getPosition());
+        }
+    }
+
+    @Test
+    public void testEventsAsLinesComplete() throws UnsupportedEncodingException {
+        final List<String> events = new ArrayList<String>();
+        TapPushParser push = new TapPushParser(new DefaultTapEventHandler() {
+            @Override
+            public void onPlan(Plan plan) {
+                events.add("plan");
+            }
+
+            @Override
+            public void onTestResult(TestResult testResult) {
+                events.add("result " + testResult.getTestNumber());
+            }
+
+            @Override
+            public void onDiagnostic(TapElement element) {
+                events.add("diagnostic");
+            }
+        });
+        ByteBuffer chunk = ByteBuffer.wrap("1..2\nok".getBytes("UTF-8"));
+        push.feed(chunk);
+        assertEquals(0, chunk.remaining());
+        assertEquals(1, events.size());
+        assertEquals(5, push.getPosition());
+        push.feed(ByteBuffer.wrap(" 1\nok 2".getBytes("UTF-8")));
+        assertEquals(2, events.size());
+        push.finish();
+        assertEquals(3, events.size());
+        assertEquals("result 2", events.get(2));
+        assertTrue(push.isFinished());
+    }
+
+    @Test
+    public void testLargeLine() throws UnsupportedEncodingException {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            description.append('x');
+        }
+        byte[] bytes = ("1..1\nok 1 " + description + "\n").getBytes("UTF-8");
+        TapPushParser push = new TapPushParser(null);
+        for (int i = 0; i < bytes.length; i += 100) {
+            push.feed(bytes, i, Math.min(100, bytes.length - i));
+        }
+        TestSet testSet = push.finish();
+        assertEquals(description.toString(), testSet.getTestResult(1)
+                .getDescription());
+    }
+
+    @Test(expected = ParserException.class)
+    public void testFeedAfterFinish() {
+        TapPushParser push = new TapPushParser(null);
+        push.feed(ByteBuffer.wrap(new byte[] {'1', '.', '.', '0', '\n' }));
+        push.finish();
+        push.feed(ByteBuffer.wrap(new byte[] {'\n' }));
+    }
+
+    @Test(expected = ParserException.class)
+    public void testUnsupportedEncoding() {
+        new TapPushParser(new Tap13Parser("UTF-16", false), null);
+    }
+
+}
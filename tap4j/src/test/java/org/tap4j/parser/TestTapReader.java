@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.tap4j.model.Comment;
+import org.tap4j.model.Header;
+import org.tap4j.model.Plan;
+import org.tap4j.model.TestResult;
+
+/**
+ * Tests for the pull parser.
+ *
+ * @since 4.2
+ */
+public class TestTapReader {
+
+    @Test
+    public void testElementsWithDiagnosticsAndComments() throws IOException {
+        String tap = "TAP version 13\n" +
+                "1..2\n" +
+                "not ok 1 - first\n" +
+                "  ---\n" +
+                "  message: failed\n" +
+                "  ...\n" +
+                "# about the first\n" +
+                "ok 2 - second\n";
+        TapReader reader = new TapReader(new StringReader(tap));
+        try {
+            assertTrue(reader.next() instanceof Header);
+            assertTrue(reader.next() instanceof Plan);
+            TestResult first = (TestResult) reader.next();
+            assertEquals("failed", first.getDiagnostic().get("message"));
+            assertEquals(1, first.getComments().size());
+            assertTrue(reader.next() instanceof Comment);
+            TestResult second = (TestResult) reader.next();
+            assertEquals(Integer.valueOf(2), second.getTestNumber());
+            assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testStopEarly() throws IOException {
+        String tap = "1..3\n" +
+                "ok 1\n" +
+                "ok 2\n" +
+                "1..3\n";
+        TapReader reader = new TapReader(new StringReader(tap));
+        try {
+            assertTrue(reader.next() instanceof Plan);
+            assertTrue(reader.next() instanceof TestResult);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = ParserException.class)
+    public void testInvalidStream() {
+        String tap = "1..3\n" +
+                "ok 1\n" +
+                "1..3\n";
+        TapReader reader = new TapReader(new StringReader(tap));
+        while (reader.hasNext()) {
+            reader.next();
+        }
+    }
+
+    @Test
+    public void testSubtests() {
+        String tap = "1..2\n" +
+                "ok 1 - parent\n" +
+                "    1..2\n" +
+                "    ok 1 - child\n" +
+                "    ok 2 - child\n" +
+                "ok 2\n";
+        TapReader reader = new TapReader(new StringReader(tap),
+                new Tap13Parser(true));
+        assertTrue(reader.next() instanceof Plan);
+        TestResult parent = (TestResult) reader.next();
+        assertNotNull(parent.getSubtest());
+        assertEquals(2, parent.getSubtest().getNumberOfTestResults());
+        TestResult last = (TestResult) reader.next();
+        assertEquals(Integer.valueOf(2), last.getTestNumber());
+        assertFalse(reader.hasNext());
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 tap4j team (see AUTHORS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.tap4j.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.tap4j.model.TestSet;
+import org.tap4j.parser.Tap13Parser;
+import org.tap4j.representer.DumperOptions;
+import org.tap4j.representer.Tap13Representer;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Tests for the YAML engine.
+ *
+ * @since 4.2
+ */
+public class TestYamlEngine {
+
+    /**
+     * Engine counting the SnakeYAML instances created.
+     */
+    private static class CountingYamlEngine extends YamlEngine {
+        private int loaders = 0;
+        private int dumpers = 0;
+
+        @Override
+        protected synchronized Yaml createLoader() {
+            loaders++;
+            return super.createLoader();
+        }
+
+        @Override
+        protected synchronized Yaml createDumper() {
+            dumpers++;
+            return super.createDumper();
+        }
+    }
+
+    @Test
+    public void testInstancesReusedPerThread() throws InterruptedException {
+        final CountingYamlEngine engine = new CountingYamlEngine();
+        for (int i = 0; i < 10; i++) {
+            Map<?, ?> loaded = (Map<?, ?>) engine.load("value: " + i);
+            assertEquals(Integer.valueOf(i), loaded.get("value"));
+        }
+        assertEquals(1, engine.loaders);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                engine.load("value: 1");
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(2, engine.loaders);
+    }
+
+    @Test
+    public void testInstanceDiscardedAfterFailure() {
+        CountingYamlEngine engine = new CountingYamlEngine();
+        try {
+            engine.load("- [unbalanced");
+            fail("Expected invalid YAML");
+        } catch (RuntimeException expected) {
+            // the loader must not be reused
+        }
+        engine.load("value: 1");
+        engine.load("value: 2");
+        assertEquals(2, engine.loaders);
+    }
+
+    @Test
+    public void testSharedByParserAndRepresenter() {
+        CountingYamlEngine engine = new CountingYamlEngine();
+        Tap13Parser parser = new Tap13Parser();
+        parser.setYamlEngine(engine);
+        String tap = "1..2\n" +
+                "not ok 1\n" +
+                "  ---\n" +
+                "  message: first\n" +
+                "  ...\n" +
+                "not ok 2\n" +
+                "  ---\n" +
+                "  message: second\n" +
+                "  ...\n";
+        TestSet testSet = parser.parseTapStream(tap);
+        assertEquals("second", testSet.getTestResult(2).getDiagnostic()
+                .get("message"));
+        DumperOptions options = new DumperOptions();
+        options.setPrintDiagnostics(true);
+        Tap13Representer representer = new Tap13Representer(options, engine);
+        String dumped = representer.representData(testSet);
+        assertTrue(dumped.contains("message: first"));
+        representer.representData(testSet);
+        assertEquals(1, engine.loaders);
+        assertEquals(1, engine.dumpers);
+    }
+
+    @Test
+    public void testDumpedInBlockStyle() {
+        Map<String, Object> diagnostic = new LinkedHashMap<String, Object>();
+        diagnostic.put("message", "failed");
+        String dumped = YamlEngine.getDefault().dump(diagnostic);
+        assertTrue(dumped.startsWith("---"));
+        assertTrue(dumped.trim().endsWith("..."));
+    }
+
+}